@@ -0,0 +1,17 @@
+#!/bin/bash
+
+# Compile the application together with the benchmark harness
+OUT_DIR=$(mktemp -d)
+trap 'rm -rf "$OUT_DIR"' EXIT
+
+SCRIPT_DIR=$(cd "$(dirname "$0")" && pwd)
+javac --add-modules jdk.incubator.vector -d "$OUT_DIR" "$SCRIPT_DIR"/../src/travelling_salesman/*.java "$SCRIPT_DIR"/travelling_salesman/*.java
+
+# Check if compilation was successful
+if [ $? -ne 0 ]; then
+    echo "Compilation failed."
+    exit 1
+fi
+
+# Run the benchmarks, passing through any options
+java -Xmx4g --add-modules jdk.incubator.vector -cp "$OUT_DIR" travelling_salesman.SolverBenchmark "$@"
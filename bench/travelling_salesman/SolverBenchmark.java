@@ -0,0 +1,329 @@
+package travelling_salesman;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark harness for the solvers, the distance kernels and the file
+ * readers.
+ * <p>
+ * Follows the JMH methodology without needing a build system: every benchmark
+ * runs a number of warmup iterations before the measured ones, each iteration
+ * repeats the operation for a fixed time, and results are fed to a sink so
+ * that the JIT cannot discard the work. Reported per benchmark are the mean and
+ * standard deviation of the throughput, the bytes allocated per operation on
+ * the benchmark thread and, for solvers, the tour length divided by the
+ * minimum spanning tree weight (a lower bound on the optimal tour).
+ * <p>
+ * Usage: {@code SolverBenchmark [--benchmarks=nn,mst,...] [--sizes=1000,...]
+ * [--distributions=uniform,clustered] [--warmup=2] [--iterations=3]
+ * [--iteration-ms=1000] [--seed=42]}
+ */
+public class SolverBenchmark {
+    private static final String[] ALL_BENCHMARKS = { "nn", "dijkstra", "dijkstra-sparse", "mst", "hilbert", "exact",
+            "christofides", "city-distance", "store-distance", "reader", "stream-reader" };
+
+    /**
+     * Receives benchmark results so that the work cannot be optimized away.
+     */
+    private static volatile long sink;
+
+    private static List<String> benchmarks = Arrays.asList(ALL_BENCHMARKS);
+    private static int[] sizes = { 40, 1_000, 10_000, 100_000, 1_000_000 };
+    private static List<String> distributions = Arrays.asList("uniform", "clustered");
+    private static int warmupIterations = 2;
+    private static int measurementIterations = 3;
+    private static long iterationMillis = 1000;
+    private static long seed = 42;
+
+    /**
+     * A benchmarked operation.
+     */
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @return A value derived from the result, fed to the sink.
+         * @throws IOException if the operation reads a file and fails.
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * Runs the selected benchmarks on generated instances of every size and
+     * distribution, and prints one line of results per benchmark.
+     *
+     * @param args The command line options, see the class documentation.
+     * @throws IOException if an instance file cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        parseArguments(args);
+        System.out.printf("%-16s %-10s %9s %14s %12s %14s %9s%n", "benchmark", "dist", "n", "ops/s", "+/-",
+                "alloc B/op", "quality");
+
+        for (String distribution : distributions) {
+            for (int n : sizes) {
+                CityStore cities = distribution.equals("clustered")
+                        ? InstanceGenerator.clustered(n, Math.max(1, n / 100), seed)
+                        : InstanceGenerator.uniform(n, seed);
+                double lowerBound = mstWeight(cities);
+                Path file = null;
+
+                for (String benchmark : benchmarks) {
+                    if (!supports(benchmark, n)) {
+                        continue;
+                    }
+                    if ((benchmark.equals("reader") || benchmark.equals("stream-reader")) && file == null) {
+                        file = writeInstance(cities);
+                    }
+                    int[][] lastTour = new int[1][];
+                    Operation operation = operation(benchmark, cities, file, lastTour);
+                    double[] result = measure(operation);
+                    String quality = lastTour[0] == null ? "-"
+                            : String.format("%.4f",
+                                    UserInterface.calculateTotalDistance(cities, lastTour[0]) / lowerBound);
+                    System.out.printf("%-16s %-10s %9d %14.3f %12.3f %14.0f %9s%n", benchmark, distribution, n,
+                            result[0], result[1], result[2], quality);
+                }
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a benchmark is run at a given size. Quadratic and worse
+     * algorithms are limited to the sizes they finish in reasonable time; the
+     * exact solver only runs at the smallest default size, 40 cities.
+     *
+     * @param benchmark The benchmark name.
+     * @param n         The number of cities.
+     * @return {@code true} if the benchmark runs at this size.
+     */
+    private static boolean supports(String benchmark, int n) {
+        switch (benchmark) {
+            case "dijkstra":
+                return n <= 5_000;
+            case "exact":
+                return n <= SolverExact.MAX_CITIES;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Creates the operation for a benchmark.
+     *
+     * @param benchmark The benchmark name.
+     * @param cities    The instance.
+     * @param file      The instance written as a text file, for the readers.
+     * @param lastTour  Receives the tour built by solver benchmarks.
+     * @return The operation to measure.
+     */
+    private static Operation operation(String benchmark, CityStore cities, Path file, int[][] lastTour) {
+        switch (benchmark) {
+            case "nn":
+                return () -> checksum(lastTour[0] = SolverNN.solveNearestNeighbour(cities));
+            case "dijkstra":
+                return () -> checksum(lastTour[0] = SolverDijkstra.solveDijkstra(cities));
+            case "dijkstra-sparse":
+                return () -> checksum(lastTour[0] = SolverDijkstra.solveDijkstra(cities, 8));
+            case "mst":
+                return () -> checksum(lastTour[0] = SolverMST.solveMST(cities));
+            case "hilbert":
+                return () -> checksum(lastTour[0] = SolverHilbert.solveHilbert(cities));
+            case "exact":
+                return () -> checksum(lastTour[0] = SolverExact.solveExact(cities));
+            case "christofides":
+                return () -> checksum(lastTour[0] = SolverChristofides.solveChristofides(cities));
+            case "city-distance": {
+                City[] objects = new City[cities.size()];
+                for (int i = 0; i < objects.length; i++) {
+                    objects[i] = cities.toCity(i);
+                }
+                int[] pairs = randomPairs(cities.size());
+                return () -> {
+                    double total = 0;
+                    for (int i = 0; i < pairs.length; i += 2) {
+                        total += objects[pairs[i]].distanceTo(objects[pairs[i + 1]]);
+                    }
+                    return Double.doubleToLongBits(total);
+                };
+            }
+            case "store-distance": {
+                int[] pairs = randomPairs(cities.size());
+                return () -> {
+                    double total = 0;
+                    for (int i = 0; i < pairs.length; i += 2) {
+                        total += cities.distance(pairs[i], pairs[i + 1]);
+                    }
+                    return Double.doubleToLongBits(total);
+                };
+            }
+            case "reader":
+                return () -> CityFileReader.readCitiesFromFile(file.toString()).size();
+            case "stream-reader":
+                return () -> CityFileReader.readCityStoreFromFile(file.toString()).size();
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+        }
+    }
+
+    /**
+     * Runs the warmup and measurement iterations of an operation.
+     *
+     * @param operation The operation to measure.
+     * @return The mean throughput in operations per second, its standard
+     *         deviation, and the bytes allocated per operation.
+     * @throws IOException if the operation fails.
+     */
+    private static double[] measure(Operation operation) throws IOException {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+
+        double[] throughput = new double[measurementIterations];
+        long allocatedBefore = allocatedBytes();
+        long totalOps = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] run = iteration(operation);
+            totalOps += run[0];
+            throughput[i] = run[0] / (run[1] / 1e9);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        double mean = Arrays.stream(throughput).average().orElse(0);
+        double variance = Arrays.stream(throughput).map(t -> (t - mean) * (t - mean)).sum()
+                / Math.max(1, throughput.length - 1);
+        return new double[] { mean, Math.sqrt(variance), (double) allocated / Math.max(1, totalOps) };
+    }
+
+    /**
+     * Repeats an operation for one iteration, running it at least once.
+     *
+     * @param operation The operation to run.
+     * @return The number of operations and the elapsed nanoseconds.
+     * @throws IOException if the operation fails.
+     */
+    private static long[] iteration(Operation operation) throws IOException {
+        long ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + iterationMillis * 1_000_000L;
+        long elapsed;
+        do {
+            sink += operation.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (start + elapsed < deadline);
+        return new long[] { ops, elapsed };
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or 0 if the JVM
+     * does not report it.
+     *
+     * @return The allocated bytes.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the weight of the minimum spanning tree, used as the reference
+     * for tour quality.
+     *
+     * @param cities The instance.
+     * @return The weight of the minimum spanning tree.
+     */
+    private static double mstWeight(CityStore cities) {
+        int[] edges = EuclideanMST.edges(cities);
+        double weight = 0;
+        for (int i = 0; i < edges.length; i += 2) {
+            weight += cities.distance(edges[i], edges[i + 1]);
+        }
+        return weight;
+    }
+
+    /**
+     * Generates random city pairs, one per city, for the distance kernels.
+     *
+     * @param n The number of cities.
+     * @return The pairs as consecutive entries.
+     */
+    private static int[] randomPairs(int n) {
+        Random random = new Random(seed);
+        int[] pairs = new int[2 * n];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(n);
+        }
+        return pairs;
+    }
+
+    /**
+     * Folds a tour into a checksum.
+     *
+     * @param path The tour.
+     * @return A checksum of the tour.
+     */
+    private static long checksum(int[] path) {
+        return Arrays.hashCode(path);
+    }
+
+    /**
+     * Writes an instance to a temporary text file in the input format.
+     *
+     * @param cities The instance.
+     * @return The path of the written file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static Path writeInstance(CityStore cities) throws IOException {
+        Path file = Files.createTempFile("tsp-benchmark", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < cities.size(); i++) {
+                writer.write(cities.getId(i) + " " + cities.getX(i) + " " + cities.getY(i));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Parses the command line options.
+     *
+     * @param args The command line arguments.
+     */
+    private static void parseArguments(String[] args) {
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--benchmarks=")) {
+                benchmarks = Arrays.asList(value.split(","));
+            } else if (arg.startsWith("--sizes=")) {
+                sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (arg.startsWith("--distributions=")) {
+                distributions = new ArrayList<>(Arrays.asList(value.split(",")));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupIterations = Integer.parseInt(value);
+            } else if (arg.startsWith("--iterations=")) {
+                measurementIterations = Integer.parseInt(value);
+            } else if (arg.startsWith("--iteration-ms=")) {
+                iterationMillis = Long.parseLong(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else {
+                System.out.println("Unknown option: " + arg);
+            }
+        }
+    }
+}
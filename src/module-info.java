@@ -5,4 +5,9 @@
  * 
  */
 module travelling_salesman {
+    requires java.management;
+    requires jdk.httpserver;
+    requires static jdk.incubator.vector;
+    requires jdk.jfr;
+    requires jdk.management;
 }
\ No newline at end of file
@@ -10,7 +10,7 @@ fi
 FILE_PATHS=$1
 
 # Compile the Java application
-javac travelling_salesman/*.java 
+javac --add-modules jdk.incubator.vector travelling_salesman/*.java 
 
 # Check if compilation was successful
 if [ $? -eq 0 ]; then
@@ -24,11 +24,11 @@ fi
 # Iterate over each file path in the file
 while IFS= read -r file_path
 do
-    for input in 1 2 3
+    for input in 1 2 3 4 5 6 7
     do
         # Run the Java application with the current file path
         echo "Running with file path: $file_path and input: $input"
-        echo $input | java travelling_salesman.Main "$file_path"
+        echo $input | java --add-modules jdk.incubator.vector travelling_salesman.Main "$file_path"
         echo ""
     done
     echo "============================================================"
@@ -0,0 +1,206 @@
+package travelling_salesman;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Utility class for solving within a time budget, returning the best tour
+ * found when the budget runs out or the search is cancelled.
+ * <p>
+ * A Nearest Neighbour tour is built first, as it takes only a few
+ * milliseconds on most instances; if the budget runs out while it is built,
+ * the cities it has not reached follow in index order. The selected
+ * construction then runs on a background thread; if it does not finish in
+ * time it is cancelled, stops at its next check, and the Nearest Neighbour
+ * tour is used instead. Finally the best tour is improved with 2-opt and
+ * Or-opt, or with Lin-Kernighan search for the {@code lk} solver, until the
+ * budget runs out. Every shorter tour is reported to a {@link TourListener}
+ * as soon as it is found, including snapshots taken while the improvement is
+ * still running. With a target gap, a Held-Karp lower bound is computed
+ * alongside and the improvement stops once the best tour is within the gap.
+ */
+public class AnytimeSolver {
+    /**
+     * Minimum time between two snapshots of a running improvement.
+     */
+    public static final long PUBLISH_INTERVAL_MILLIS = 100;
+
+    /**
+     * Solves within a time budget. With a {@link ResultCache}, a cached tour
+     * is returned at once, and a tour carried over from a similar instance
+     * replaces the construction.
+     *
+     * @param solver       The solver name, see {@link Solvers#NAMES}.
+     * @param cities       The cities to use in the algorithm.
+     * @param options      The solver settings. The improvement stage runs if
+     *                     {@link SolveOptions#isImprove()} is set or the solver
+     *                     is {@code lk}.
+     * @param budgetMillis The time budget in milliseconds, 0 for none.
+     * @param token        The token stopping the search early, or
+     *                     {@code null}.
+     * @param listener     The listener receiving every shorter tour, or
+     *                     {@code null}.
+     * @return The best tour found, starting and ending at city 0.
+     * @throws IllegalArgumentException if the solver name is unknown.
+     */
+    public static int[] solve(String solver, CityStore cities, SolveOptions options, long budgetMillis,
+            CancellationToken token, TourListener listener) {
+        if (!Solvers.NAMES.contains(solver)) {
+            throw new IllegalArgumentException("Unknown solver: " + solver);
+        }
+        // The bound stops with the budget, or as soon as the solve returns
+        CancellationToken boundToken = new CancellationToken();
+        CompletableFuture<Double> bound = options.getTargetGap() > 0
+                ? HeldKarpBound.computeAsync(cities, new SearchLimits(budgetMillis, 0, boundToken))
+                : null;
+        try {
+            return solve(solver, cities, options, budgetMillis, token, listener, bound);
+        } finally {
+            boundToken.cancel();
+        }
+    }
+
+    /**
+     * Solves within a time budget once the lower bound, if any, is under way.
+     *
+     * @param solver       The solver name.
+     * @param cities       The cities to use in the algorithm.
+     * @param options      The solver settings.
+     * @param budgetMillis The time budget in milliseconds, 0 for none.
+     * @param token        The token stopping the search early, or
+     *                     {@code null}.
+     * @param listener     The listener receiving every shorter tour, or
+     *                     {@code null}.
+     * @param bound        The future lower bound, or {@code null} without a
+     *                     target gap.
+     * @return The best tour found, starting and ending at city 0.
+     */
+    private static int[] solve(String solver, CityStore cities, SolveOptions options, long budgetMillis,
+            CancellationToken token, TourListener listener, CompletableFuture<Double> bound) {
+        long startTime = System.nanoTime();
+        SearchLimits limits = new SearchLimits(budgetMillis, 0, token);
+        BestTour best = new BestTour();
+
+        ResultCache cache = options.getResultCache();
+        int[] cached = cache != null ? cache.get(solver, cities, options) : null;
+        if (cached != null) {
+            publish(best, cached, cities, listener, startTime);
+            return best.getPath();
+        }
+
+        // A quick first answer, completed in index order if the budget runs out
+        publish(best, SolverNN.solveNearestNeighbour(cities, 0, limits), cities, listener, startTime);
+
+        // A tour carried over from a similar instance replaces the construction
+        int[] warm = cache != null && (options.isImprove() || solver.equals("lk"))
+                ? cache.warmStart(solver, cities, options)
+                : null;
+        if (warm != null) {
+            publish(best, warm, cities, listener, startTime);
+        }
+
+        boolean constructs = !solver.equals("lk") && (!solver.equals("nn") || options.getStarts() > 1);
+        if (constructs && warm == null && !limits.isExpired()) {
+            int[] path = construct(solver, cities, options, limits);
+            if (path != null) {
+                publish(best, path, cities, listener, startTime);
+            }
+        }
+
+        if ((options.isImprove() || solver.equals("lk")) && !limits.isExpired() && cities.size() > 1) {
+            CandidateLists candidates = CandidateLists.reuseOrBuild(options.getCandidates(), cities,
+                    LocalSearch.DEFAULT_CANDIDATES, limits);
+            if (candidates == null) {
+                return best.getPath();
+            }
+            Tour tour = Tour.fromClosedPath(best.getPath());
+            SearchLimits improveLimits = limits.withProgress(
+                    () -> publish(best, tour.toClosedPath(0), cities, listener, startTime), PUBLISH_INTERVAL_MILLIS);
+            if (bound != null) {
+                improveLimits = improveLimits.withGoal(
+                        HeldKarpBound.withinGap(bound, cities, tour, options.getTargetGap()), PUBLISH_INTERVAL_MILLIS);
+            }
+            if (solver.equals("lk")) {
+                SolverLK.improve(cities, tour, candidates, improveLimits);
+            } else {
+                LocalSearch.improve(cities, tour, candidates, improveLimits);
+            }
+            publish(best, tour.toClosedPath(0), cities, listener, startTime);
+        }
+
+        // Tours cut short by the budget are not worth keeping
+        if (cache != null && !limits.isExpired()) {
+            cache.put(solver, cities, options, best.getPath());
+        }
+        return best.getPath();
+    }
+
+    /**
+     * Runs a construction on a background thread, waiting for it until the
+     * limits expire. The construction is then cancelled and gives up at its
+     * next check, without being waited for.
+     *
+     * @param solver  The solver name.
+     * @param cities  The cities to use in the algorithm.
+     * @param options The solver settings.
+     * @param limits  The limits of the whole solve.
+     * @return The constructed tour, or {@code null} if it did not finish in
+     *         time.
+     */
+    private static int[] construct(String solver, CityStore cities, SolveOptions options, SearchLimits limits) {
+        SolveOptions constructOptions = new SolveOptions(options);
+        constructOptions.setImprove(false);
+        constructOptions.setResultCache(null);
+        // Only the exact solver searches during construction; stop it with the budget, if there is one
+        if (limits.hasDeadline()) {
+            constructOptions.setTimeLimitMillis(Math.max(1, limits.remainingMillis()));
+        }
+        CancellationToken constructionToken = new CancellationToken();
+        constructOptions.setCancellation(constructionToken);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "anytime-construction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<int[]> construction = executor.submit(() -> Solvers.solve(solver, cities, constructOptions));
+        executor.shutdown();
+        try {
+            // Wake up regularly to notice a cancellation
+            while (!limits.isExpired()) {
+                try {
+                    return construction.get(Math.min(limits.remainingMillis(), PUBLISH_INTERVAL_MILLIS),
+                            TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Check the limits again
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Construction failed", e.getCause());
+        }
+        constructionToken.cancel();
+        return null;
+    }
+
+    /**
+     * Offers a tour and reports it if it is the new best.
+     *
+     * @param best      The best tour so far.
+     * @param path      The closed path of city indices, starting at city 0.
+     * @param cities    The cities the path refers to.
+     * @param listener  The listener, or {@code null}.
+     * @param startTime The time the solve started, from {@link System#nanoTime()}.
+     */
+    private static void publish(BestTour best, int[] path, CityStore cities, TourListener listener, long startTime) {
+        double length = UserInterface.calculateTotalDistance(cities, path);
+        if (best.offer(path, length) && listener != null) {
+            listener.tourImproved(path, length, (System.nanoTime() - startTime) / 1_000_000L);
+        }
+    }
+}
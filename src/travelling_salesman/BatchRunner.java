@@ -0,0 +1,434 @@
+package travelling_salesman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several solvers over many instances without user interaction and writes
+ * one CSV row or JSON object per instance and solver.
+ * <p>
+ * Instances are solved in parallel on a fixed pool of worker threads, each
+ * worker running the selected solvers one after another on its instance.
+ * Results are written in the order of the instance list, as soon as all
+ * earlier instances are done, so the output does not depend on the thread
+ * scheduling. A result waiting for an earlier instance keeps only its tour
+ * as city identifiers, not the cities of its instance.
+ */
+public class BatchRunner {
+    /**
+     * Comma-separated values, one row per result with a header row.
+     */
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * A JSON array with one object per result.
+     */
+    public static final String FORMAT_JSON = "json";
+
+    private static final String[] COLUMNS = { "file", "solver", "cities", "length", "wall_ms", "cpu_ms", "tour",
+            "error" };
+
+    /**
+     * The outcome of running one solver on one instance.
+     */
+    private static class Result {
+        private final String file;
+        private final String solver;
+        private int cities;
+        private double length;
+        private long wallNanos;
+        private long cpuNanos = -1;
+        private int[] tour;
+        private String error = "";
+
+        /**
+         * Constructs an empty result.
+         *
+         * @param file   The instance file path.
+         * @param solver The solver name.
+         */
+        private Result(String file, String solver) {
+            this.file = file;
+            this.solver = solver;
+        }
+    }
+
+    /**
+     * Collects the instance files to run. A directory yields its regular files
+     * in name order, skipping binary caches whose text file is also present.
+     * Any other file is read as a list of instance paths, one per line; blank
+     * lines and lines starting with {@code #} are ignored.
+     *
+     * @param source The directory or list file.
+     * @return The instance file paths.
+     * @throws RuntimeException if the source cannot be read.
+     */
+    public static List<String> listInstances(String source) {
+        File file = new File(source);
+        List<String> paths = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] entries = file.listFiles();
+            if (entries == null) {
+                System.err.println("Error reading directory: " + source);
+                throw new RuntimeException("Error reading directory");
+            }
+            Arrays.sort(entries);
+            Set<String> names = new HashSet<>();
+            for (File entry : entries) {
+                names.add(entry.getName());
+            }
+            for (File entry : entries) {
+                String name = entry.getName();
+                if (!entry.isFile() || name.startsWith(".")) {
+                    continue;
+                }
+                if (name.endsWith(BinaryInstanceFile.EXTENSION)
+                        && names.contains(name.substring(0, name.length() - BinaryInstanceFile.EXTENSION.length()))) {
+                    continue;
+                }
+                paths.add(entry.getPath());
+            }
+            return paths;
+        }
+
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    paths.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading instance list: " + source);
+            throw new RuntimeException("Error reading instance list", e);
+        }
+        return paths;
+    }
+
+    /**
+     * Runs every solver on every instance and writes the results.
+     *
+     * @param instances The instance file paths.
+     * @param solvers   The solver names, see {@link Solvers#NAMES}.
+     * @param options   The solver settings; the thread count sets the number of
+     *                  instances solved at once, and is shared out between
+     *                  them for parallel solvers.
+     * @param format    {@link #FORMAT_CSV} or {@link #FORMAT_JSON}.
+     * @param out       The stream to write the results to.
+     * @return The number of results with an error.
+     */
+    public static int run(List<String> instances, List<String> solvers, SolveOptions options, String format,
+            PrintStream out) {
+        boolean json = FORMAT_JSON.equals(format);
+        int workers = Math.max(1, Math.min(options.getThreads(), instances.size()));
+        // Each worker gets its share of the threads, rather than all of them
+        SolveOptions solveOptions = new SolveOptions(options);
+        solveOptions.setThreads(Math.max(1, options.getThreads() / workers));
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<List<Result>>> futures = new ArrayList<>(instances.size());
+            for (String instance : instances) {
+                futures.add(pool.submit(() -> solveInstance(instance, solvers, solveOptions)));
+            }
+
+            int failures = 0;
+            boolean first = true;
+            out.println(json ? "[" : String.join(",", COLUMNS));
+            for (Future<List<Result>> future : futures) {
+                for (Result result : await(future)) {
+                    if (!result.error.isEmpty()) {
+                        failures++;
+                    }
+                    if (json) {
+                        out.print(first ? "  " : ",\n  ");
+                        writeJson(result, out);
+                    } else {
+                        writeCsv(result, out);
+                    }
+                    first = false;
+                }
+                out.flush();
+            }
+            if (json) {
+                out.println(first ? "]" : "\n]");
+            }
+            out.flush();
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the results of one instance.
+     *
+     * @param future The pending results.
+     * @return The results.
+     */
+    private static List<Result> await(Future<List<Result>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch run interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Batch worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Loads an instance and runs each solver on it. Failures are recorded in
+     * the results rather than thrown.
+     *
+     * @param instance The instance file path.
+     * @param solvers  The solver names.
+     * @param options  The solver settings.
+     * @return One result per solver.
+     */
+    @SuppressWarnings("try")
+    private static List<Result> solveInstance(String instance, List<String> solvers, SolveOptions options) {
+        List<Result> results = new ArrayList<>(solvers.size());
+        MetricsSink sink = options.getMetricsSink();
+        SolverMetrics loadMetrics = sink != null ? SolverMetrics.start(instance) : null;
+        CityStore cities = null;
+        SolveOptions instanceOptions = new SolveOptions(options);
+        String loadError = "";
+        try {
+            Instance loaded = InstanceLoader.load(instance, options.isInstanceCache());
+            cities = loaded.getCities();
+            instanceOptions.setCandidates(loaded.getCandidates());
+            if (cities.size() == 0) {
+                loadError = "No cities found in the file";
+            }
+        } catch (RuntimeException e) {
+            loadError = describe(e);
+        }
+        if (loadMetrics != null) {
+            loadMetrics.setSolver("load", cities != null ? cities.size() : 0);
+            loadMetrics.finish(sink);
+        }
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+        for (String solver : solvers) {
+            Result result = new Result(instance, solver);
+            results.add(result);
+            if (!loadError.isEmpty()) {
+                result.error = loadError;
+                continue;
+            }
+            result.cities = cities.size();
+            SolverMetrics metrics = sink != null ? SolverMetrics.start(instance) : null;
+            try {
+                long cpuStart = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+                long wallStart = System.nanoTime();
+                int[] solution = Solvers.solve(solver, cities, instanceOptions);
+                result.wallNanos = System.nanoTime() - wallStart;
+                if (solver.equals("exact") && SolverExact.reachedTimeLimit(instanceOptions, result.wallNanos)) {
+                    System.err.println(instance + ": time limit of " + instanceOptions.getExactTimeLimitMillis()
+                            + " ms reached, the exact tour is not proven optimal");
+                }
+                // Only the calling thread; helper threads of parallel solvers are not counted
+                if (cpuTimeSupported) {
+                    result.cpuNanos = threadBean.getCurrentThreadCpuTime() - cpuStart;
+                }
+                try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.EVALUATION)) {
+                    result.length = UserInterface.calculateTotalDistance(cities, solution);
+                }
+                // Keep only the identifiers, so that waiting results do not hold the instance
+                result.tour = tourIds(cities, solution);
+            } catch (RuntimeException e) {
+                result.error = describe(e);
+            }
+            if (metrics != null) {
+                metrics.setSolver(solver, cities.size());
+                metrics.finish(sink);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Maps a tour to the identifiers of its cities.
+     *
+     * @param cities   The cities the solution refers to.
+     * @param solution The city indices in the solution.
+     * @return The city identifiers in tour order.
+     */
+    private static int[] tourIds(CityStore cities, int[] solution) {
+        int[] ids = new int[solution.length];
+        for (int i = 0; i < solution.length; i++) {
+            ids[i] = cities.getId(solution[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Formats a tour of city identifiers joined by a separator.
+     *
+     * @param tour      The city identifiers in tour order.
+     * @param separator The character between two identifiers.
+     * @return The formatted tour.
+     */
+    private static String formatTour(int[] tour, char separator) {
+        StringBuilder sb = new StringBuilder(tour.length * 6);
+        for (int i = 0; i < tour.length; i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            sb.append(tour[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a tour as city identifiers joined by a separator: dashes like the
+     * interactive output, or commas for the elements of a JSON array.
+     *
+     * @param cities    The cities the solution refers to.
+     * @param solution  The city indices in the solution.
+     * @param separator The character between two identifiers.
+     * @return The formatted tour.
+     */
+    static String formatTour(CityStore cities, int[] solution, char separator) {
+        return formatTour(tourIds(cities, solution), separator);
+    }
+
+    /**
+     * Describes an exception for the error column.
+     *
+     * @param e The exception.
+     * @return The exception message, or its class name if it has none.
+     */
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Formats a duration in milliseconds with microsecond precision.
+     *
+     * @param nanos The duration in nanoseconds, negative if unknown.
+     * @return The formatted duration, or an empty string if unknown.
+     */
+    private static String millis(long nanos) {
+        return nanos < 0 ? "" : String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Writes a result as a CSV row.
+     *
+     * @param result The result.
+     * @param out    The stream to write to.
+     */
+    private static void writeCsv(Result result, PrintStream out) {
+        boolean solved = result.error.isEmpty();
+        String[] values = { result.file, result.solver, Integer.toString(result.cities),
+                solved ? Double.toString(result.length) : "", solved ? millis(result.wallNanos) : "",
+                solved ? millis(result.cpuNanos) : "", solved ? formatTour(result.tour, '-') : "",
+                result.error };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(csvField(values[i]));
+        }
+        out.println(sb);
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break.
+     *
+     * @param value The field value.
+     * @return The field as written to the file.
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Writes a result as a JSON object on a single line.
+     *
+     * @param result The result.
+     * @param out    The stream to write to.
+     */
+    private static void writeJson(Result result, PrintStream out) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"file\": ").append(jsonString(result.file));
+        sb.append(", \"solver\": ").append(jsonString(result.solver));
+        sb.append(", \"cities\": ").append(result.cities);
+        if (result.error.isEmpty()) {
+            // JSON has no NaN or Infinity
+            sb.append(", \"length\": ")
+                    .append(Double.isFinite(result.length) ? Double.toString(result.length) : "null");
+            sb.append(", \"wall_ms\": ").append(millis(result.wallNanos));
+            sb.append(", \"cpu_ms\": ").append(result.cpuNanos < 0 ? "null" : millis(result.cpuNanos));
+            sb.append(", \"tour\": [").append(formatTour(result.tour, ',')).append(']');
+            sb.append(", \"error\": null}");
+        } else {
+            sb.append(", \"error\": ").append(jsonString(result.error)).append('}');
+        }
+        out.print(sb);
+    }
+
+    /**
+     * Quotes and escapes a JSON string.
+     *
+     * @param value The string.
+     * @return The JSON string literal.
+     */
+    static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
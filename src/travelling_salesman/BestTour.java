@@ -0,0 +1,72 @@
+package travelling_salesman;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free holder of the shortest tour offered so far. Safe to share between
+ * threads.
+ */
+public class BestTour {
+    private final AtomicReference<Entry> best = new AtomicReference<>();
+
+    /**
+     * Offers a tour, keeping it if it is shorter than the current best.
+     *
+     * @param path   The closed path of city indices.
+     * @param length The length of the tour.
+     * @return {@code true} if the tour became the new best.
+     */
+    public boolean offer(int[] path, double length) {
+        Entry candidate = new Entry(path, length);
+        while (true) {
+            Entry current = best.get();
+            if (current != null && current.length <= length) {
+                return false;
+            }
+            if (best.compareAndSet(current, candidate)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the best tour offered so far.
+     *
+     * @return The closed path of the best tour, or {@code null} if none was
+     *         offered.
+     */
+    public int[] getPath() {
+        Entry current = best.get();
+        return current == null ? null : current.path;
+    }
+
+    /**
+     * Returns the length of the best tour offered so far.
+     *
+     * @return The length of the best tour, or {@link Double#POSITIVE_INFINITY}
+     *         if none was offered.
+     */
+    public double getLength() {
+        Entry current = best.get();
+        return current == null ? Double.POSITIVE_INFINITY : current.length;
+    }
+
+    /**
+     * Immutable pair of a tour and its length.
+     */
+    private static class Entry {
+        private final int[] path;
+        private final double length;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param path   The closed path of city indices.
+         * @param length The length of the tour.
+         */
+        Entry(int[] path, double length) {
+            this.path = path;
+            this.length = length;
+        }
+    }
+}
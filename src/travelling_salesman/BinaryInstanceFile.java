@@ -0,0 +1,196 @@
+package travelling_salesman;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility class for reading and writing the compact binary instance format.
+ * <p>
+ * All values are little-endian. The file starts with a 16 byte header: the
+ * magic bytes {@code TSPB}, the format version, the number of cities
+ * {@code n} and the candidate list width {@code k} (0 when no candidate lists
+ * are stored). The header is followed by {@code n} int identifiers, padding to
+ * an 8 byte boundary, {@code n} double x-coordinates, {@code n} double
+ * y-coordinates, and finally {@code n} int candidate counts and
+ * {@code n * k} int candidate indices when {@code k > 0}.
+ */
+public class BinaryInstanceFile {
+    /**
+     * File extension of binary instance files.
+     */
+    public static final String EXTENSION = ".tspb";
+
+    private static final int MAGIC = 0x42505354; // "TSPB" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Writes an instance in the binary format. The file is written under a
+     * temporary name and then atomically moved into place.
+     *
+     * @param cities     The cities to write.
+     * @param candidates The candidate lists to write, or {@code null} to omit
+     *                   them.
+     * @param path       The path of the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(CityStore cities, CandidateLists candidates, Path path) throws IOException {
+        int n = cities.size();
+        int k = candidates == null ? 0 : candidates.getK();
+        long size = fileSize(n, k);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Instance too large for the binary format: " + n + " cities");
+        }
+
+        // Written to a temporary file and moved into place, so that readers,
+        // including after a crash mid-write, never see a partly written file
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(k);
+
+                buffer.asIntBuffer().put(cities.getIds(), 0, n);
+                buffer.position(coordinatesOffset(n));
+                buffer.asDoubleBuffer().put(cities.getXCoordinates(), 0, n);
+                buffer.position(coordinatesOffset(n) + n * Double.BYTES);
+                buffer.asDoubleBuffer().put(cities.getYCoordinates(), 0, n);
+
+                if (k > 0) {
+                    buffer.position(candidatesOffset(n));
+                    buffer.asIntBuffer().put(candidates.getCounts(), 0, n).put(candidates.getNeighbours(), 0, n * k);
+                }
+                buffer.force();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an instance in the binary format. The file is memory-mapped and its
+     * arrays are bulk-copied straight into the primitive arrays of the store.
+     *
+     * @param path The path of the file to read.
+     * @return The instance read from the file.
+     * @throws IOException if the file cannot be read or is not a valid binary
+     *                     instance file, including candidate lists that refer
+     *                     to cities outside the instance.
+     */
+    public static Instance read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Truncated binary instance file: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary instance file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary instance version " + version + ": " + path);
+            }
+            int n = buffer.getInt();
+            int k = buffer.getInt();
+            if (n < 0 || k < 0 || channel.size() > Integer.MAX_VALUE || channel.size() != fileSize(n, k)) {
+                throw new IOException("Corrupt binary instance file: " + path);
+            }
+
+            int[] ids = new int[n];
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            buffer.asIntBuffer().get(ids);
+            buffer.position(coordinatesOffset(n));
+            buffer.asDoubleBuffer().get(xs);
+            buffer.position(coordinatesOffset(n) + n * Double.BYTES);
+            buffer.asDoubleBuffer().get(ys);
+            CityStore cities = new CityStore(ids, xs, ys, n);
+
+            CandidateLists candidates = null;
+            if (k > 0) {
+                int[] counts = new int[n];
+                int[] neighbours = new int[n * k];
+                buffer.position(candidatesOffset(n));
+                buffer.asIntBuffer().get(counts).get(neighbours);
+                checkCandidates(counts, neighbours, n, k, path);
+                candidates = new CandidateLists(k, neighbours, counts);
+            }
+            return new Instance(cities, candidates);
+        }
+    }
+
+    /**
+     * Checks that the stored candidate lists only refer to other cities of the
+     * instance, so that a corrupt file fails here rather than in a search.
+     *
+     * @param counts     The number of candidates of every city.
+     * @param neighbours The candidates of every city, {@code k} per city.
+     * @param n          The number of cities.
+     * @param k          The candidate list width.
+     * @param path       The path of the file, for the error message.
+     * @throws IOException if a count or index is out of range.
+     */
+    private static void checkCandidates(int[] counts, int[] neighbours, int n, int k, Path path)
+            throws IOException {
+        for (int city = 0; city < n; city++) {
+            int count = counts[city];
+            if (count < 0 || count > k || count > n - 1) {
+                throw new IOException("Corrupt candidate count " + count + " for city " + city + ": " + path);
+            }
+            for (int r = 0; r < count; r++) {
+                int neighbour = neighbours[city * k + r];
+                if (neighbour < 0 || neighbour >= n || neighbour == city) {
+                    throw new IOException("Corrupt candidate " + neighbour + " for city " + city + ": " + path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the byte offset of the x-coordinates, aligned to 8 bytes.
+     *
+     * @param n The number of cities.
+     * @return The offset of the coordinate arrays.
+     */
+    private static int coordinatesOffset(int n) {
+        return (HEADER_BYTES + n * Integer.BYTES + 7) & ~7;
+    }
+
+    /**
+     * Returns the byte offset of the candidate counts.
+     *
+     * @param n The number of cities.
+     * @return The offset of the candidate section.
+     */
+    private static int candidatesOffset(int n) {
+        return coordinatesOffset(n) + 2 * n * Double.BYTES;
+    }
+
+    /**
+     * Returns the size of a binary instance file.
+     *
+     * @param n The number of cities.
+     * @param k The candidate list width.
+     * @return The file size in bytes.
+     */
+    private static long fileSize(int n, int k) {
+        long size = (long) candidatesOffset(n);
+        if (k > 0) {
+            size += (long) n * Integer.BYTES * (1L + k);
+        }
+        return size;
+    }
+}
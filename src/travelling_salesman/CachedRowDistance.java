@@ -0,0 +1,78 @@
+package travelling_salesman;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distance provider that keeps a bounded number of full distance rows in a
+ * least-recently-used cache. Suited to medium-sized instances where solvers
+ * scan whole rows repeatedly but a full matrix does not fit in memory.
+ * <p>
+ * Not thread-safe.
+ */
+public class CachedRowDistance implements DistanceProvider {
+    private final CityStore cities;
+    private final LinkedHashMap<Integer, double[]> rows;
+    private int lastRowIndex = -1;
+    private double[] lastRow;
+
+    /**
+     * Constructs a provider caching at most {@code maxRows} rows.
+     *
+     * @param cities  The cities to compute distances for.
+     * @param maxRows The maximum number of rows kept in memory.
+     */
+    public CachedRowDistance(CityStore cities, int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("At least one row must be cached");
+        }
+        this.cities = cities;
+        this.rows = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+                return size() > maxRows;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return cities.size();
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return row(i)[j];
+    }
+
+    @Override
+    public void distancesFrom(int i, double[] out) {
+        System.arraycopy(row(i), 0, out, 0, cities.size());
+    }
+
+    /**
+     * Returns the distances from a city to every other city, computing and
+     * caching the row if needed.
+     *
+     * @param i The index of the city.
+     * @return The row of distances from the city.
+     */
+    public double[] row(int i) {
+        // Skip the map lookup for the common case of scanning a single row
+        if (i == lastRowIndex) {
+            return lastRow;
+        }
+        double[] row = rows.get(i);
+        if (row == null) {
+            int n = cities.size();
+            row = new double[n];
+            DistanceKernels.row(cities, i, row);
+            rows.put(i, row);
+        }
+        lastRowIndex = i;
+        lastRow = row;
+        return row;
+    }
+}
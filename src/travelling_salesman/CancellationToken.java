@@ -0,0 +1,25 @@
+package travelling_salesman;
+
+/**
+ * Flag used to ask a running search to stop early. Safe to share between
+ * threads.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Asks every search observing this token to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the token was cancelled.
+     *
+     * @return {@code true} if searches must stop.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,167 @@
+package travelling_salesman;
+
+/**
+ * Lists of the nearest neighbours of every city, stored in a single flat
+ * array. Used to restrict improvement moves and sparse graphs to short edges.
+ */
+public class CandidateLists {
+    private final int k;
+    private final int[] neighbours;
+    private final int[] counts;
+
+    /**
+     * Constructs candidate lists over existing arrays.
+     *
+     * @param k          The maximum number of neighbours per city.
+     * @param neighbours The neighbours of city {@code i} at positions
+     *                   {@code i * k} to {@code i * k + counts[i] - 1}.
+     * @param counts     The number of neighbours of each city.
+     */
+    public CandidateLists(int k, int[] neighbours, int[] counts) {
+        this.k = k;
+        this.neighbours = neighbours;
+        this.counts = counts;
+    }
+
+    /**
+     * Computes the {@code k} nearest neighbours of every city using a
+     * {@link KdTree}.
+     *
+     * @param cities The cities to compute neighbours for.
+     * @param k      The number of neighbours per city.
+     * @return The candidate lists, nearest neighbour first.
+     */
+    public static CandidateLists build(CityStore cities, int k) {
+        return build(cities, k, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Computes the {@code k} nearest neighbours of every city, giving up if the
+     * limits expire first.
+     *
+     * @param cities The cities to compute neighbours for.
+     * @param k      The number of neighbours per city.
+     * @param limits The limits on the computation.
+     * @return The candidate lists, nearest neighbour first, or {@code null} if
+     *         the limits expired.
+     */
+    public static CandidateLists build(CityStore cities, int k, SearchLimits limits) {
+        int n = cities.size();
+        k = Math.max(0, Math.min(k, n - 1));
+        int[] neighbours = new int[n * k];
+        int[] counts = new int[n];
+        int[] found = new int[k];
+        KdTree tree = new KdTree(cities);
+
+        for (int i = 0; i < n; i++) {
+            if ((i & 1023) == 1023 && limits.isExpired()) {
+                return null;
+            }
+            int count = tree.nearest(i, k, found);
+            System.arraycopy(found, 0, neighbours, i * k, count);
+            counts[i] = count;
+        }
+        return new CandidateLists(k, neighbours, counts);
+    }
+
+    /**
+     * Returns precomputed candidate lists cut to {@code k} neighbours per
+     * city if they are at least that wide, or computes new ones otherwise.
+     *
+     * @param precomputed The precomputed lists of the cities, or {@code null}.
+     * @param cities      The cities to compute neighbours for.
+     * @param k           The number of neighbours per city.
+     * @return The candidate lists, nearest neighbour first.
+     */
+    public static CandidateLists reuseOrBuild(CandidateLists precomputed, CityStore cities, int k) {
+        return reuseOrBuild(precomputed, cities, k, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Returns precomputed candidate lists cut to {@code k} neighbours per
+     * city if they are at least that wide, or computes new ones otherwise,
+     * giving up if the limits expire first.
+     *
+     * @param precomputed The precomputed lists of the cities, or {@code null}.
+     * @param cities      The cities to compute neighbours for.
+     * @param k           The number of neighbours per city.
+     * @param limits      The limits on the computation.
+     * @return The candidate lists, nearest neighbour first, or {@code null} if
+     *         the limits expired.
+     */
+    public static CandidateLists reuseOrBuild(CandidateLists precomputed, CityStore cities, int k,
+            SearchLimits limits) {
+        int n = cities.size();
+        k = Math.max(0, Math.min(k, n - 1));
+        if (precomputed == null || precomputed.size() != n || precomputed.k < k) {
+            return build(cities, k, limits);
+        }
+        if (precomputed.k == k) {
+            return precomputed;
+        }
+        int[] neighbours = new int[n * k];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            counts[i] = Math.min(precomputed.counts[i], k);
+            System.arraycopy(precomputed.neighbours, i * precomputed.k, neighbours, i * k, counts[i]);
+        }
+        return new CandidateLists(k, neighbours, counts);
+    }
+
+    /**
+     * Returns the maximum number of neighbours per city.
+     *
+     * @return The list width.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the number of cities covered.
+     *
+     * @return The number of cities.
+     */
+    public int size() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the number of neighbours of a city.
+     *
+     * @param city The index of the city.
+     * @return The number of neighbours.
+     */
+    public int count(int city) {
+        return counts[city];
+    }
+
+    /**
+     * Returns a neighbour of a city.
+     *
+     * @param city The index of the city.
+     * @param rank The rank of the neighbour, 0 being the nearest.
+     * @return The index of the neighbour.
+     */
+    public int get(int city, int rank) {
+        return neighbours[city * k + rank];
+    }
+
+    /**
+     * Returns the backing neighbour array.
+     *
+     * @return The flat neighbour array.
+     */
+    int[] getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * Returns the backing count array.
+     *
+     * @return The neighbour count of each city.
+     */
+    int[] getCounts() {
+        return counts;
+    }
+}
@@ -82,8 +82,9 @@ class City {
 	 * @return The Euclidean distance to the other city.
 	 */
 	public double distanceTo(City other) {
-		return Math.sqrt(Math.pow(other.getXCoordinate() - this.getXCoordinate(), 2) +
-				Math.pow(other.getYCoordinate() - this.getYCoordinate(), 2));
+		double dx = other.xCoordinate - xCoordinate;
+		double dy = other.yCoordinate - yCoordinate;
+		return Math.sqrt(dx * dx + dy * dy);
 	}
 
 	/**
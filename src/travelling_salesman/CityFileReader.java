@@ -2,13 +2,44 @@ package travelling_salesman;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
  * Utility class for reading city data from a file.
  */
 public class CityFileReader {
+    /**
+     * Initial size of the read buffer used by the streaming parser.
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of bytes of in-memory data parsed before the number of cities is
+     * estimated from their average line length.
+     */
+    private static final int CAPACITY_SAMPLE_BYTES = 1 << 16;
+
+    /**
+     * Exact powers of ten usable by the fast floating-point path.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /**
+     * Largest mantissa that is exactly representable as a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
     /**
      * Reads city data from a specified file and creates a list of cities.
      * 
@@ -51,4 +82,410 @@ public class CityFileReader {
 
         return cities;
     }
+
+    /**
+     * Reads city data from a specified file directly into a {@link CityStore}.
+     * <p>
+     * The file is streamed through a large NIO buffer and tokenized by hand, so
+     * well-formed lines are parsed without allocating any objects. The parser
+     * targets a throughput of at least 100 MB/s on a single core, more than ten
+     * times that of {@link #readCitiesFromFile(String)}. Lines the fast
+     * tokenizer does not accept are handed to the same parsing logic as
+     * {@link #readCitiesFromFile(String)}, so numbers in other formats are still
+     * read and malformed lines are reported in the same way.
+     *
+     * @param filePath The path of the file to read city data from.
+     * @return The cities read from the file.
+     * @throws RuntimeException if the file is not found or cannot be read.
+     */
+    public static CityStore readCityStoreFromFile(String filePath) {
+        StoreBuilder builder = new StoreBuilder();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            boolean estimated = false;
+
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int filled = 0;
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                // Grow the buffer if a single line does not fit
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled));
+                if (read < 0) {
+                    endOfFile = true;
+                } else {
+                    filled += read;
+                }
+
+                // Parse every complete line, or everything once the file has ended
+                int lineStart = 0;
+                for (int i = 0; i < filled; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' || b == '\r') {
+                        parseLine(buffer, lineStart, i, builder);
+                        lineStart = i + 1;
+                    }
+                }
+                if (endOfFile && lineStart < filled) {
+                    parseLine(buffer, lineStart, filled, builder);
+                    lineStart = filled;
+                }
+                // Size the arrays for the whole file from the lines of the first read
+                if (!estimated) {
+                    builder.expect(fileSize, lineStart);
+                    estimated = true;
+                }
+
+                // Keep the trailing partial line for the next read
+                System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                filled -= lineStart;
+            }
+        } catch (NoSuchFileException e) {
+            System.err.println("File not found: " + filePath);
+            throw new RuntimeException("File not found", e);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filePath);
+            throw new RuntimeException("Error reading file", e);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Parses city data held in memory, in the same format and with the same
+     * parser as {@link #readCityStoreFromFile(String)}.
+     *
+     * @param data   The bytes of the city data.
+     * @param length The number of bytes to parse.
+     * @return The cities read from the data.
+     */
+    public static CityStore parseCityStore(byte[] data, int length) {
+        StoreBuilder builder = new StoreBuilder();
+        boolean estimated = false;
+
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (b == '\n' || b == '\r') {
+                parseLine(data, lineStart, i, builder);
+                lineStart = i + 1;
+                if (!estimated && lineStart >= CAPACITY_SAMPLE_BYTES) {
+                    builder.expect(length, lineStart);
+                    estimated = true;
+                }
+            }
+        }
+        if (lineStart < length) {
+            parseLine(data, lineStart, length, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses a single line of the form {@code number x y}. Lines the fast
+     * tokenizer cannot handle are decoded and parsed like
+     * {@link #readCitiesFromFile(String)} does.
+     *
+     * @param buffer  The buffer holding the line.
+     * @param start   The position of the first byte of the line.
+     * @param end     The position after the last byte of the line.
+     * @param builder The builder receiving the parsed city.
+     */
+    private static void parseLine(byte[] buffer, int start, int end, StoreBuilder builder) {
+        Tokenizer tokenizer = builder.tokenizer;
+        tokenizer.reset(buffer, start, end);
+        if (!tokenizer.skipWhitespace()) {
+            return;
+        }
+
+        if (tokenizer.readInt() && tokenizer.skipWhitespace() && tokenizer.readDouble()) {
+            double x = tokenizer.doubleValue;
+            int cityNumber = tokenizer.intValue;
+            if (tokenizer.skipWhitespace() && tokenizer.readDouble() && !tokenizer.skipWhitespace()) {
+                builder.add(cityNumber, x, tokenizer.doubleValue);
+                return;
+            }
+        }
+
+        // Fall back to the string-based parser for anything unusual
+        String line = new String(buffer, start, end - start, Charset.defaultCharset()).trim();
+        if (line.isEmpty())
+            return;
+        String[] parts = line.split("\\s+");
+        if (parts.length == 3) {
+            try {
+                int cityNumber = Integer.parseInt(parts[0]);
+                double x = Double.parseDouble(parts[1]);
+                double y = Double.parseDouble(parts[2]);
+                builder.add(cityNumber, x, y);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number format in line: " + line + " - " + e.getMessage());
+            }
+        } else {
+            System.err.println("Invalid line format: " + line);
+        }
+    }
+
+    /**
+     * Hand-written tokenizer for the whitespace separated numbers of a line.
+     * Only plain decimal numbers are accepted; any other input makes the read
+     * methods return {@code false}.
+     */
+    private static class Tokenizer {
+        private byte[] buffer;
+        private int position;
+        private int end;
+        private int intValue;
+        private double doubleValue;
+
+        /**
+         * Points the tokenizer at a new line.
+         *
+         * @param buffer The buffer holding the line.
+         * @param start  The position of the first byte of the line.
+         * @param end    The position after the last byte of the line.
+         */
+        void reset(byte[] buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Skips spaces and tabs.
+         *
+         * @return {@code true} if a non-whitespace byte follows.
+         */
+        boolean skipWhitespace() {
+            while (position < end) {
+                byte b = buffer[position];
+                if (b != ' ' && b != '\t' && b != '\f' && b != 0x0B) {
+                    return true;
+                }
+                position++;
+            }
+            return false;
+        }
+
+        /**
+         * Reads an optionally signed decimal integer that fits in an int.
+         *
+         * @return {@code true} if an integer token was read.
+         */
+        boolean readInt() {
+            boolean negative = false;
+            if (buffer[position] == '-' || buffer[position] == '+') {
+                negative = buffer[position] == '-';
+                position++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < end) {
+                int digit = buffer[position] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                if (++digits > 10) {
+                    return false;
+                }
+                position++;
+            }
+            value = negative ? -value : value;
+            if (digits == 0 || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE || !atTokenEnd()) {
+                return false;
+            }
+            intValue = (int) value;
+            return true;
+        }
+
+        /**
+         * Reads an optionally signed decimal number with an optional fraction and
+         * exponent. Values the fast path cannot convert exactly are converted
+         * with {@link Double#parseDouble(String)}.
+         *
+         * @return {@code true} if a number token was read.
+         */
+        boolean readDouble() {
+            int tokenStart = position;
+            boolean negative = false;
+            if (buffer[position] == '-' || buffer[position] == '+') {
+                negative = buffer[position] == '-';
+                position++;
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean exact = true;
+
+            // Integer part
+            while (position < end) {
+                int digit = buffer[position] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    exponent++;
+                    exact = false;
+                }
+                digits++;
+                position++;
+            }
+
+            // Fraction part
+            if (position < end && buffer[position] == '.') {
+                position++;
+                while (position < end) {
+                    int digit = buffer[position] - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    if (significantDigits < 18) {
+                        mantissa = mantissa * 10 + digit;
+                        if (mantissa != 0) {
+                            significantDigits++;
+                        }
+                        exponent--;
+                    } else {
+                        exact = false;
+                    }
+                    digits++;
+                    position++;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+
+            // Exponent part
+            if (position < end && (buffer[position] == 'e' || buffer[position] == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+                    negativeExponent = buffer[position] == '-';
+                    position++;
+                }
+                int exponentValue = 0;
+                int exponentDigits = 0;
+                while (position < end) {
+                    int digit = buffer[position] - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    if (exponentValue < 100000) {
+                        exponentValue = exponentValue * 10 + digit;
+                    }
+                    exponentDigits++;
+                    position++;
+                }
+                if (exponentDigits == 0) {
+                    return false;
+                }
+                exponent += negativeExponent ? -exponentValue : exponentValue;
+            }
+            if (!atTokenEnd()) {
+                return false;
+            }
+
+            if (exact && mantissa <= MAX_EXACT_MANTISSA && Math.abs(exponent) < POWERS_OF_TEN.length) {
+                double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                        : mantissa / POWERS_OF_TEN[-exponent];
+                doubleValue = negative ? -value : value;
+            } else {
+                doubleValue = Double.parseDouble(
+                        new String(buffer, tokenStart, position - tokenStart, Charset.defaultCharset()));
+            }
+            return true;
+        }
+
+        /**
+         * Checks that the current token ends at the current position.
+         *
+         * @return {@code true} if the line ends or whitespace follows.
+         */
+        private boolean atTokenEnd() {
+            if (position == end) {
+                return true;
+            }
+            byte b = buffer[position];
+            return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+        }
+    }
+
+    /**
+     * Growable primitive arrays collecting the parsed cities.
+     */
+    private static class StoreBuilder {
+        private final Tokenizer tokenizer = new Tokenizer();
+        private int[] ids = new int[16];
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size;
+
+        /**
+         * Grows the arrays to hold at least the given number of cities.
+         *
+         * @param capacity The number of cities to make room for.
+         */
+        void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                ids = Arrays.copyOf(ids, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+            }
+        }
+
+        /**
+         * Grows the arrays to the number of cities expected in the whole
+         * input, extrapolated from the average length of the lines parsed so
+         * far, with a little headroom. Arrays that are too small still grow
+         * as cities are added, so a poor estimate only costs copies.
+         *
+         * @param totalBytes  The size of the whole input in bytes.
+         * @param parsedBytes The number of bytes parsed so far.
+         */
+        void expect(long totalBytes, long parsedBytes) {
+            if (size == 0 || parsedBytes >= totalBytes) {
+                return;
+            }
+            long expected = totalBytes * size / parsedBytes;
+            ensureCapacity((int) Math.min(expected + (expected >> 4) + 16, Integer.MAX_VALUE - 8));
+        }
+
+        /**
+         * Appends a city.
+         *
+         * @param id The identifier of the city.
+         * @param x  The x-coordinate of the city.
+         * @param y  The y-coordinate of the city.
+         */
+        void add(int id, double x, double y) {
+            if (size == ids.length) {
+                ensureCapacity(size + (size >> 1) + 16);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        /**
+         * Creates a store over the collected cities, trimming the arrays.
+         *
+         * @return The store of parsed cities.
+         */
+        CityStore build() {
+            return new CityStore(Arrays.copyOf(ids, size), Arrays.copyOf(xs, size), Arrays.copyOf(ys, size), size);
+        }
+    }
 }
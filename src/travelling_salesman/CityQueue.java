@@ -0,0 +1,61 @@
+package travelling_salesman;
+
+/**
+ * First-in first-out work queue of the cities a local search still has to
+ * look at. Every city is queued at most once, so a city whose surroundings
+ * have not changed since it was last looked at is skipped (don't-look bits).
+ */
+public class CityQueue {
+    private final int[] queue;
+    private final boolean[] queued;
+    private int head;
+    private int size;
+
+    /**
+     * Constructs an empty queue.
+     *
+     * @param capacity The number of cities, which are the integers
+     *                 {@code [0, capacity)}.
+     */
+    public CityQueue(int capacity) {
+        this.queue = new int[capacity];
+        this.queued = new boolean[capacity];
+    }
+
+    /**
+     * Returns whether no city is queued.
+     *
+     * @return {@code true} if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a city to the back of the queue unless it is already queued.
+     *
+     * @param city The city to queue.
+     */
+    public void push(int city) {
+        if (queued[city]) {
+            return;
+        }
+        queued[city] = true;
+        int tail = head + size;
+        queue[tail >= queue.length ? tail - queue.length : tail] = city;
+        size++;
+    }
+
+    /**
+     * Removes the city at the front of the queue.
+     *
+     * @return The city removed.
+     */
+    public int pop() {
+        int city = queue[head];
+        head = head + 1 == queue.length ? 0 : head + 1;
+        size--;
+        queued[city] = false;
+        return city;
+    }
+}
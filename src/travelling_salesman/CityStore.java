@@ -0,0 +1,175 @@
+package travelling_salesman;
+
+import java.util.List;
+
+/**
+ * Compact struct-of-arrays store of cities.
+ * <p>
+ * Cities are addressed by their index in the store. Coordinates and
+ * identifiers are kept in parallel primitive arrays so that the distance loops
+ * of the solvers walk contiguous memory instead of chasing {@link City}
+ * references.
+ */
+public class CityStore {
+    private final int[] ids;
+    private final double[] xCoordinates;
+    private final double[] yCoordinates;
+    private final int size;
+
+    /**
+     * Constructs a store over the given arrays. The arrays are used as-is and
+     * are not copied.
+     *
+     * @param ids          The city identifiers.
+     * @param xCoordinates The x-coordinates of the cities.
+     * @param yCoordinates The y-coordinates of the cities.
+     * @param size         The number of cities held in the arrays.
+     */
+    public CityStore(int[] ids, double[] xCoordinates, double[] yCoordinates, int size) {
+        if (size > ids.length || size > xCoordinates.length || size > yCoordinates.length) {
+            throw new IllegalArgumentException("Store size exceeds the backing arrays");
+        }
+        this.ids = ids;
+        this.xCoordinates = xCoordinates;
+        this.yCoordinates = yCoordinates;
+        this.size = size;
+    }
+
+    /**
+     * Creates a store holding the given cities in list order.
+     *
+     * @param cities The cities to copy into the store.
+     * @return A new store containing the cities.
+     */
+    public static CityStore fromCities(List<City> cities) {
+        int n = cities.size();
+        int[] ids = new int[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            City city = cities.get(i);
+            ids[i] = city.getNumber();
+            xs[i] = city.getXCoordinate();
+            ys[i] = city.getYCoordinate();
+        }
+        return new CityStore(ids, xs, ys, n);
+    }
+
+    /**
+     * Returns the number of cities in the store.
+     *
+     * @return The number of cities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the unique identifier of the city at the given index.
+     *
+     * @param index The index of the city.
+     * @return The identifier of the city.
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the x-coordinate of the city at the given index.
+     *
+     * @param index The index of the city.
+     * @return The x-coordinate of the city.
+     */
+    public double getX(int index) {
+        return xCoordinates[index];
+    }
+
+    /**
+     * Returns the y-coordinate of the city at the given index.
+     *
+     * @param index The index of the city.
+     * @return The y-coordinate of the city.
+     */
+    public double getY(int index) {
+        return yCoordinates[index];
+    }
+
+    /**
+     * Returns the backing identifier array. Only the first {@link #size()}
+     * entries are meaningful.
+     *
+     * @return The backing identifier array.
+     */
+    int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns the backing x-coordinate array. Only the first {@link #size()}
+     * entries are meaningful.
+     *
+     * @return The backing x-coordinate array.
+     */
+    double[] getXCoordinates() {
+        return xCoordinates;
+    }
+
+    /**
+     * Returns the backing y-coordinate array. Only the first {@link #size()}
+     * entries are meaningful.
+     *
+     * @return The backing y-coordinate array.
+     */
+    double[] getYCoordinates() {
+        return yCoordinates;
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two cities. Use this
+     * when only the ordering of distances matters.
+     *
+     * @param i The index of the first city.
+     * @param j The index of the second city.
+     * @return The squared distance between the two cities.
+     */
+    public double squaredDistance(int i, int j) {
+        double dx = xCoordinates[i] - xCoordinates[j];
+        double dy = yCoordinates[i] - yCoordinates[j];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Calculates the squared Euclidean distance from a city to a point.
+     *
+     * @param i The index of the city.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The squared distance between the city and the point.
+     */
+    public double squaredDistanceTo(int i, double x, double y) {
+        double dx = xCoordinates[i] - x;
+        double dy = yCoordinates[i] - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Calculates the Euclidean distance between two cities.
+     *
+     * @param i The index of the first city.
+     * @param j The index of the second city.
+     * @return The distance between the two cities.
+     */
+    public double distance(int i, int j) {
+        return Math.sqrt(squaredDistance(i, j));
+    }
+
+    /**
+     * Creates a {@link City} object for the city at the given index.
+     *
+     * @param index The index of the city.
+     * @return A new city with the stored identifier and coordinates.
+     */
+    public City toCity(int index) {
+        return new City(ids[index], xCoordinates[index], yCoordinates[index]);
+    }
+}
@@ -0,0 +1,33 @@
+package travelling_salesman;
+
+/**
+ * Distance provider that computes every distance on the fly from the city
+ * coordinates. Uses no memory beyond the city store itself.
+ */
+public class CoordinateDistance implements DistanceProvider {
+    private final CityStore cities;
+
+    /**
+     * Constructs a provider over the given cities.
+     *
+     * @param cities The cities to compute distances for.
+     */
+    public CoordinateDistance(CityStore cities) {
+        this.cities = cities;
+    }
+
+    @Override
+    public int size() {
+        return cities.size();
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return cities.distance(i, j);
+    }
+
+    @Override
+    public void distancesFrom(int i, double[] out) {
+        DistanceKernels.row(cities, i, out);
+    }
+}
@@ -0,0 +1,132 @@
+package travelling_salesman;
+
+/**
+ * Utility class of one-to-many and block distance kernels over the primitive
+ * coordinate arrays of a {@link CityStore}.
+ * <p>
+ * When the incubating Vector API is available, which needs the JVM option
+ * {@code --add-modules jdk.incubator.vector}, the kernels process as many
+ * cities per instruction as the preferred vector width of the CPU holds.
+ * Otherwise, or with {@code -Dtravelling_salesman.scalar=true}, they run the
+ * equivalent scalar loops. Both compute every distance exactly as
+ * {@link CityStore#distance(int, int)} does, so results never depend on which
+ * of them runs.
+ * <p>
+ * The first vector call costs tens of milliseconds to set up the Vector API,
+ * more than small instances take to solve. Ranges shorter than
+ * {@link #VECTOR_MIN_LENGTH} therefore always take the scalar loops, and the
+ * Vector API is only loaded once a longer range is computed.
+ */
+public class DistanceKernels {
+    /**
+     * Shortest range of cities computed with the vector kernels.
+     */
+    static final int VECTOR_MIN_LENGTH = 1024;
+
+    /**
+     * Holds whether the vector kernels are used, so that the Vector API is
+     * not loaded until a range long enough for it is computed.
+     */
+    private static class Vectorization {
+        static final boolean ENABLED = !Boolean.getBoolean("travelling_salesman.scalar") && vectorSupported();
+    }
+
+    /**
+     * Returns whether long ranges are computed on the Vector API.
+     *
+     * @return {@code true} if the vector kernels are used.
+     */
+    public static boolean isVectorized() {
+        return Vectorization.ENABLED;
+    }
+
+    /**
+     * Computes the distances from a point to a range of cities.
+     *
+     * @param xs   The x-coordinates of the cities.
+     * @param ys   The y-coordinates of the cities.
+     * @param x    The x-coordinate of the point.
+     * @param y    The y-coordinate of the point.
+     * @param from The index of the first city.
+     * @param to   The index after the last city.
+     * @param out  Receives the distance to city {@code i} at index {@code i}.
+     */
+    public static void distances(double[] xs, double[] ys, double x, double y, int from, int to, double[] out) {
+        distances(xs, ys, x, y, from, to, out, from);
+    }
+
+    /**
+     * Computes the distances from a city to every city.
+     *
+     * @param cities The cities.
+     * @param city   The index of the city.
+     * @param out    Receives the distance to city {@code j} at index
+     *               {@code j}; must hold at least {@code cities.size()}
+     *               entries.
+     */
+    public static void row(CityStore cities, int city, double[] out) {
+        distances(cities.getXCoordinates(), cities.getYCoordinates(), cities.getX(city), cities.getY(city), 0,
+                cities.size(), out);
+    }
+
+    /**
+     * Computes the distances between a block of cities and every city, one
+     * row per city of the block.
+     *
+     * @param cities  The cities.
+     * @param rowFrom The index of the first city of the block.
+     * @param rowTo   The index after the last city of the block.
+     * @param out     Receives the distance between city {@code i} of the
+     *                block and city {@code j} at index
+     *                {@code (i - rowFrom) * n + j}.
+     */
+    public static void block(CityStore cities, int rowFrom, int rowTo, double[] out) {
+        int n = cities.size();
+        double[] xs = cities.getXCoordinates();
+        double[] ys = cities.getYCoordinates();
+        for (int i = rowFrom; i < rowTo; i++) {
+            distances(xs, ys, xs[i], ys[i], 0, n, out, (i - rowFrom) * n);
+        }
+    }
+
+    /**
+     * Computes the distances from a point to a range of cities into any part
+     * of an array.
+     *
+     * @param xs      The x-coordinates of the cities.
+     * @param ys      The y-coordinates of the cities.
+     * @param x       The x-coordinate of the point.
+     * @param y       The y-coordinate of the point.
+     * @param from    The index of the first city.
+     * @param to      The index after the last city.
+     * @param out     Receives the distance to city {@code i} at index
+     *                {@code outFrom + i - from}.
+     * @param outFrom The index receiving the distance to the first city.
+     */
+    private static void distances(double[] xs, double[] ys, double x, double y, int from, int to, double[] out,
+            int outFrom) {
+        if (to - from >= VECTOR_MIN_LENGTH && Vectorization.ENABLED) {
+            VectorDistanceKernels.distances(xs, ys, x, y, from, to, out, outFrom);
+            return;
+        }
+        for (int i = from, o = outFrom; i < to; i++, o++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            out[o] = Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    /**
+     * Checks whether the vector kernels can be loaded. They cannot when the
+     * incubator module was not added to the JVM.
+     *
+     * @return {@code true} if the vector kernels are usable.
+     */
+    private static boolean vectorSupported() {
+        try {
+            return VectorDistanceKernels.isSupported();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package travelling_salesman;
+
+/**
+ * Source of pairwise distances between the cities of an instance.
+ * <p>
+ * Implementations trade memory for speed; use
+ * {@link DistanceProviders#forCities(CityStore)} to pick one that fits the
+ * instance size and the available heap.
+ */
+public interface DistanceProvider {
+    /**
+     * Returns the number of cities covered by this provider.
+     *
+     * @return The number of cities.
+     */
+    int size();
+
+    /**
+     * Returns the distance between two cities.
+     *
+     * @param i The index of the first city.
+     * @param j The index of the second city.
+     * @return The distance between the two cities.
+     */
+    double distance(int i, int j);
+
+    /**
+     * Writes the distances from a city to every city. Scans over a whole row
+     * should use this instead of {@link #distance(int, int)}, as providers can
+     * fill it with a single distance kernel or array copy.
+     *
+     * @param i   The index of the city.
+     * @param out Receives the distance to city {@code j} at index {@code j};
+     *            must hold at least {@link #size()} entries.
+     */
+    default void distancesFrom(int i, double[] out) {
+        int n = size();
+        for (int j = 0; j < n; j++) {
+            out[j] = distance(i, j);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package travelling_salesman;
+
+/**
+ * Utility class for choosing a {@link DistanceProvider} that fits an instance
+ * and the available heap.
+ */
+public class DistanceProviders {
+    /**
+     * Fraction of the free heap a provider may use for precomputed distances.
+     */
+    private static final double HEAP_BUDGET_FRACTION = 0.25;
+
+    /**
+     * Minimum number of rows worth caching; below this rows are computed on the
+     * fly.
+     */
+    private static final int MIN_CACHED_ROWS = 64;
+
+    /**
+     * Chooses a distance provider for the given cities based on the free heap.
+     *
+     * @param cities The cities to compute distances for.
+     * @return A distance provider for the cities.
+     */
+    public static DistanceProvider forCities(CityStore cities) {
+        return forCities(cities, (long) (availableHeap() * HEAP_BUDGET_FRACTION));
+    }
+
+    /**
+     * Chooses a distance provider for the given cities within a memory budget.
+     * A triangular matrix is used when it fits, then a row cache holding as
+     * many rows as fit, and on-the-fly computation otherwise.
+     *
+     * @param cities      The cities to compute distances for.
+     * @param budgetBytes The number of bytes the provider may use.
+     * @return A distance provider for the cities.
+     */
+    @SuppressWarnings("try")
+    public static DistanceProvider forCities(CityStore cities, long budgetBytes) {
+        try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.DISTANCE_BUILD)) {
+            int n = cities.size();
+            if (n <= TriangularDistanceMatrix.MAX_CITIES
+                    && TriangularDistanceMatrix.requiredEntries(n) * Float.BYTES <= budgetBytes) {
+                SolverMetrics.count(SolverMetrics.Counter.DISTANCE_EVALUATIONS,
+                        TriangularDistanceMatrix.requiredEntries(n));
+                return new TriangularDistanceMatrix(cities);
+            }
+
+            long rowBytes = (long) n * Double.BYTES;
+            long maxRows = budgetBytes / Math.max(rowBytes, 1);
+            if (maxRows >= MIN_CACHED_ROWS) {
+                return new CachedRowDistance(cities, (int) Math.min(maxRows, n));
+            }
+            return new CoordinateDistance(cities);
+        }
+    }
+
+    /**
+     * Returns the number of heap bytes that can still be allocated.
+     *
+     * @return The available heap in bytes.
+     */
+    private static long availableHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+}
@@ -0,0 +1,364 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+
+/**
+ * Live tour over a city set that changes over time.
+ * <p>
+ * New cities are placed by cheapest insertion among the tour edges next to
+ * their nearest neighbours, and removed cities are spliced out by joining
+ * their neighbours. After every change, 2-opt and single-city Or-opt moves are
+ * tried around the touched cities only, using a don't-look queue seeded with
+ * them. Length changes are evaluated with the move deltas of {@link Tour}.
+ * Neighbours come from a {@link SpatialGrid} that is updated in place, so no
+ * distance matrix, spanning tree or candidate list is rebuilt. A change costs
+ * a few neighbour queries plus the shift of the tour array.
+ * <p>
+ * Cities are stored in slots; a removed city's slot is reused by the next
+ * insertion.
+ */
+public class DynamicTour {
+    /**
+     * Number of nearest neighbours considered for insertions and moves.
+     */
+    public static final int NEIGHBOURS = 8;
+
+    /**
+     * Maximum number of improving moves after a single change.
+     */
+    private static final int MAX_LOCAL_MOVES = 1000;
+
+    /**
+     * Smallest improvement accepted, guarding against rounding loops.
+     */
+    private static final double EPSILON = 1e-9;
+
+    private int[] ids;
+    private double[] xs;
+    private double[] ys;
+    private CityStore store;
+    private boolean[] alive;
+    private boolean[] queued;
+    private int[] queue;
+    private int queueHead;
+    private int queueSize;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+    private final Tour tour = new Tour(16);
+    private final SpatialGrid grid = new SpatialGrid();
+    private final int[] neighbours = new int[NEIGHBOURS];
+    private double length;
+
+    /**
+     * Constructs a live tour from a solved instance.
+     *
+     * @param cities The cities of the instance.
+     * @param path   The closed path of city indices, as returned by the
+     *               solvers.
+     */
+    public DynamicTour(CityStore cities, int[] path) {
+        int n = cities.size();
+        allocate(Math.max(n, 16));
+        for (int i = 0; i < n; i++) {
+            ids[i] = cities.getId(i);
+            xs[i] = cities.getX(i);
+            ys[i] = cities.getY(i);
+            alive[i] = true;
+            grid.insert(i, xs[i], ys[i]);
+        }
+        slotCount = n;
+        for (int i = 0; i + 1 < path.length; i++) {
+            tour.append(path[i]);
+        }
+        length = UserInterface.calculateTotalDistance(cities, path);
+    }
+
+    /**
+     * Returns the number of cities in the tour.
+     *
+     * @return The number of cities.
+     */
+    public int size() {
+        return tour.size();
+    }
+
+    /**
+     * Returns the length of the tour, maintained from the move deltas.
+     *
+     * @return The length of the closed tour.
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * Adds a city at its cheapest insertion point and improves the tour
+     * around it.
+     *
+     * @param id The identifier of the city.
+     * @param x  The x-coordinate of the city.
+     * @param y  The y-coordinate of the city.
+     */
+    public void addCity(int id, double x, double y) {
+        int city = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+        if (city >= ids.length) {
+            allocate(city + (city >> 1) + 16);
+        }
+        ids[city] = id;
+        xs[city] = x;
+        ys[city] = y;
+
+        // Cheapest edge next to one of the nearest tour cities
+        int bestAfter = -1;
+        double bestDelta = Double.MAX_VALUE;
+        int count = grid.nearest(x, y, NEIGHBOURS, -1, neighbours);
+        for (int r = 0; r < count; r++) {
+            int c = neighbours[r];
+            for (int side = 0; side < 2; side++) {
+                int a = side == 0 ? c : tour.prev(c);
+                double delta = tour.insertionDelta(store, a, city);
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    bestAfter = a;
+                }
+            }
+        }
+
+        tour.insertAfter(bestAfter, city);
+        length += count == 0 ? 0 : bestDelta;
+        alive[city] = true;
+        grid.insert(city, x, y);
+
+        push(city);
+        push(tour.prev(city));
+        push(tour.next(city));
+        improveLocally();
+    }
+
+    /**
+     * Removes a city, joining its neighbours in the tour, and improves the
+     * tour around the gap.
+     *
+     * @param id The identifier of the city.
+     * @return {@code true} if the city was in the tour.
+     */
+    public boolean removeCity(int id) {
+        int city = slotOf(id);
+        if (city < 0) {
+            return false;
+        }
+        int a = tour.prev(city);
+        int b = tour.next(city);
+        length += tour.removalDelta(store, city);
+        tour.remove(city);
+        grid.remove(city);
+        alive[city] = false;
+        queued[city] = false;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = city;
+
+        if (tour.size() > 0) {
+            push(a);
+            push(b);
+            improveLocally();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the tour as city identifiers, starting and ending at the same
+     * city.
+     *
+     * @return The closed path of city identifiers.
+     */
+    public int[] toIdPath() {
+        int n = tour.size();
+        int[] path = new int[n + (n > 0 ? 1 : 0)];
+        for (int i = 0; i < n; i++) {
+            path[i] = ids[tour.cityAt(i)];
+        }
+        if (n > 0) {
+            path[n] = path[0];
+        }
+        return path;
+    }
+
+    /**
+     * Returns a store of the current cities in tour order, so that the
+     * closed path {@code 0, 1, ..., n - 1, 0} is the current tour.
+     *
+     * @return The cities in tour order.
+     */
+    public CityStore toCityStore() {
+        int n = tour.size();
+        int[] storeIds = new int[n];
+        double[] storeXs = new double[n];
+        double[] storeYs = new double[n];
+        for (int i = 0; i < n; i++) {
+            int city = tour.cityAt(i);
+            storeIds[i] = ids[city];
+            storeXs[i] = xs[city];
+            storeYs[i] = ys[city];
+        }
+        return new CityStore(storeIds, storeXs, storeYs, n);
+    }
+
+    /**
+     * Applies improving 2-opt and Or-opt moves around the queued cities.
+     */
+    private void improveLocally() {
+        if (tour.size() < 5) {
+            queueSize = 0;
+            Arrays.fill(queued, false);
+            return;
+        }
+        int moves = 0;
+        while (queueSize > 0) {
+            int city = pop();
+            if (moves < MAX_LOCAL_MOVES && (improveTwoOpt(city) || improveOrOpt(city))) {
+                moves++;
+            }
+        }
+    }
+
+    /**
+     * Tries 2-opt moves that add an edge from a city to one of its nearest
+     * neighbours. Applies the first improving move found.
+     *
+     * @param a The city to improve around.
+     * @return {@code true} if a move was applied.
+     */
+    private boolean improveTwoOpt(int a) {
+        int count = grid.nearest(xs[a], ys[a], NEIGHBOURS, a, neighbours);
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? tour.next(a) : tour.prev(a);
+            double removedAB = store.distance(a, b);
+            for (int r = 0; r < count; r++) {
+                int c = neighbours[r];
+                double gainAC = removedAB - store.distance(a, c);
+                if (gainAC <= EPSILON) {
+                    break;
+                }
+                int d = forward ? tour.next(c) : tour.prev(c);
+                if (c == b || d == a) {
+                    continue;
+                }
+                double gain = gainAC + store.distance(c, d) - store.distance(b, d);
+                if (gain > EPSILON) {
+                    tour.twoOptMove(a, b, c, d);
+                    length -= gain;
+                    push(a);
+                    push(b);
+                    push(c);
+                    push(d);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to move a city between two adjacent cities next to one of its
+     * nearest neighbours. Applies the first improving move found.
+     *
+     * @param s The city to move.
+     * @return {@code true} if a move was applied.
+     */
+    private boolean improveOrOpt(int s) {
+        int p = tour.prev(s);
+        int nx = tour.next(s);
+        double removeGain = -tour.removalDelta(store, s);
+        if (removeGain <= EPSILON) {
+            return false;
+        }
+        int count = grid.nearest(xs[s], ys[s], NEIGHBOURS, s, neighbours);
+        for (int r = 0; r < count; r++) {
+            int c = neighbours[r];
+            if (store.distance(s, c) >= removeGain) {
+                break;
+            }
+            for (int side = 0; side < 2; side++) {
+                int a = side == 0 ? c : tour.prev(c);
+                int b = tour.next(a);
+                if (a == s || b == s) {
+                    continue;
+                }
+                double gain = removeGain - tour.insertionDelta(store, a, s);
+                if (gain > EPSILON) {
+                    tour.remove(s);
+                    tour.insertAfter(a, s);
+                    length -= gain;
+                    push(s);
+                    push(p);
+                    push(nx);
+                    push(a);
+                    push(b);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the slot of a city by its identifier.
+     *
+     * @param id The identifier of the city.
+     * @return The slot of the city, or -1 if it is not in the tour.
+     */
+    private int slotOf(int id) {
+        for (int i = 0; i < slotCount; i++) {
+            if (alive[i] && ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a city to the back of the queue unless it is already queued.
+     *
+     * @param city The slot of the city.
+     */
+    private void push(int city) {
+        if (!queued[city]) {
+            queued[city] = true;
+            queue[(queueHead + queueSize) % queue.length] = city;
+            queueSize++;
+        }
+    }
+
+    /**
+     * Removes the city at the front of the queue.
+     *
+     * @return The slot of the city.
+     */
+    private int pop() {
+        int city = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        queued[city] = false;
+        return city;
+    }
+
+    /**
+     * Grows the per-slot arrays. Only called while the queue is empty.
+     *
+     * @param capacity The number of slots to make room for.
+     */
+    private void allocate(int capacity) {
+        ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+        xs = xs == null ? new double[capacity] : Arrays.copyOf(xs, capacity);
+        ys = ys == null ? new double[capacity] : Arrays.copyOf(ys, capacity);
+        alive = alive == null ? new boolean[capacity] : Arrays.copyOf(alive, capacity);
+        queued = queued == null ? new boolean[capacity] : Arrays.copyOf(queued, capacity);
+        queue = new int[capacity];
+        queueHead = 0;
+        store = new CityStore(ids, xs, ys, capacity);
+    }
+}
@@ -0,0 +1,143 @@
+package travelling_salesman;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Utility class for building the Euclidean minimum spanning tree of a set of
+ * cities in near-linear time.
+ * <p>
+ * Uses Boruvka's algorithm: in every round each component is joined to its
+ * nearest city in another component, found with a {@link KdTree} query that
+ * skips subtrees lying entirely inside the component. Components are tracked
+ * with a {@link UnionFind}, and there are at most {@code log2(n)} rounds.
+ */
+public class EuclideanMST {
+    /**
+     * Builds the minimum spanning tree of the cities.
+     *
+     * @param cities The cities to connect.
+     * @return The tree edges as pairs {@code (edges[2i], edges[2i + 1])}.
+     */
+    public static int[] edges(CityStore cities) {
+        return edges(cities, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Builds the minimum spanning tree of the cities, giving up when the
+     * limits expire.
+     *
+     * @param cities The cities to connect.
+     * @param limits The limits stopping the construction.
+     * @return The tree edges as pairs {@code (edges[2i], edges[2i + 1])}.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] edges(CityStore cities, SearchLimits limits) {
+        int n = cities.size();
+        int[] edges = new int[2 * Math.max(n - 1, 0)];
+        int edgeCount = 0;
+        if (n < 2) {
+            return edges;
+        }
+
+        KdTree tree = new KdTree(cities, limits);
+        UnionFind components = new UnionFind(n);
+        int[] component = new int[n];
+        double[] bestDistance = new double[n];
+        int[] bestFrom = new int[n];
+        int[] bestTo = new int[n];
+
+        while (components.components() > 1) {
+            for (int i = 0; i < n; i++) {
+                component[i] = components.find(i);
+                bestDistance[i] = Double.POSITIVE_INFINITY;
+                bestTo[i] = -1;
+            }
+            tree.labelComponents(component);
+
+            // Find the shortest edge leaving every component
+            for (int i = 0; i < n; i++) {
+                if ((i & 1023) == 1023 && limits.isExpired()) {
+                    throw new CancellationException("Spanning tree construction was cancelled");
+                }
+                int c = component[i];
+                int nearest = tree.nearestOutside(i, bestDistance[c]);
+                if (nearest >= 0) {
+                    bestDistance[c] = tree.lastSquaredDistance();
+                    bestFrom[c] = i;
+                    bestTo[c] = nearest;
+                }
+            }
+
+            // Join the components along those edges
+            for (int c = 0; c < n; c++) {
+                if (component[c] == c && bestTo[c] >= 0 && components.union(bestFrom[c], bestTo[c])) {
+                    edges[edgeCount++] = bestFrom[c];
+                    edges[edgeCount++] = bestTo[c];
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Builds the minimum spanning tree of the cities as a parent array.
+     *
+     * @param cities The cities to connect.
+     * @param root   The city to root the tree at.
+     * @return The parent of every city in the tree, -1 for the root.
+     */
+    public static int[] parents(CityStore cities, int root) {
+        return parents(cities, root, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Builds the minimum spanning tree of the cities as a parent array, giving
+     * up when the limits expire.
+     *
+     * @param cities The cities to connect.
+     * @param root   The city to root the tree at.
+     * @param limits The limits stopping the construction.
+     * @return The parent of every city in the tree, -1 for the root.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] parents(CityStore cities, int root, SearchLimits limits) {
+        int n = cities.size();
+        int[] edges = edges(cities, limits);
+
+        // Compact adjacency of the tree edges
+        int[] degree = new int[n + 1];
+        for (int e : edges) {
+            degree[e + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            degree[i + 1] += degree[i];
+        }
+        int[] adjacency = new int[edges.length];
+        int[] fill = degree.clone();
+        for (int i = 0; i < edges.length; i += 2) {
+            adjacency[fill[edges[i]]++] = edges[i + 1];
+            adjacency[fill[edges[i + 1]]++] = edges[i];
+        }
+
+        // Orient the tree away from the root with an explicit stack
+        int[] parent = new int[n];
+        boolean[] seen = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        parent[root] = -1;
+        seen[root] = true;
+        stack[top++] = root;
+        while (top > 0) {
+            int u = stack[--top];
+            for (int k = degree[u]; k < degree[u + 1]; k++) {
+                int v = adjacency[k];
+                if (!seen[v]) {
+                    seen[v] = true;
+                    parent[v] = u;
+                    stack[top++] = v;
+                }
+            }
+        }
+        return parent;
+    }
+}
@@ -0,0 +1,502 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Utility class for computing a lower bound on the optimal tour length with
+ * the Held-Karp 1-tree relaxation.
+ * <p>
+ * A tour with its longer edge at any city removed is a spanning tree, so the
+ * minimum spanning tree plus the longest second-nearest neighbour edge of any
+ * city is a lower bound. Adding a penalty {@code pi[i]} to every edge at city
+ * {@code i} changes every tour by {@code 2 * sum(pi)} but the tree by less,
+ * so penalties found by subgradient optimisation, raising cities the tree
+ * uses more than twice and lowering its leaves, tighten the bound to within
+ * about 1% of optimal on Euclidean instances.
+ * <p>
+ * The optimisation runs on a sparse graph of nearest neighbour candidates
+ * joined with the Euclidean minimum spanning tree, so every iteration costs
+ * O(n k log n). Because a sparse graph can miss edges of the penalised tree,
+ * the bound is evaluated on the complete graph, which takes O(n^2) time; tree
+ * edges missing from the sparse graph are added to it and the optimisation
+ * resumes, for a few rounds. Above {@link #DENSE_LIMIT} cities this is too
+ * slow, and the bound without penalties is returned instead, typically about
+ * 10% below optimal.
+ */
+public class HeldKarpBound {
+    /**
+     * Largest instance for which penalties are optimised.
+     */
+    public static final int DENSE_LIMIT = 10_000;
+
+    /**
+     * Maximum number of optimisation rounds on the sparse graph.
+     */
+    private static final int ROUNDS = 3;
+
+    /**
+     * Number of nearest neighbours per city in the sparse graph.
+     */
+    private static final int CANDIDATES = 10;
+
+    /**
+     * Maximum number of subgradient iterations.
+     */
+    private static final int MAX_ITERATIONS = 1000;
+
+    /**
+     * Number of iterations without a better bound before the step is halved.
+     */
+    private static final int PATIENCE = 20;
+
+    /**
+     * Step scale at which the optimisation stops.
+     */
+    private static final double MIN_STEP_SCALE = 1e-3;
+
+    /**
+     * Starts computing the bound on a background thread.
+     *
+     * @param cities The cities of the instance.
+     * @param limits The limits on the subgradient optimisation; when they
+     *               expire the best bound evaluated so far is returned,
+     *               without evaluating the penalties of the round under way.
+     * @return The future bound.
+     */
+    public static CompletableFuture<Double> computeAsync(CityStore cities, SearchLimits limits) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lower-bound");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<Double> bound = CompletableFuture.supplyAsync(() -> compute(cities, limits), executor);
+        executor.shutdown();
+        return bound;
+    }
+
+    /**
+     * Computes the bound.
+     *
+     * @param cities The cities of the instance.
+     * @param limits The limits on the subgradient optimisation.
+     * @return A lower bound on the length of every tour of the cities.
+     */
+    public static double compute(CityStore cities, SearchLimits limits) {
+        int n = cities.size();
+        if (n < 2) {
+            return 0;
+        }
+        if (n == 2) {
+            return 2 * cities.distance(0, 1);
+        }
+        double best = unpenalisedBound(cities);
+        if (n > DENSE_LIMIT) {
+            return best;
+        }
+
+        double upperBound = UserInterface.calculateTotalDistance(cities, SolverNN.solveNearestNeighbour(cities));
+        double[] pi = new double[n];
+        int[] parent = new int[n];
+        int[] special = new int[2];
+        int[] extraEdges = new int[0];
+        for (int round = 0; round < ROUNDS && !limits.isExpired(); round++) {
+            SparseGraph graph = new SparseGraph(cities, extraEdges);
+            pi = optimisePenalties(graph, pi, upperBound, limits);
+            // The dense evaluation takes seconds on large instances
+            if (limits.isExpired()) {
+                break;
+            }
+            best = Math.max(best, denseOneTree(cities, pi, parent, special));
+
+            // Add the tree edges the sparse graph missed
+            int missing = 0;
+            int[] added = new int[2 * n];
+            for (int u = 0; u < n; u++) {
+                if (parent[u] >= 0 && !graph.hasEdge(u, parent[u])) {
+                    added[missing++] = u;
+                    added[missing++] = parent[u];
+                }
+            }
+            if (!graph.hasEdge(special[0], special[1])) {
+                added[missing++] = special[0];
+                added[missing++] = special[1];
+            }
+            if (missing == 0) {
+                break;
+            }
+            extraEdges = Arrays.copyOf(extraEdges, extraEdges.length + missing);
+            System.arraycopy(added, 0, extraEdges, extraEdges.length - missing, missing);
+        }
+        return best;
+    }
+
+    /**
+     * Creates a search goal met once a tour is within a target gap of a bound.
+     * The goal is not met while the bound is still being computed.
+     *
+     * @param bound     The future bound.
+     * @param cities    The cities the tour refers to.
+     * @param tour      The tour being improved.
+     * @param targetGap The target gap as a fraction of the bound.
+     * @return The goal.
+     */
+    public static BooleanSupplier withinGap(CompletableFuture<Double> bound, CityStore cities, Tour tour,
+            double targetGap) {
+        return () -> bound.isDone() && !bound.isCompletedExceptionally()
+                && gap(tour.length(cities), bound.join()) <= targetGap;
+    }
+
+    /**
+     * Returns the relative gap between a tour length and a lower bound.
+     *
+     * @param length The tour length.
+     * @param bound  The lower bound.
+     * @return The gap as a fraction of the bound, 0 if the bound is not
+     *         positive or rounding puts it above the length.
+     */
+    public static double gap(double length, double bound) {
+        return bound > 0 ? Math.max(0, (length - bound) / bound) : 0;
+    }
+
+    /**
+     * Computes the bound without penalties from the Euclidean minimum spanning
+     * tree and the second-nearest neighbours, in O(n log n) time.
+     *
+     * @param cities The cities of the instance.
+     * @return The lower bound.
+     */
+    private static double unpenalisedBound(CityStore cities) {
+        int n = cities.size();
+        double bound = 0;
+        int[] edges = EuclideanMST.edges(cities);
+        for (int i = 0; i < edges.length; i += 2) {
+            bound += cities.distance(edges[i], edges[i + 1]);
+        }
+        KdTree tree = new KdTree(cities);
+        int[] nearest = new int[2];
+        double longestSecond = 0;
+        for (int i = 0; i < n; i++) {
+            if (tree.nearest(i, 2, nearest) == 2) {
+                longestSecond = Math.max(longestSecond, cities.distance(i, nearest[1]));
+            }
+        }
+        return bound + longestSecond;
+    }
+
+    /**
+     * Optimises the city penalties by subgradient ascent on the sparse graph,
+     * with steps proportional to the distance between the bound and a tour
+     * length.
+     *
+     * @param graph      The sparse graph.
+     * @param initialPi  The penalties to start from.
+     * @param upperBound The length of a known tour.
+     * @param limits     The limits on the optimisation.
+     * @return The penalties giving the best sparse bound.
+     */
+    private static double[] optimisePenalties(SparseGraph graph, double[] initialPi, double upperBound,
+            SearchLimits limits) {
+        int n = initialPi.length;
+        double[] pi = initialPi.clone();
+        double[] bestPi = initialPi.clone();
+        int[] degree = new int[n];
+        double best = -Double.MAX_VALUE;
+        double stepScale = 2;
+        int sinceImprovement = 0;
+        for (int iteration = 0; iteration < MAX_ITERATIONS && stepScale > MIN_STEP_SCALE; iteration++) {
+            if (limits.checkpoint()) {
+                break;
+            }
+            double bound = graph.oneTree(pi, degree);
+            if (bound > best) {
+                best = bound;
+                System.arraycopy(pi, 0, bestPi, 0, n);
+                sinceImprovement = 0;
+            } else if (++sinceImprovement >= PATIENCE) {
+                stepScale /= 2;
+                sinceImprovement = 0;
+            }
+
+            long norm = 0;
+            for (int i = 0; i < n; i++) {
+                int g = degree[i] - 2;
+                norm += (long) g * g;
+            }
+            if (norm == 0) {
+                // The 1-tree is a tour, so it is optimal
+                break;
+            }
+            double step = stepScale * Math.max(upperBound - bound, 0) / norm;
+            if (step == 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                pi[i] += step * (degree[i] - 2);
+            }
+        }
+        return bestPi;
+    }
+
+    /**
+     * Computes the penalised 1-tree bound on the complete graph with Prim's
+     * algorithm, evaluating the distances a row at a time with
+     * {@link DistanceKernels}.
+     *
+     * @param cities  The cities of the instance.
+     * @param pi      The city penalties.
+     * @param parent  Receives the parent of every city in the tree, -1 for
+     *                the root.
+     * @param special Receives the ends of the edge closing the 1-tree.
+     * @return The lower bound.
+     */
+    private static double denseOneTree(CityStore cities, double[] pi, int[] parent, int[] special) {
+        int n = cities.size();
+        double[] row = new double[n];
+        double[] key = new double[n];
+        boolean[] inTree = new boolean[n];
+        Arrays.fill(key, Double.MAX_VALUE);
+        key[0] = 0;
+        parent[0] = -1;
+        double bound = 0;
+        for (int added = 0; added < n; added++) {
+            int u = -1;
+            for (int v = 0; v < n; v++) {
+                if (!inTree[v] && (u < 0 || key[v] < key[u])) {
+                    u = v;
+                }
+            }
+            inTree[u] = true;
+            bound += key[u];
+            DistanceKernels.row(cities, u, row);
+            for (int v = 0; v < n; v++) {
+                if (!inTree[v]) {
+                    double weight = row[v] + pi[u] + pi[v];
+                    if (weight < key[v]) {
+                        key[v] = weight;
+                        parent[v] = u;
+                    }
+                }
+            }
+        }
+
+        double longestSecond = -Double.MAX_VALUE;
+        for (int u = 0; u < n; u++) {
+            double first = Double.MAX_VALUE;
+            double second = Double.MAX_VALUE;
+            int firstTo = -1;
+            int secondTo = -1;
+            DistanceKernels.row(cities, u, row);
+            for (int v = 0; v < n; v++) {
+                if (v != u) {
+                    double weight = row[v] + pi[u] + pi[v];
+                    if (weight < first) {
+                        second = first;
+                        secondTo = firstTo;
+                        first = weight;
+                        firstTo = v;
+                    } else if (weight < second) {
+                        second = weight;
+                        secondTo = v;
+                    }
+                }
+            }
+            if (second > longestSecond) {
+                longestSecond = second;
+                special[0] = u;
+                special[1] = secondTo;
+            }
+        }
+
+        double penalties = 0;
+        for (double p : pi) {
+            penalties += p;
+        }
+        return bound + longestSecond - 2 * penalties;
+    }
+
+    /**
+     * Symmetric graph of the nearest neighbour candidates, the Euclidean
+     * minimum spanning tree and extra edges, stored as compact adjacency
+     * arrays.
+     */
+    private static class SparseGraph {
+        private final CityStore cities;
+        private final int[] start;
+        private final int[] adjacency;
+        private final double[] length;
+        private final IndexedMinHeap heap;
+        private final boolean[] inTree;
+        private final int[] parent;
+
+        /**
+         * Builds the graph.
+         *
+         * @param cities     The cities of the instance.
+         * @param extraEdges Further edges as pairs
+         *                   {@code (extraEdges[2i], extraEdges[2i + 1])}.
+         */
+        SparseGraph(CityStore cities, int[] extraEdges) {
+            this.cities = cities;
+            int n = cities.size();
+            CandidateLists candidates = CandidateLists.build(cities, CANDIDATES);
+            int[] tree = EuclideanMST.edges(cities);
+
+            // Every edge is stored in both directions
+            start = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                for (int r = 0; r < candidates.count(i); r++) {
+                    start[i + 1]++;
+                    start[candidates.get(i, r) + 1]++;
+                }
+            }
+            for (int e : tree) {
+                start[e + 1]++;
+            }
+            for (int e : extraEdges) {
+                start[e + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                start[i + 1] += start[i];
+            }
+            adjacency = new int[start[n]];
+            int[] fill = Arrays.copyOf(start, n);
+            for (int i = 0; i < n; i++) {
+                for (int r = 0; r < candidates.count(i); r++) {
+                    int j = candidates.get(i, r);
+                    adjacency[fill[i]++] = j;
+                    adjacency[fill[j]++] = i;
+                }
+            }
+            for (int e = 0; e < tree.length; e += 2) {
+                adjacency[fill[tree[e]]++] = tree[e + 1];
+                adjacency[fill[tree[e + 1]]++] = tree[e];
+            }
+            for (int e = 0; e < extraEdges.length; e += 2) {
+                adjacency[fill[extraEdges[e]]++] = extraEdges[e + 1];
+                adjacency[fill[extraEdges[e + 1]]++] = extraEdges[e];
+            }
+            length = new double[adjacency.length];
+            for (int i = 0; i < n; i++) {
+                for (int k = start[i]; k < start[i + 1]; k++) {
+                    length[k] = cities.distance(i, adjacency[k]);
+                }
+            }
+            heap = new IndexedMinHeap(n);
+            inTree = new boolean[n];
+            parent = new int[n];
+        }
+
+        /**
+         * Returns whether the graph contains an edge.
+         *
+         * @param u One end of the edge.
+         * @param v The other end of the edge.
+         * @return {@code true} if the edge is in the graph.
+         */
+        boolean hasEdge(int u, int v) {
+            for (int k = start[u]; k < start[u + 1]; k++) {
+                if (adjacency[k] == v) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Computes the penalised 1-tree bound over the graph.
+         *
+         * @param pi     The city penalties.
+         * @param degree Receives the degree of every city in the 1-tree.
+         * @return The bound, which may exceed the true bound for the given
+         *         penalties when the graph misses an edge of the penalised
+         *         tree.
+         */
+        double oneTree(double[] pi, int[] degree) {
+            int n = cities.size();
+            Arrays.fill(inTree, false);
+            Arrays.fill(degree, 0);
+            heap.clear();
+            heap.insertOrDecrease(0, 0);
+            parent[0] = -1;
+            double bound = 0;
+            while (!heap.isEmpty()) {
+                int u = heap.pollMin();
+                inTree[u] = true;
+                if (parent[u] >= 0) {
+                    bound += length(u, parent[u], pi);
+                    degree[u]++;
+                    degree[parent[u]]++;
+                }
+                for (int k = start[u]; k < start[u + 1]; k++) {
+                    int v = adjacency[k];
+                    if (!inTree[v]) {
+                        double weight = length[k] + pi[u] + pi[v];
+                        if (!heap.contains(v) || weight < heap.keyOf(v)) {
+                            parent[v] = u;
+                            heap.insertOrDecrease(v, weight);
+                        }
+                    }
+                }
+            }
+
+            // Close the tree with the longest second-nearest edge
+            double longestSecond = -Double.MAX_VALUE;
+            int special = -1;
+            int specialTo = -1;
+            for (int u = 0; u < n; u++) {
+                double first = Double.MAX_VALUE;
+                double second = Double.MAX_VALUE;
+                int firstTo = -1;
+                int secondTo = -1;
+                for (int k = start[u]; k < start[u + 1]; k++) {
+                    int v = adjacency[k];
+                    if (v == firstTo) {
+                        continue;
+                    }
+                    double weight = length[k] + pi[u] + pi[v];
+                    if (weight < first) {
+                        second = first;
+                        secondTo = firstTo;
+                        first = weight;
+                        firstTo = v;
+                    } else if (weight < second && v != secondTo) {
+                        second = weight;
+                        secondTo = v;
+                    }
+                }
+                if (secondTo >= 0 && second > longestSecond) {
+                    longestSecond = second;
+                    special = u;
+                    specialTo = secondTo;
+                }
+            }
+            if (special >= 0) {
+                bound += longestSecond;
+                degree[special]++;
+                degree[specialTo]++;
+            }
+
+            double penalties = 0;
+            for (double p : pi) {
+                penalties += p;
+            }
+            return bound - 2 * penalties;
+        }
+
+        /**
+         * Returns the penalised length of an edge.
+         *
+         * @param u  One end of the edge.
+         * @param v  The other end of the edge.
+         * @param pi The city penalties.
+         * @return The penalised length.
+         */
+        private double length(int u, int v, double[] pi) {
+            return cities.distance(u, v) + pi[u] + pi[v];
+        }
+    }
+}
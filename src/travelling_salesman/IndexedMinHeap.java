@@ -0,0 +1,196 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of integer items in {@code [0, capacity)} keyed by doubles,
+ * with an index from item to heap slot so that keys can be decreased in
+ * logarithmic time. Equal keys are ordered by item.
+ */
+public class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] slot;
+    private final double[] keys;
+    private int size;
+    private long operations;
+
+    /**
+     * Constructs an empty heap.
+     *
+     * @param capacity The number of distinct items the heap can hold.
+     */
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.slot = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(slot, -1);
+    }
+
+    /**
+     * Returns whether the heap is empty.
+     *
+     * @return {@code true} if the heap holds no items.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the heap.
+     *
+     * @return The number of items.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether an item is in the heap.
+     *
+     * @param item The item to check.
+     * @return {@code true} if the item is in the heap.
+     */
+    public boolean contains(int item) {
+        return slot[item] >= 0;
+    }
+
+    /**
+     * Returns the key of an item in the heap.
+     *
+     * @param item The item.
+     * @return The current key of the item.
+     */
+    public double keyOf(int item) {
+        return keys[item];
+    }
+
+    /**
+     * Inserts an item, or lowers its key if it is already in the heap with a
+     * larger key.
+     *
+     * @param item The item.
+     * @param key  The key of the item.
+     */
+    public void insertOrDecrease(int item, double key) {
+        operations++;
+        int i = slot[item];
+        if (i < 0) {
+            i = size++;
+            heap[i] = item;
+            slot[item] = i;
+        } else if (!less(key, item, keys[item], item)) {
+            return;
+        }
+        keys[item] = key;
+        siftUp(i);
+    }
+
+    /**
+     * Removes the item with the smallest key.
+     *
+     * @return The removed item.
+     * @throws IllegalStateException if the heap is empty.
+     */
+    public int pollMin() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        operations++;
+        int min = heap[0];
+        slot[min] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            slot[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the number of insertions, key decreases and removals so far,
+     * including calls that left a larger key unchanged.
+     *
+     * @return The number of heap operations.
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * Removes all items from the heap.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slot[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves the item at a heap slot up until its parent is smaller.
+     *
+     * @param i The heap slot.
+     */
+    private void siftUp(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int parentItem = heap[parent];
+            if (!less(key, item, keys[parentItem], parentItem)) {
+                break;
+            }
+            heap[i] = parentItem;
+            slot[parentItem] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        slot[item] = i;
+    }
+
+    /**
+     * Moves the item at a heap slot down until its children are larger.
+     *
+     * @param i The heap slot.
+     */
+    private void siftDown(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            int childItem = heap[child];
+            if (child + 1 < size) {
+                int rightItem = heap[child + 1];
+                if (less(keys[rightItem], rightItem, keys[childItem], childItem)) {
+                    child++;
+                    childItem = rightItem;
+                }
+            }
+            if (!less(keys[childItem], childItem, key, item)) {
+                break;
+            }
+            heap[i] = childItem;
+            slot[childItem] = i;
+            i = child;
+        }
+        heap[i] = item;
+        slot[item] = i;
+    }
+
+    /**
+     * Compares two heap entries by key, then by item.
+     *
+     * @param keyA  The key of the first entry.
+     * @param itemA The item of the first entry.
+     * @param keyB  The key of the second entry.
+     * @param itemB The item of the second entry.
+     * @return {@code true} if the first entry orders before the second.
+     */
+    private static boolean less(double keyA, int itemA, double keyB, int itemB) {
+        return keyA < keyB || (keyA == keyB && itemA < itemB);
+    }
+}
@@ -0,0 +1,40 @@
+package travelling_salesman;
+
+/**
+ * A loaded problem instance: the cities and, when available, precomputed
+ * candidate lists.
+ */
+public class Instance {
+    private final CityStore cities;
+    private final CandidateLists candidates;
+
+    /**
+     * Constructs an instance.
+     *
+     * @param cities     The cities of the instance.
+     * @param candidates The precomputed candidate lists, or {@code null} if none
+     *                   are available.
+     */
+    public Instance(CityStore cities, CandidateLists candidates) {
+        this.cities = cities;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Returns the cities of the instance.
+     *
+     * @return The cities.
+     */
+    public CityStore getCities() {
+        return cities;
+    }
+
+    /**
+     * Returns the precomputed candidate lists.
+     *
+     * @return The candidate lists, or {@code null} if none were stored.
+     */
+    public CandidateLists getCandidates() {
+        return candidates;
+    }
+}
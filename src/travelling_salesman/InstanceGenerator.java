@@ -0,0 +1,66 @@
+package travelling_salesman;
+
+import java.util.Random;
+
+/**
+ * Utility class for generating random instances, used for benchmarking and
+ * warming up the solvers.
+ */
+public class InstanceGenerator {
+    /**
+     * Side length of the square the cities are placed in.
+     */
+    public static final double SIDE = 1_000_000;
+
+    /**
+     * Generates cities placed uniformly at random in the square.
+     *
+     * @param n    The number of cities.
+     * @param seed The random seed.
+     * @return The generated cities, numbered from 1.
+     */
+    public static CityStore uniform(int n, long seed) {
+        Random random = new Random(seed);
+        int[] ids = new int[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+            xs[i] = random.nextDouble() * SIDE;
+            ys[i] = random.nextDouble() * SIDE;
+        }
+        return new CityStore(ids, xs, ys, n);
+    }
+
+    /**
+     * Generates cities in normally distributed clusters around uniformly placed
+     * centres, in the style of the DIMACS clustered instances.
+     *
+     * @param n        The number of cities.
+     * @param clusters The number of clusters.
+     * @param seed     The random seed.
+     * @return The generated cities, numbered from 1.
+     */
+    public static CityStore clustered(int n, int clusters, long seed) {
+        Random random = new Random(seed);
+        clusters = Math.max(1, clusters);
+        double[] centreX = new double[clusters];
+        double[] centreY = new double[clusters];
+        for (int c = 0; c < clusters; c++) {
+            centreX[c] = random.nextDouble() * SIDE;
+            centreY[c] = random.nextDouble() * SIDE;
+        }
+
+        double spread = SIDE / Math.sqrt(clusters) / 10;
+        int[] ids = new int[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            int c = random.nextInt(clusters);
+            ids[i] = i + 1;
+            xs[i] = centreX[c] + random.nextGaussian() * spread;
+            ys[i] = centreY[c] + random.nextGaussian() * spread;
+        }
+        return new CityStore(ids, xs, ys, n);
+    }
+}
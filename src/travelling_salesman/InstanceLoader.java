@@ -0,0 +1,114 @@
+package travelling_salesman;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Utility class for loading instances, choosing the reader by file extension.
+ * <p>
+ * Files ending in {@value BinaryInstanceFile#EXTENSION} are read as binary
+ * instances. Text files are parsed with
+ * {@link CityFileReader#readCityStoreFromFile(String)}. On request, a binary
+ * copy is cached next to them so that later runs on the same file skip the
+ * parsing.
+ */
+public class InstanceLoader {
+    /**
+     * Loads an instance from a text or binary file, without caching text
+     * files.
+     *
+     * @param filePath The path of the file to load.
+     * @return The loaded instance.
+     * @throws RuntimeException if the file cannot be read.
+     */
+    public static Instance load(String filePath) {
+        return load(filePath, false);
+    }
+
+    /**
+     * Loads an instance from a text or binary file.
+     *
+     * @param filePath The path of the file to load.
+     * @param cache    Whether to read a text file from its binary copy when
+     *                 that is up to date, and to write the copy otherwise.
+     * @return The loaded instance.
+     * @throws RuntimeException if the file cannot be read.
+     */
+    @SuppressWarnings("try")
+    public static Instance load(String filePath, boolean cache) {
+        try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.PARSE)) {
+            return loadFile(filePath, cache);
+        }
+    }
+
+    /**
+     * Loads an instance, choosing the reader by file extension.
+     *
+     * @param filePath The path of the file to load.
+     * @param cache    Whether to use the binary copy of a text file.
+     * @return The loaded instance.
+     * @throws RuntimeException if the file cannot be read.
+     */
+    private static Instance loadFile(String filePath, boolean cache) {
+        Path path = Paths.get(filePath);
+        if (filePath.endsWith(BinaryInstanceFile.EXTENSION)) {
+            try {
+                return BinaryInstanceFile.read(path);
+            } catch (IOException e) {
+                System.err.println("Error reading binary instance: " + filePath + " - " + e.getMessage());
+                throw new RuntimeException("Error reading binary instance", e);
+            }
+        }
+
+        if (!cache) {
+            return new Instance(CityFileReader.readCityStoreFromFile(filePath), null);
+        }
+
+        // Use the cached binary copy if it is at least as new as the text file
+        Path cachePath = cachePathFor(path);
+        try {
+            if (Files.exists(cachePath)
+                    && Files.getLastModifiedTime(cachePath).compareTo(Files.getLastModifiedTime(path)) >= 0) {
+                return BinaryInstanceFile.read(cachePath);
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable instance cache: " + cachePath + " - " + e.getMessage());
+        }
+
+        CityStore cities = CityFileReader.readCityStoreFromFile(filePath);
+        try {
+            BinaryInstanceFile.write(cities, null, cachePath);
+        } catch (IOException e) {
+            // Caching is best effort; the parsed instance is still usable
+            System.err.println("Could not write instance cache: " + cachePath + " - " + e.getMessage());
+        }
+        return new Instance(cities, null);
+    }
+
+    /**
+     * Converts a text instance file to the binary format.
+     *
+     * @param textPath       The path of the text file to convert.
+     * @param binaryPath     The path of the binary file to write.
+     * @param candidateCount The number of nearest neighbours to precompute per
+     *                       city, or 0 to store no candidate lists.
+     * @throws IOException if the binary file cannot be written.
+     */
+    public static void convert(String textPath, String binaryPath, int candidateCount) throws IOException {
+        CityStore cities = CityFileReader.readCityStoreFromFile(textPath);
+        CandidateLists candidates = candidateCount > 0 ? CandidateLists.build(cities, candidateCount) : null;
+        BinaryInstanceFile.write(cities, candidates, Paths.get(binaryPath));
+    }
+
+    /**
+     * Returns the path of the binary cache for a text instance file.
+     *
+     * @param textPath The path of the text file.
+     * @return The path of its binary cache.
+     */
+    private static Path cachePathFor(Path textPath) {
+        return textPath.resolveSibling(textPath.getFileName() + BinaryInstanceFile.EXTENSION);
+    }
+}
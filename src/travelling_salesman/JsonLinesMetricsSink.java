@@ -0,0 +1,32 @@
+package travelling_salesman;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Metrics sink appending one JSON object per run to a file.
+ */
+public class JsonLinesMetricsSink implements MetricsSink {
+    private final PrintStream out;
+
+    /**
+     * Opens the file for appending.
+     *
+     * @param filePath The path of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public JsonLinesMetricsSink(String filePath) throws IOException {
+        this.out = new PrintStream(new FileOutputStream(filePath, true), true, "UTF-8");
+    }
+
+    /**
+     * Appends the metrics of a run as a single line.
+     *
+     * @param metrics The metrics of the run.
+     */
+    @Override
+    public synchronized void record(SolverMetrics metrics) {
+        out.println(metrics.toJson());
+    }
+}
@@ -0,0 +1,519 @@
+package travelling_salesman;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Static 2-d tree over the cities of a {@link CityStore} that supports nearest
+ * point queries and removal of points.
+ * <p>
+ * The tree is stored implicitly: the cities are permuted so that every range
+ * of the permutation is a subtree whose root sits at the middle of the range.
+ * Each node keeps the number of cities still present in its subtree so that
+ * emptied subtrees are skipped, which keeps repeated "nearest remaining city"
+ * queries close to logarithmic while the tree is drained.
+ * <p>
+ * Queries reuse internal state and are therefore not thread-safe.
+ */
+public class KdTree {
+    /**
+     * Smallest subtree whose build checks the limits first, so that the
+     * checks cost nothing next to the partitioning work.
+     */
+    private static final int BUILD_CHECK_SIZE = 4096;
+
+    private final CityStore cities;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] order;
+    private final int[] position;
+    private final boolean[] splitOnX;
+    private final int[] aliveCount;
+    private final boolean[] removed;
+
+    // Query state
+    private double queryX;
+    private double queryY;
+    private int bestCity;
+    private double bestDistance;
+    private int excludedCity;
+    private int[] heapCities;
+    private double[] heapDistances;
+    private int heapSize;
+    private int heapCapacity;
+
+    // Component labels for queries that skip a set of cities
+    private static final int MIXED = -1;
+    private static final int EMPTY = -2;
+    private int[] component;
+    private int[] nodeComponent;
+    private int queryComponent;
+
+    /**
+     * Builds a tree containing every city of the store.
+     *
+     * @param cities The cities to index.
+     */
+    public KdTree(CityStore cities) {
+        this(cities, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Builds a tree containing every city of the store, giving up when the
+     * limits expire. Building takes O(n log n) time, which is most of a
+     * Nearest Neighbour run on large instances.
+     *
+     * @param cities The cities to index.
+     * @param limits The limits stopping the build.
+     * @throws CancellationException if the limits expire.
+     */
+    public KdTree(CityStore cities, SearchLimits limits) {
+        this.cities = cities;
+        this.xs = cities.getXCoordinates();
+        this.ys = cities.getYCoordinates();
+        int n = cities.size();
+        this.order = new int[n];
+        this.position = new int[n];
+        this.splitOnX = new boolean[n];
+        this.aliveCount = new int[n];
+        this.removed = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        build(0, n, limits);
+        for (int i = 0; i < n; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Returns the number of cities still present in the tree.
+     *
+     * @return The number of cities not yet removed.
+     */
+    public int size() {
+        return order.length == 0 ? 0 : aliveCount[(order.length - 1) >>> 1];
+    }
+
+    /**
+     * Returns whether a city has been removed from the tree.
+     *
+     * @param city The index of the city.
+     * @return {@code true} if the city was removed.
+     */
+    public boolean isRemoved(int city) {
+        return removed[city];
+    }
+
+    /**
+     * Removes a city from the tree. Removing a city twice has no effect.
+     *
+     * @param city The index of the city to remove.
+     */
+    public void remove(int city) {
+        if (removed[city]) {
+            return;
+        }
+        removed[city] = true;
+
+        // Walk from the root to the node of the city, updating subtree counts
+        int target = position[city];
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            aliveCount[mid]--;
+            if (target == mid) {
+                break;
+            } else if (target < mid) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+    }
+
+    /**
+     * Finds the city nearest to a point among the cities still in the tree.
+     * Ties are broken in favour of the lowest city index.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The index of the nearest city, or -1 if the tree is empty.
+     */
+    public int nearest(double x, double y) {
+        queryX = x;
+        queryY = y;
+        bestCity = -1;
+        bestDistance = Double.POSITIVE_INFINITY;
+        search(0, order.length);
+        return bestCity;
+    }
+
+    /**
+     * Finds the remaining city nearest to a city of the store. The city itself
+     * is returned if it has not been removed.
+     *
+     * @param city The index of the city to search from.
+     * @return The index of the nearest city, or -1 if the tree is empty.
+     */
+    public int nearest(int city) {
+        return nearest(xs[city], ys[city]);
+    }
+
+    /**
+     * Finds up to {@code k} remaining cities nearest to a city, excluding the
+     * city itself, ordered by increasing distance.
+     *
+     * @param city The index of the city to search from.
+     * @param k    The number of neighbours to find.
+     * @param out  The array receiving the neighbour indices; must hold at least
+     *             {@code k} entries.
+     * @return The number of neighbours written to {@code out}.
+     */
+    public int nearest(int city, int k, int[] out) {
+        if (heapCities == null || heapCities.length < k) {
+            heapCities = new int[k];
+            heapDistances = new double[k];
+        }
+        queryX = xs[city];
+        queryY = ys[city];
+        excludedCity = city;
+        heapSize = 0;
+        heapCapacity = k;
+        if (k > 0) {
+            searchMany(0, order.length);
+        }
+
+        // Pop the max-heap from the back to obtain ascending order
+        int count = heapSize;
+        for (int i = count - 1; i >= 0; i--) {
+            out[i] = heapCities[0];
+            popFarthest();
+        }
+        return count;
+    }
+
+    /**
+     * Assigns every city to a component for use by
+     * {@link #nearestOutside(int, double)}. Must be called again whenever the
+     * labels change.
+     *
+     * @param component The component of each city.
+     */
+    public void labelComponents(int[] component) {
+        this.component = component;
+        if (nodeComponent == null) {
+            nodeComponent = new int[order.length];
+        }
+        labelSubtree(0, order.length);
+    }
+
+    /**
+     * Finds the remaining city nearest to a city that lies in a different
+     * component, as set by {@link #labelComponents(int[])}.
+     *
+     * @param city  The index of the city to search from.
+     * @param bound Only cities at a squared distance below this bound are
+     *              considered.
+     * @return The index of the nearest city in another component, or -1 if
+     *         there is none within the bound.
+     */
+    public int nearestOutside(int city, double bound) {
+        queryX = xs[city];
+        queryY = ys[city];
+        queryComponent = component[city];
+        bestCity = -1;
+        bestDistance = bound;
+        searchOutside(0, order.length);
+        return bestCity;
+    }
+
+    /**
+     * Returns the squared distance of the city found by the last nearest
+     * point query.
+     *
+     * @return The squared distance of the last result.
+     */
+    public double lastSquaredDistance() {
+        return bestDistance;
+    }
+
+    /**
+     * Recursively searches a subtree for the nearest remaining city.
+     *
+     * @param lo The first position of the subtree range.
+     * @param hi The position after the last of the subtree range.
+     */
+    private void search(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (aliveCount[mid] == 0) {
+            return;
+        }
+
+        int city = order[mid];
+        if (!removed[city]) {
+            double distance = cities.squaredDistanceTo(city, queryX, queryY);
+            if (distance < bestDistance || (distance == bestDistance && city < bestCity)) {
+                bestDistance = distance;
+                bestCity = city;
+            }
+        }
+
+        // Descend into the side of the splitting plane containing the point first
+        double diff = splitOnX[mid] ? queryX - xs[city] : queryY - ys[city];
+        if (diff < 0) {
+            search(lo, mid);
+            if (diff * diff <= bestDistance) {
+                search(mid + 1, hi);
+            }
+        } else {
+            search(mid + 1, hi);
+            if (diff * diff <= bestDistance) {
+                search(lo, mid);
+            }
+        }
+    }
+
+    /**
+     * Recursively searches a subtree for the nearest remaining city outside the
+     * query component, skipping subtrees that lie entirely inside it.
+     *
+     * @param lo The first position of the subtree range.
+     * @param hi The position after the last of the subtree range.
+     */
+    private void searchOutside(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (aliveCount[mid] == 0 || nodeComponent[mid] == queryComponent) {
+            return;
+        }
+
+        int city = order[mid];
+        if (!removed[city] && component[city] != queryComponent) {
+            double distance = cities.squaredDistanceTo(city, queryX, queryY);
+            if (distance < bestDistance || (distance == bestDistance && bestCity >= 0 && city < bestCity)) {
+                bestDistance = distance;
+                bestCity = city;
+            }
+        }
+
+        double diff = splitOnX[mid] ? queryX - xs[city] : queryY - ys[city];
+        if (diff < 0) {
+            searchOutside(lo, mid);
+            if (diff * diff < bestDistance) {
+                searchOutside(mid + 1, hi);
+            }
+        } else {
+            searchOutside(mid + 1, hi);
+            if (diff * diff < bestDistance) {
+                searchOutside(lo, mid);
+            }
+        }
+    }
+
+    /**
+     * Recursively computes the component shared by all remaining cities of a
+     * subtree.
+     *
+     * @param lo The first position of the subtree range.
+     * @param hi The position after the last of the subtree range.
+     * @return The shared component, {@code MIXED} or {@code EMPTY}.
+     */
+    private int labelSubtree(int lo, int hi) {
+        if (lo >= hi) {
+            return EMPTY;
+        }
+        int mid = (lo + hi) >>> 1;
+        int city = order[mid];
+        int label = removed[city] ? EMPTY : component[city];
+        label = mergeLabels(label, labelSubtree(lo, mid));
+        label = mergeLabels(label, labelSubtree(mid + 1, hi));
+        nodeComponent[mid] = label;
+        return label;
+    }
+
+    /**
+     * Combines the component labels of two parts of a subtree.
+     *
+     * @param a The first label.
+     * @param b The second label.
+     * @return The label of the combined part.
+     */
+    private static int mergeLabels(int a, int b) {
+        if (a == EMPTY) {
+            return b;
+        }
+        if (b == EMPTY || a == b) {
+            return a;
+        }
+        return MIXED;
+    }
+
+    /**
+     * Recursively searches a subtree for the nearest remaining cities, keeping
+     * them in a bounded max-heap.
+     *
+     * @param lo The first position of the subtree range.
+     * @param hi The position after the last of the subtree range.
+     */
+    private void searchMany(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (aliveCount[mid] == 0) {
+            return;
+        }
+
+        int city = order[mid];
+        if (!removed[city] && city != excludedCity) {
+            double distance = cities.squaredDistanceTo(city, queryX, queryY);
+            if (heapSize < heapCapacity) {
+                pushCandidate(city, distance);
+            } else if (distance < heapDistances[0]) {
+                popFarthest();
+                pushCandidate(city, distance);
+            }
+        }
+
+        double diff = splitOnX[mid] ? queryX - xs[city] : queryY - ys[city];
+        int nearLo = diff < 0 ? lo : mid + 1;
+        int nearHi = diff < 0 ? mid : hi;
+        int farLo = diff < 0 ? mid + 1 : lo;
+        int farHi = diff < 0 ? hi : mid;
+        searchMany(nearLo, nearHi);
+        if (heapSize < heapCapacity || diff * diff < heapDistances[0]) {
+            searchMany(farLo, farHi);
+        }
+    }
+
+    /**
+     * Adds a candidate to the max-heap of nearest cities.
+     *
+     * @param city     The index of the city.
+     * @param distance The squared distance of the city from the query point.
+     */
+    private void pushCandidate(int city, double distance) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapDistances[parent] >= distance) {
+                break;
+            }
+            heapCities[i] = heapCities[parent];
+            heapDistances[i] = heapDistances[parent];
+            i = parent;
+        }
+        heapCities[i] = city;
+        heapDistances[i] = distance;
+    }
+
+    /**
+     * Removes the farthest candidate from the max-heap of nearest cities.
+     */
+    private void popFarthest() {
+        int lastCity = heapCities[--heapSize];
+        double lastDistance = heapDistances[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapDistances[child + 1] > heapDistances[child]) {
+                child++;
+            }
+            if (heapDistances[child] <= lastDistance) {
+                break;
+            }
+            heapCities[i] = heapCities[child];
+            heapDistances[i] = heapDistances[child];
+            i = child;
+        }
+        heapCities[i] = lastCity;
+        heapDistances[i] = lastDistance;
+    }
+
+    /**
+     * Recursively builds the subtree for a range of the permutation, splitting on
+     * the axis with the larger extent.
+     *
+     * @param lo     The first position of the range.
+     * @param hi     The position after the last of the range.
+     * @param limits The limits stopping the build, checked before every
+     *               large subtree.
+     * @throws CancellationException if the limits expire.
+     */
+    private void build(int lo, int hi, SearchLimits limits) {
+        if (lo >= hi) {
+            return;
+        }
+        if (hi - lo >= BUILD_CHECK_SIZE && limits.isExpired()) {
+            throw new CancellationException("Tree build was cancelled");
+        }
+        int mid = (lo + hi) >>> 1;
+        aliveCount[mid] = hi - lo;
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            int city = order[i];
+            minX = Math.min(minX, xs[city]);
+            maxX = Math.max(maxX, xs[city]);
+            minY = Math.min(minY, ys[city]);
+            maxY = Math.max(maxY, ys[city]);
+        }
+        boolean onX = maxX - minX >= maxY - minY;
+        splitOnX[mid] = onX;
+
+        select(lo, hi - 1, mid, onX ? xs : ys);
+        build(lo, mid, limits);
+        build(mid + 1, hi, limits);
+    }
+
+    /**
+     * Partially sorts a range of the permutation so that position {@code k}
+     * holds the city it would hold if the range were sorted by the given
+     * coordinate.
+     *
+     * @param lo     The first position of the range.
+     * @param hi     The last position of the range (inclusive).
+     * @param k      The position to place.
+     * @param coords The coordinate array to order by.
+     */
+    private void select(int lo, int hi, int k, double[] coords) {
+        while (hi > lo) {
+            double pivot = coords[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coords[order[i]] < pivot) {
+                    i++;
+                }
+                while (coords[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package travelling_salesman;
+
+/**
+ * Post-optimization stage that improves any tour with 2-opt and Or-opt moves.
+ * <p>
+ * Moves are only tried towards the nearest neighbours of a city, and cities
+ * whose surroundings have not changed are not looked at again (don't-look
+ * bits), so a pass costs far less than the quadratic scan of plain 2-opt.
+ */
+public class LocalSearch {
+    /**
+     * Default number of nearest neighbours tried per city.
+     */
+    public static final int DEFAULT_CANDIDATES = 8;
+
+    /**
+     * Longest segment moved by an Or-opt move, on tours of at least
+     * {@code 2 * MAX_SEGMENT_LENGTH + 2} cities.
+     */
+    private static final int MAX_SEGMENT_LENGTH = 3;
+
+    /**
+     * Smallest improvement accepted, guarding against rounding loops.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Number of queue pops between checks of the time limit.
+     */
+    private static final int TIME_CHECK_INTERVAL = 64;
+
+    private final CityStore cities;
+    private final Tour tour;
+    private final CandidateLists candidates;
+    private final CityQueue queue;
+    private final int maxSegmentLength;
+
+    /**
+     * Constructs the search state.
+     *
+     * @param cities     The cities the tour refers to.
+     * @param tour       The tour to improve.
+     * @param candidates The nearest neighbour lists of the cities.
+     */
+    private LocalSearch(CityStore cities, Tour tour, CandidateLists candidates) {
+        this.cities = cities;
+        this.tour = tour;
+        this.candidates = candidates;
+        this.queue = new CityQueue(cities.size());
+        // Or-opt needs the segment, its neighbours and a separate edge
+        this.maxSegmentLength = Math.min(MAX_SEGMENT_LENGTH, (tour.size() - 2) / 2);
+    }
+
+    /**
+     * Improves a closed path as returned by the solvers.
+     *
+     * @param cities The cities the path refers to.
+     * @param path   The closed path of city indices.
+     * @param limits The limits on the improvement.
+     * @return The improved closed path, starting at the same city.
+     */
+    public static int[] improve(CityStore cities, int[] path, SearchLimits limits) {
+        if (path.length < 2) {
+            return path;
+        }
+        Tour tour = Tour.fromClosedPath(path);
+        improve(cities, tour, CandidateLists.build(cities, DEFAULT_CANDIDATES), limits);
+        return tour.toClosedPath(path[0]);
+    }
+
+    /**
+     * Improves a tour in place until no improving move remains or a limit is
+     * reached.
+     *
+     * @param cities     The cities the tour refers to.
+     * @param tour       The tour to improve.
+     * @param candidates The nearest neighbour lists of the cities.
+     * @param limits     The limits on the improvement.
+     * @return The number of improving moves applied.
+     */
+    public static long improve(CityStore cities, Tour tour, CandidateLists candidates, SearchLimits limits) {
+        // Four cities are the fewest with two disjoint edges to exchange
+        if (tour.size() < 4) {
+            return 0;
+        }
+        LocalSearch search = new LocalSearch(cities, tour, candidates);
+        for (int i = 0; i < tour.size(); i++) {
+            search.queue.push(tour.cityAt(i));
+        }
+        long moves = search.run(limits);
+        SolverMetrics.count(SolverMetrics.Counter.IMPROVING_MOVES, moves);
+        return moves;
+    }
+
+    /**
+     * Processes queued cities until the queue is empty or a limit is reached.
+     *
+     * @param limits The limits on the improvement.
+     * @return The number of improving moves applied.
+     */
+    private long run(SearchLimits limits) {
+        long moves = 0;
+        int pops = 0;
+        while (!queue.isEmpty() && moves < limits.getMaxMoves()) {
+            if (++pops % TIME_CHECK_INTERVAL == 0 && limits.checkpoint()) {
+                break;
+            }
+            int city = queue.pop();
+            if (improveTwoOpt(city) || improveOrOpt(city)) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Tries 2-opt moves that add an edge from a city to one of its neighbours.
+     * Applies the first improving move found.
+     *
+     * @param a The city to improve around.
+     * @return {@code true} if a move was applied.
+     */
+    private boolean improveTwoOpt(int a) {
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? tour.next(a) : tour.prev(a);
+            double removedAB = cities.distance(a, b);
+
+            for (int r = 0; r < candidates.count(a); r++) {
+                int c = candidates.get(a, r);
+                double gainAC = removedAB - cities.distance(a, c);
+                // Candidates are sorted, so no later neighbour can do better
+                if (gainAC <= EPSILON) {
+                    break;
+                }
+                int d = forward ? tour.next(c) : tour.prev(c);
+                if (c == b || d == a) {
+                    continue;
+                }
+                double gain = gainAC + cities.distance(c, d) - cities.distance(b, d);
+                if (gain > EPSILON) {
+                    tour.twoOptMove(a, b, c, d);
+                    queue.push(a);
+                    queue.push(b);
+                    queue.push(c);
+                    queue.push(d);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to move a segment starting at a city, possibly reversed, between
+     * two adjacent cities near either end of the segment. Applies the first
+     * improving move found.
+     *
+     * @param s1 The first city of the segment.
+     * @return {@code true} if a move was applied.
+     */
+    private boolean improveOrOpt(int s1) {
+        int s2 = s1;
+        for (int length = 1; length <= maxSegmentLength; length++) {
+            if (length > 1) {
+                s2 = tour.next(s2);
+            }
+            int p = tour.prev(s1);
+            int nx = tour.next(s2);
+            double removeGain = cities.distance(p, s1) + cities.distance(s2, nx) - cities.distance(p, nx);
+            if (removeGain <= EPSILON) {
+                continue;
+            }
+
+            for (int end = 0; end < 2; end++) {
+                int e = end == 0 ? s1 : s2;
+                for (int r = 0; r < candidates.count(e); r++) {
+                    int c = candidates.get(e, r);
+                    if (cities.distance(e, c) >= removeGain) {
+                        break;
+                    }
+                    if (inSegment(c, s1, length)) {
+                        continue;
+                    }
+                    // Try the edges on both sides of the candidate
+                    if (tryInsert(s1, s2, length, p, nx, c, tour.next(c), removeGain)
+                            || tryInsert(s1, s2, length, p, nx, tour.prev(c), c, removeGain)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the segment {@code s1..s2} between {@code u} and its successor
+     * {@code v} if that shortens the tour.
+     *
+     * @param s1         The first city of the segment.
+     * @param s2         The last city of the segment.
+     * @param length     The number of cities in the segment.
+     * @param p          The city before the segment.
+     * @param nx         The city after the segment.
+     * @param u          The city to insert the segment after.
+     * @param v          The successor of {@code u}.
+     * @param removeGain The length saved by removing the segment.
+     * @return {@code true} if the move was applied.
+     */
+    private boolean tryInsert(int s1, int s2, int length, int p, int nx, int u, int v, double removeGain) {
+        // Edges touching the segment, and insertions equivalent to moving a
+        // neighbour of the segment instead, are left to other moves
+        if (inSegment(u, s1, length) || inSegment(v, s1, length) || u == nx || v == p) {
+            return false;
+        }
+        double removedUV = cities.distance(u, v);
+        double forwardGain = removeGain + removedUV - cities.distance(u, s1) - cities.distance(s2, v);
+        double reversedGain = removeGain + removedUV - cities.distance(u, s2) - cities.distance(s1, v);
+        if (forwardGain <= EPSILON && reversedGain <= EPSILON) {
+            return false;
+        }
+
+        // Express the move as a sequence of 2-opt moves
+        tour.twoOptMove(p, s1, u, v);
+        tour.twoOptMove(p, u, nx, s2);
+        if (forwardGain > reversedGain && length > 1) {
+            tour.twoOptMove(u, s2, s1, v);
+        }
+        queue.push(p);
+        queue.push(nx);
+        queue.push(s1);
+        queue.push(s2);
+        queue.push(u);
+        queue.push(v);
+        return true;
+    }
+
+    /**
+     * Checks whether a city belongs to the segment of the given length that
+     * starts at {@code s1}.
+     *
+     * @param city   The city to check.
+     * @param s1     The first city of the segment.
+     * @param length The number of cities in the segment.
+     * @return {@code true} if the city is in the segment.
+     */
+    private boolean inSegment(int city, int s1, int length) {
+        int offset = tour.positionOf(city) - tour.positionOf(s1);
+        if (offset < 0) {
+            offset += tour.size();
+        }
+        return offset < length;
+    }
+}
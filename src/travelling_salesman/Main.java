@@ -1,21 +1,54 @@
 package travelling_salesman;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles the program's entry point and user interaction.
  */
 public class Main {
+    private static final SolveOptions options = new SolveOptions();
+    private static String batchSource = null;
+    private static List<String> batchSolvers = Solvers.NAMES;
+    private static String batchFormat = BatchRunner.FORMAT_CSV;
+    private static String batchOutput = null;
+    private static int serverPort = -1;
+    private static int queueCapacity = 64;
+    private static long deadlineMillis = 0;
+    private static long timeBudgetMillis = 0;
+    private static boolean reportBound = false;
+
     public static void main(String[] args) {
-        if (args.length == 0) {
+        if (args.length > 0 && args[0].equals("--convert")) {
+            convert(args);
+            return;
+        }
+        String filePath = parseArguments(args);
+        if (batchSource != null) {
+            runBatch();
+            return;
+        }
+        if (serverPort >= 0) {
+            runServer();
+            return;
+        }
+        if (filePath == null) {
             System.out.println("No file path provided.");
             return;
         }
-        String filePath = args[0];
-        ArrayList<City> cities = CityFileReader.readCitiesFromFile(filePath);
+        if (options.getMetricsSink() != null) {
+            SolverMetrics.start(filePath);
+        }
+        Instance instance = InstanceLoader.load(filePath, options.isInstanceCache());
+        CityStore cities = instance.getCities();
+        options.setCandidates(instance.getCandidates());
 
-        if (cities.isEmpty()) {
+        if (cities.size() == 0) {
             System.out.println("No cities found in the file.");
             return;
         }
@@ -27,43 +60,295 @@ public class Main {
 
     }
 
+    /**
+     * Parses the command line options and returns the instance file path.
+     * Supported options are {@code --improve} to run the 2-opt/Or-opt stage on
+     * the solution, {@code --time-limit=<ms>} to bound that stage, the
+     * Lin-Kernighan search and the exact solver,
+     * {@code --dijkstra-neighbours=<k>} to run
+     * Dijkstra's algorithm on the k-nearest neighbour graph,
+     * {@code --starts=<count>} to run Nearest Neighbour or Minimum Spanning
+     * Tree from several start cities in parallel, and {@code --threads=<count>}
+     * to set the number of worker threads. {@code --partition-size=<cities>}
+     * splits larger instances into regions solved in parallel.
+     * {@code --batch=<list or directory>}
+     * runs without user interaction, with {@code --solvers=<names>},
+     * {@code --format=csv|json} and {@code --output=<file>} selecting the
+     * solvers and the result file. {@code --server=<port>} starts the
+     * resident solver service, with {@code --queue=<capacity>} and
+     * {@code --deadline=<ms>} bounding the request queue and the default
+     * request deadline. {@code --time-budget=<ms>} solves interactively as an
+     * anytime search, printing every shorter tour found and stopping with the
+     * best one when the budget runs out. {@code --metrics} prints the phase
+     * timings, work counters and memory use of every run, and
+     * {@code --metrics=<file>} appends them to a file as JSON lines.
+     * {@code --bound} computes a Held-Karp lower bound alongside the solver
+     * and reports the optimality gap, and {@code --target-gap=<percent>} stops
+     * the improvement once the tour is within that gap of the bound.
+     * {@code --cache} reuses the tours of instances solved before with the
+     * same solver and settings, and {@code --cache=<directory>} also keeps
+     * them in that directory across runs. {@code --instance-cache} keeps a
+     * binary copy of text instance files next to them to skip the parsing
+     * on later runs.
+     *
+     * @param args The command line arguments.
+     * @return The instance file path, or {@code null} if none was given.
+     */
+    private static String parseArguments(String[] args) {
+        String filePath = null;
+        for (String arg : args) {
+            if (arg.equals("--improve")) {
+                options.setImprove(true);
+            } else if (arg.startsWith("--time-limit=")) {
+                options.setTimeLimitMillis(parseNumber(arg, options.getTimeLimitMillis()));
+            } else if (arg.startsWith("--dijkstra-neighbours=")) {
+                options.setDijkstraNeighbours((int) parseNumber(arg, options.getDijkstraNeighbours()));
+            } else if (arg.startsWith("--starts=")) {
+                options.setStarts((int) parseNumber(arg, options.getStarts()));
+            } else if (arg.startsWith("--threads=")) {
+                options.setThreads((int) parseNumber(arg, options.getThreads()));
+            } else if (arg.startsWith("--partition-size=")) {
+                options.setPartitionSize((int) parseNumber(arg, options.getPartitionSize()));
+            } else if (arg.startsWith("--batch=")) {
+                batchSource = optionValue(arg);
+            } else if (arg.startsWith("--solvers=")) {
+                batchSolvers = Arrays.asList(optionValue(arg).split(","));
+            } else if (arg.startsWith("--format=")) {
+                batchFormat = optionValue(arg);
+            } else if (arg.startsWith("--output=")) {
+                batchOutput = optionValue(arg);
+            } else if (arg.startsWith("--server=")) {
+                serverPort = (int) parseNumber(arg, serverPort);
+            } else if (arg.startsWith("--queue=")) {
+                queueCapacity = (int) parseNumber(arg, queueCapacity);
+            } else if (arg.startsWith("--deadline=")) {
+                deadlineMillis = parseNumber(arg, deadlineMillis);
+            } else if (arg.equals("--metrics")) {
+                options.setMetricsSink(metrics -> System.out.println(metrics.format()));
+            } else if (arg.startsWith("--metrics=")) {
+                try {
+                    options.setMetricsSink(new JsonLinesMetricsSink(optionValue(arg)));
+                } catch (IOException e) {
+                    System.err.println("Error opening metrics file: " + optionValue(arg) + " - " + e.getMessage());
+                }
+            } else if (arg.equals("--cache") || arg.startsWith("--cache=")) {
+                String directory = arg.startsWith("--cache=") ? optionValue(arg) : null;
+                try {
+                    options.setResultCache(new ResultCache(ResultCache.DEFAULT_MAX_CITIES,
+                            directory != null ? Paths.get(directory) : null));
+                } catch (IOException e) {
+                    System.err.println("Error opening cache directory: " + directory + " - " + e.getMessage());
+                }
+            } else if (arg.equals("--instance-cache")) {
+                options.setInstanceCache(true);
+            } else if (arg.equals("--bound")) {
+                reportBound = true;
+            } else if (arg.startsWith("--target-gap=")) {
+                try {
+                    options.setTargetGap(Double.parseDouble(optionValue(arg)) / 100);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid number in option: " + arg);
+                }
+            } else if (arg.startsWith("--time-budget=")) {
+                timeBudgetMillis = parseNumber(arg, timeBudgetMillis);
+            } else if (arg.startsWith("--")) {
+                System.out.println("Unknown option: " + arg);
+            } else if (filePath == null) {
+                filePath = arg;
+            }
+        }
+        return filePath;
+    }
+
+    /**
+     * Parses the numeric value of an option of the form {@code --name=value}.
+     *
+     * @param arg          The option argument.
+     * @param defaultValue The value to keep if the number is invalid.
+     * @return The parsed value, or the default if it is invalid.
+     */
+    private static long parseNumber(String arg, long defaultValue) {
+        try {
+            return Long.parseLong(optionValue(arg));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number in option: " + arg);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of an option of the form {@code --name=value}.
+     *
+     * @param arg The option argument.
+     * @return The text after the equals sign.
+     */
+    private static String optionValue(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    /**
+     * Runs the batch mode selected by {@code --batch}, writing the results to
+     * the output file or to standard output.
+     */
+    private static void runBatch() {
+        if (!batchFormat.equals(BatchRunner.FORMAT_CSV) && !batchFormat.equals(BatchRunner.FORMAT_JSON)) {
+            System.out.println("Unknown format: " + batchFormat);
+            return;
+        }
+        for (String solver : batchSolvers) {
+            if (!Solvers.NAMES.contains(solver)) {
+                System.out.println("Unknown solver: " + solver + " (available: " + String.join(",", Solvers.NAMES)
+                        + ")");
+                return;
+            }
+        }
+        List<String> instances = BatchRunner.listInstances(batchSource);
+        int failures;
+        if (batchOutput == null) {
+            failures = BatchRunner.run(instances, batchSolvers, options, batchFormat, System.out);
+        } else {
+            try (PrintStream out = new PrintStream(batchOutput, "UTF-8")) {
+                failures = BatchRunner.run(instances, batchSolvers, options, batchFormat, out);
+            } catch (IOException e) {
+                System.err.println("Error writing results: " + batchOutput + " - " + e.getMessage());
+                return;
+            }
+            System.out.println("Wrote " + instances.size() * batchSolvers.size() + " results to " + batchOutput);
+        }
+        if (failures > 0) {
+            System.err.println(failures + " runs failed");
+        }
+    }
+
+    /**
+     * Starts the resident solver service selected by {@code --server} and
+     * keeps it running until the process is stopped.
+     */
+    private static void runServer() {
+        SolverServer server = new SolverServer(options, options.getThreads(), queueCapacity, deadlineMillis);
+        System.out.println("Warming up the solvers...");
+        server.warmUp();
+        try {
+            int port = server.start(serverPort);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.out.println("Listening on http://127.0.0.1:" + port + "/solve with " + options.getThreads()
+                    + " solver threads");
+        } catch (IOException e) {
+            System.err.println("Error starting server on port " + serverPort + " - " + e.getMessage());
+            server.stop();
+        }
+    }
+
+    /**
+     * Converts a text instance file to the binary format. Expects the arguments
+     * {@code --convert <input> <output> [candidates]}.
+     *
+     * @param args The command line arguments.
+     */
+    private static void convert(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: --convert <input file> <output file" + BinaryInstanceFile.EXTENSION
+                    + "> [candidates per city]");
+            return;
+        }
+        try {
+            int candidateCount = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            InstanceLoader.convert(args[1], args[2], candidateCount);
+            System.out.println("Converted " + args[1] + " to " + args[2]);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number of candidates: " + args[3]);
+        } catch (IOException e) {
+            System.err.println("Error writing binary instance: " + args[2] + " - " + e.getMessage());
+        }
+    }
+
     /**
      * Executes the selected algorithm based on user choice.
      *
      * @param choice The user's choice of algorithm.
-     * @param cities The list of cities to use in the algorithm.
+     * @param cities The cities to use in the algorithm.
      */
-    private static void executeChoice(int choice, ArrayList<City> cities) {
-        long startTime, endTime;
-        ArrayList<City> solution;
-
+    private static void executeChoice(int choice, CityStore cities) {
+        String solver;
         switch (choice) {
             case 1:
                 System.out.println("\nSolving with Nearest Neighbour...");
-                startTime = System.nanoTime();
-                solution = SolverNN.solveNearestNeighbour(cities);
-                endTime = System.nanoTime();
+                solver = "nn";
                 break;
             case 2:
                 System.out.println("\nSolving with Dijkstra's Algorithm...");
-                startTime = System.nanoTime();
-                solution = SolverDijkstra.solveDijkstra(cities);
-                endTime = System.nanoTime();
+                solver = "dijkstra";
                 break;
             case 3:
                 System.out.println("\nSolving with Minimum Spanning Tree...");
-                startTime = System.nanoTime();
-                solution = SolverMST.solveMST(cities);
-                endTime = System.nanoTime();
+                solver = "mst";
                 break;
             case 4:
+                System.out.println("\nSolving with Lin-Kernighan...");
+                solver = "lk";
+                break;
+            case 5:
+                System.out.println("\nSolving with Hilbert Curve...");
+                solver = "hilbert";
+                break;
+            case 6:
+                // With partitioning, only the regions need to be small enough
+                int partitionSize = options.getPartitionSize();
+                int largest = partitionSize > 0 ? Math.min(cities.size(), partitionSize) : cities.size();
+                if (largest > SolverExact.MAX_CITIES) {
+                    System.out.println("\nThe exact solver supports at most " + SolverExact.MAX_CITIES
+                            + " cities; use --partition-size=" + SolverExact.MAX_CITIES + " or less for larger"
+                            + " instances.");
+                    return;
+                }
+                System.out.println("\nSolving exactly...");
+                solver = "exact";
+                break;
+            case 7:
+                System.out.println("\nSolving with Christofides...");
+                solver = "christofides";
+                break;
+            case 8:
                 System.out.println("Exiting...");
                 return;
             default:
                 System.out.println("Invalid choice. Please try again.");
                 return;
         }
-        UserInterface.displaySolution(solution, startTime, endTime);
-    }
+        if (options.getStarts() > 1 && (choice == 1 || choice == 3)) {
+            System.out.println("Running from " + options.getStarts() + " start cities on " + options.getThreads()
+                    + " threads...");
+        }
+        if (options.isImprove()) {
+            System.out.println("Improving with 2-opt and Or-opt...");
+        }
+        CompletableFuture<Double> bound = reportBound
+                ? HeldKarpBound.computeAsync(cities, SearchLimits.UNLIMITED)
+                : null;
+        long startTime = System.nanoTime();
+        int[] solution;
+        if (timeBudgetMillis > 0) {
+            solution = AnytimeSolver.solve(solver, cities, options, timeBudgetMillis, null,
+                    (path, length, elapsedMillis) -> System.out.println(
+                            "Found tour of length " + length + " after " + elapsedMillis + " ms"));
+        } else {
+            solution = Solvers.solve(solver, cities, options);
+        }
+        long endTime = System.nanoTime();
+        UserInterface.displaySolution(cities, solution, startTime, endTime);
+        if (solver.equals("exact") && timeBudgetMillis == 0
+                && SolverExact.reachedTimeLimit(options, endTime - startTime)) {
+            System.out.println("Time limit of " + options.getExactTimeLimitMillis()
+                    + " ms reached: the tour is not proven optimal.");
+        }
+        if (bound != null) {
+            UserInterface.displayBound(UserInterface.calculateTotalDistance(cities, solution), bound.join());
+        }
 
+        SolverMetrics metrics = SolverMetrics.current();
+        if (metrics != null) {
+            metrics.setSolver(solver, cities.size());
+            metrics.finish(options.getMetricsSink());
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package travelling_salesman;
+
+/**
+ * Receives the metrics of every finished solver run.
+ */
+public interface MetricsSink {
+    /**
+     * Called once a run has finished. May be called from several threads at
+     * once.
+     *
+     * @param metrics The metrics of the run.
+     */
+    void record(SolverMetrics metrics);
+}
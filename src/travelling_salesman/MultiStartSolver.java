@@ -0,0 +1,148 @@
+package travelling_salesman;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Utility class for running tour constructions from many start cities in
+ * parallel and keeping the shortest result.
+ * <p>
+ * Every start city and construction pair is an independent task on a
+ * fork-join pool. Each task can optionally improve its tour with
+ * {@link LocalSearch} before offering it to a shared {@link BestTour}. Given
+ * a lower bound and a target gap, the improvements stop and the remaining
+ * tasks are skipped once a tour is within the gap of the bound.
+ */
+public class MultiStartSolver {
+    /**
+     * Tour constructions that can be started from any city.
+     */
+    public enum Construction {
+        NEAREST_NEIGHBOUR, MINIMUM_SPANNING_TREE
+    }
+
+    /**
+     * Minimum time between two checks of the target gap during improvement.
+     */
+    private static final long GAP_CHECK_INTERVAL_MILLIS = 100;
+
+    /**
+     * Runs the constructions from evenly spread start cities in parallel.
+     *
+     * @param cities             The cities to use in the algorithm.
+     * @param constructions      The constructions to run from every start
+     *                           city.
+     * @param starts             The number of start cities, including city 0.
+     * @param threads            The number of worker threads.
+     * @param improve            Whether to improve every tour with 2-opt and
+     *                           Or-opt.
+     * @param candidates         The precomputed candidate lists of the cities,
+     *                           or {@code null} to compute them when
+     *                           improving.
+     * @param constructionLimits The limits stopping the constructions, checked
+     *                           during their searches and after every one.
+     * @param improveLimits      Creates the limits of one improvement, called
+     *                           when it starts, so that every start gets the
+     *                           whole time limit.
+     * @param bound              The future lower bound shared by all tasks,
+     *                           or {@code null} to run every task in full.
+     * @param targetGap          The gap to the bound at which to stop, as a
+     *                           fraction of the bound.
+     * @return The shortest tour found, starting and ending at city 0.
+     * @throws CancellationException if the construction limits expire.
+     */
+    public static int[] solve(CityStore cities, List<Construction> constructions, int starts, int threads,
+            boolean improve, CandidateLists candidates, SearchLimits constructionLimits,
+            Supplier<SearchLimits> improveLimits, CompletableFuture<Double> bound, double targetGap) {
+        int n = cities.size();
+        starts = Math.max(1, Math.min(starts, n));
+        CandidateLists improveCandidates = improve
+                ? CandidateLists.reuseOrBuild(candidates, cities, LocalSearch.DEFAULT_CANDIDATES)
+                : null;
+        BestTour best = new BestTour();
+
+        // The spanning tree does not depend on the start city, so it is built once
+        SolverMST.SpanningTree tree = constructions.contains(Construction.MINIMUM_SPANNING_TREE)
+                ? new SolverMST.SpanningTree(cities, constructionLimits)
+                : null;
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int s = 0; s < starts; s++) {
+            // Spread the start cities over the index range
+            int startCity = (int) ((long) s * n / starts);
+            for (Construction construction : constructions) {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    if (withinGap(best, bound, targetGap)) {
+                        return;
+                    }
+                    int[] path = construct(cities, tree, construction, startCity, constructionLimits);
+                    if (constructionLimits.isExpired()) {
+                        // A Nearest Neighbour tour cut short is not worth offering
+                        throw new CancellationException("Multi-start construction was cancelled");
+                    }
+                    if (improve) {
+                        Tour tour = Tour.fromClosedPath(path);
+                        SearchLimits tourLimits = improveLimits.get();
+                        if (bound != null) {
+                            tourLimits = tourLimits.withGoal(HeldKarpBound.withinGap(bound, cities, tour, targetGap),
+                                    GAP_CHECK_INTERVAL_MILLIS);
+                        }
+                        LocalSearch.improve(cities, tour, improveCandidates, tourLimits);
+                        path = tour.toClosedPath(0);
+                    }
+                    best.offer(path, UserInterface.calculateTotalDistance(cities, path));
+                }));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+        }
+        return Tour.fromClosedPath(best.getPath()).toClosedPath(0);
+    }
+
+    /**
+     * Returns whether the best tour so far is within the target gap of a
+     * bound that is already known.
+     *
+     * @param best      The best tour so far.
+     * @param bound     The future lower bound, or {@code null}.
+     * @param targetGap The target gap as a fraction of the bound.
+     * @return {@code true} if the remaining tasks can be skipped.
+     */
+    private static boolean withinGap(BestTour best, CompletableFuture<Double> bound, double targetGap) {
+        return bound != null && bound.isDone() && !bound.isCompletedExceptionally()
+                && HeldKarpBound.gap(best.getLength(), bound.join()) <= targetGap;
+    }
+
+    /**
+     * Runs a single construction from a start city.
+     *
+     * @param cities       The cities to use in the algorithm.
+     * @param tree         The minimum spanning tree of the cities, or
+     *                     {@code null} if no construction needs it.
+     * @param construction The construction to run.
+     * @param startCity    The index of the city to start from.
+     * @param limits       The limits stopping the construction.
+     * @return The closed path built by the construction.
+     */
+    private static int[] construct(CityStore cities, SolverMST.SpanningTree tree, Construction construction,
+            int startCity, SearchLimits limits) {
+        switch (construction) {
+            case NEAREST_NEIGHBOUR:
+                return SolverNN.solveNearestNeighbour(cities, startCity, limits);
+            case MINIMUM_SPANNING_TREE:
+                return tree.tour(startCity);
+            default:
+                throw new IllegalArgumentException("Unknown construction: " + construction);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package travelling_salesman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Utility class for solving very large instances by divide and conquer.
+ * <p>
+ * The plane is split by a k-d partition into regions of at most a given
+ * number of cities, halving the widest side at the median city every time.
+ * Every region is copied into its own {@link CityStore} and solved in
+ * parallel with the selected solver, including its improvement stage, so the
+ * memory of a task is bounded by the region size rather than the instance.
+ * The regions are visited in the order of a Hilbert curve over their centres,
+ * and each region's cycle is opened at the city nearest to the end of the
+ * previous one, leaving towards the next region. Finally the tour is repaired
+ * around every seam with 2-opt and Or-opt moves inside a short window of the
+ * tour on either side.
+ * <p>
+ * A time limit applies to the whole run: every region's improvement stage
+ * gets the time left until one deadline set when the run starts, so the run
+ * does not take longer as the number of regions grows.
+ */
+public class PartitionedSolver {
+    /**
+     * Number of tour positions on each side of a seam that the repair may
+     * rearrange.
+     */
+    private static final int REPAIR_WINDOW = 50;
+
+    /**
+     * Number of curve levels used to order the regions.
+     */
+    private static final int ORDER = 10;
+
+    /**
+     * Smallest improvement accepted, guarding against rounding loops.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Solves an instance region by region.
+     *
+     * @param name          The solver name, see {@link Solvers#NAMES}.
+     * @param cities        The cities to use in the algorithm.
+     * @param options       The solver settings, applied to every region.
+     * @param partitionSize The maximum number of cities in a region.
+     * @return The tour as city indices, starting and ending at city 0.
+     */
+    public static int[] solve(String name, CityStore cities, SolveOptions options, int partitionSize) {
+        int n = cities.size();
+        int[] cityOrder = new int[n];
+        for (int i = 0; i < n; i++) {
+            cityOrder[i] = i;
+        }
+        List<int[]> regions = new ArrayList<>();
+        partition(cities, cityOrder, 0, n, Math.max(partitionSize, 1), regions);
+        orderRegions(cities, cityOrder, regions);
+
+        // The time limit covers the whole run, not each region
+        SearchLimits runLimits = options.newSearchLimits();
+
+        // Solve every region on its own, one thread per region
+        SolveOptions regionOptions = new SolveOptions(options);
+        regionOptions.setPartitionSize(0);
+        regionOptions.setThreads(1);
+        regionOptions.setResultCache(null);
+        regionOptions.setCandidates(null);
+        int[][] paths = new int[regions.size()][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int r = 0; r < regions.size(); r++) {
+            int region = r;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                int[] bounds = regions.get(region);
+                SolveOptions taskOptions = regionOptions;
+                if (options.getTimeLimitMillis() > 0) {
+                    // A time limit of 0 would be none, so late regions get the shortest one
+                    taskOptions = new SolveOptions(regionOptions);
+                    taskOptions.setTimeLimitMillis(Math.max(1, runLimits.remainingMillis()));
+                }
+                paths[region] = Solvers.solve(name, subStore(cities, cityOrder, bounds[0], bounds[1]),
+                        taskOptions);
+            }));
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, options.getThreads()));
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+
+            int[] order = new int[n];
+            int[] seams = stitch(cities, cityOrder, regions, paths, order);
+            repairSeams(cities, order, seams, pool);
+            return new Tour(order).toClosedPath(0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits a range of cities into regions, halving the wider side of their
+     * bounding box at the median city until every region is small enough.
+     *
+     * @param cities        The cities.
+     * @param cityOrder     The city indices, rearranged so that every region
+     *                      is a contiguous range.
+     * @param from          The first position of the range.
+     * @param to            The position after the range.
+     * @param partitionSize The maximum number of cities in a region.
+     * @param regions       Receives the regions as {@code {from, to}} ranges.
+     */
+    private static void partition(CityStore cities, int[] cityOrder, int from, int to, int partitionSize,
+            List<int[]> regions) {
+        if (to - from <= partitionSize) {
+            regions.add(new int[] { from, to });
+            return;
+        }
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            int city = cityOrder[i];
+            minX = Math.min(minX, cities.getX(city));
+            minY = Math.min(minY, cities.getY(city));
+            maxX = Math.max(maxX, cities.getX(city));
+            maxY = Math.max(maxY, cities.getY(city));
+        }
+        boolean splitX = maxX - minX >= maxY - minY;
+        int middle = (from + to) >>> 1;
+        select(cities, cityOrder, from, to, middle, splitX);
+        partition(cities, cityOrder, from, middle, partitionSize, regions);
+        partition(cities, cityOrder, middle, to, partitionSize, regions);
+    }
+
+    /**
+     * Rearranges a range so that the city at position {@code k} is the one a
+     * sort by the coordinate would put there, with no larger coordinate
+     * before it and no smaller one after it (quickselect).
+     *
+     * @param cities    The cities.
+     * @param cityOrder The city indices.
+     * @param from      The first position of the range.
+     * @param to        The position after the range.
+     * @param k         The position to select.
+     * @param byX       {@code true} to compare x-coordinates, otherwise y.
+     */
+    private static void select(CityStore cities, int[] cityOrder, int from, int to, int k, boolean byX) {
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            double pivot = coordinate(cities, cityOrder[(low + high) >>> 1], byX);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (coordinate(cities, cityOrder[i], byX) < pivot) {
+                    i++;
+                }
+                while (coordinate(cities, cityOrder[j], byX) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = cityOrder[i];
+                    cityOrder[i] = cityOrder[j];
+                    cityOrder[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns one coordinate of a city.
+     *
+     * @param cities The cities.
+     * @param city   The index of the city.
+     * @param x      {@code true} for the x-coordinate, otherwise y.
+     * @return The coordinate.
+     */
+    private static double coordinate(CityStore cities, int city, boolean x) {
+        return x ? cities.getX(city) : cities.getY(city);
+    }
+
+    /**
+     * Sorts the regions along a Hilbert curve over their centres, so that
+     * consecutive regions are neighbours in the plane.
+     *
+     * @param cities    The cities.
+     * @param cityOrder The city indices, grouped by region.
+     * @param regions   The regions, reordered in place.
+     */
+    private static void orderRegions(CityStore cities, int[] cityOrder, List<int[]> regions) {
+        int count = regions.size();
+        double[] centreX = new double[count];
+        double[] centreY = new double[count];
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int r = 0; r < count; r++) {
+            int[] bounds = regions.get(r);
+            for (int i = bounds[0]; i < bounds[1]; i++) {
+                centreX[r] += cities.getX(cityOrder[i]);
+                centreY[r] += cities.getY(cityOrder[i]);
+            }
+            centreX[r] /= bounds[1] - bounds[0];
+            centreY[r] /= bounds[1] - bounds[0];
+            minX = Math.min(minX, centreX[r]);
+            minY = Math.min(minY, centreY[r]);
+            maxX = Math.max(maxX, centreX[r]);
+            maxY = Math.max(maxY, centreY[r]);
+        }
+
+        int side = 1 << ORDER;
+        double scale = (side - 1) / Math.max(Math.max(maxX - minX, maxY - minY), 1e-9);
+        long[] keys = new long[count];
+        for (int r = 0; r < count; r++) {
+            int x = (int) ((centreX[r] - minX) * scale);
+            int y = (int) ((centreY[r] - minY) * scale);
+            keys[r] = (SolverHilbert.curvePosition(x, y, side) << 32) | r;
+        }
+        Arrays.sort(keys);
+        List<int[]> sorted = new ArrayList<>(count);
+        for (long key : keys) {
+            sorted.add(regions.get((int) key));
+        }
+        regions.clear();
+        regions.addAll(sorted);
+    }
+
+    /**
+     * Copies the cities of a region into their own store.
+     *
+     * @param cities    The cities.
+     * @param cityOrder The city indices, grouped by region.
+     * @param from      The first position of the region.
+     * @param to        The position after the region.
+     * @return The store of the region, where city {@code i} is
+     *         {@code cityOrder[from + i]}.
+     */
+    private static CityStore subStore(CityStore cities, int[] cityOrder, int from, int to) {
+        int size = to - from;
+        int[] ids = new int[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            int city = cityOrder[from + i];
+            ids[i] = cities.getId(city);
+            xs[i] = cities.getX(city);
+            ys[i] = cities.getY(city);
+        }
+        return new CityStore(ids, xs, ys, size);
+    }
+
+    /**
+     * Joins the region cycles into one tour. Each cycle is entered at its
+     * city nearest to the end of the previous region and left in the direction
+     * whose last city is nearer to the start of the next region.
+     *
+     * @param cities    The cities.
+     * @param cityOrder The city indices, grouped by region.
+     * @param regions   The regions in visiting order.
+     * @param paths     The closed path of every region, in region indices.
+     * @param order     Receives the tour as city indices.
+     * @return The tour positions where every region starts.
+     */
+    private static int[] stitch(CityStore cities, int[] cityOrder, List<int[]> regions, int[][] paths,
+            int[] order) {
+        int count = regions.size();
+        int[] seams = new int[count];
+        int size = 0;
+        int last = -1;
+        for (int r = 0; r < count; r++) {
+            int from = regions.get(r)[0];
+            int[] path = paths[r];
+            int length = path.length - 1;
+
+            // The first region is entered near the end of the last one
+            int target = last >= 0 ? last : cityOrder[regions.get(count - 1)[0]];
+            int entry = 0;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < length; i++) {
+                double d = cities.squaredDistance(target, cityOrder[from + path[i]]);
+                if (d < best) {
+                    best = d;
+                    entry = i;
+                }
+            }
+
+            // Leave towards the next region
+            int next = cityOrder[regions.get((r + 1) % count)[0]];
+            int forwardExit = cityOrder[from + path[(entry + length - 1) % length]];
+            int backwardExit = cityOrder[from + path[(entry + 1) % length]];
+            int step = cities.squaredDistance(forwardExit, next) <= cities.squaredDistance(backwardExit, next) ? 1
+                    : length - 1;
+
+            seams[r] = size;
+            for (int i = 0, p = entry; i < length; i++, p = (p + step) % length) {
+                order[size++] = cityOrder[from + path[p]];
+            }
+            last = order[size - 1];
+        }
+        return seams;
+    }
+
+    /**
+     * Improves the tour around every seam. The windows do not overlap, so
+     * they are repaired in parallel. Each window reaches at most half way
+     * into the regions on either side of its seam, and the seams next to a
+     * region too small for that are left as they are.
+     *
+     * @param cities The cities.
+     * @param order  The tour as city indices, improved in place.
+     * @param seams  The tour positions where regions start.
+     * @param pool   The pool to run the repairs on.
+     */
+    private static void repairSeams(CityStore cities, int[] order, int[] seams, ForkJoinPool pool) {
+        int n = order.length;
+        if (seams.length < 2) {
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int r = 0; r < seams.length; r++) {
+            int seam = seams[r];
+            int previousSize = seam - (r > 0 ? seams[r - 1] : seams[seams.length - 1] - n);
+            int regionSize = (r + 1 < seams.length ? seams[r + 1] : n) - seam;
+            int before = Math.min(REPAIR_WINDOW, previousSize / 2);
+            int after = Math.min(REPAIR_WINDOW, regionSize / 2);
+            // Both ends of the seam edge and a move's worth of cities around it
+            if (before < 1 || after < 1 || before + after < 4) {
+                continue;
+            }
+            tasks.add(ForkJoinTask.adapt(() -> {
+                int[] path = new int[before + after];
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = order[(seam - before + i + n) % n];
+                }
+                repairPath(cities, path);
+                for (int i = 0; i < path.length; i++) {
+                    order[(seam - before + i + n) % n] = path[i];
+                }
+            }));
+        }
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+    }
+
+    /**
+     * Improves an open path with fixed end cities by 2-opt and single-city
+     * Or-opt moves until none improves it.
+     *
+     * @param cities The cities.
+     * @param path   The city indices of the path, improved in place.
+     */
+    private static void repairPath(CityStore cities, int[] path) {
+        int m = path.length;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+
+            // 2-opt: reverse path[i + 1 .. j]
+            for (int i = 0; i < m - 3; i++) {
+                for (int j = i + 2; j < m - 1; j++) {
+                    double delta = cities.distance(path[i], path[j]) + cities.distance(path[i + 1], path[j + 1])
+                            - cities.distance(path[i], path[i + 1]) - cities.distance(path[j], path[j + 1]);
+                    if (delta < -EPSILON) {
+                        for (int a = i + 1, b = j; a < b; a++, b--) {
+                            int t = path[a];
+                            path[a] = path[b];
+                            path[b] = t;
+                        }
+                        improved = true;
+                    }
+                }
+            }
+
+            // Or-opt: move path[s] between path[t] and path[t + 1]
+            for (int s = 1; s < m - 1; s++) {
+                int city = path[s];
+                double removeGain = cities.distance(path[s - 1], city) + cities.distance(city, path[s + 1])
+                        - cities.distance(path[s - 1], path[s + 1]);
+                for (int t = 0; t < m - 1; t++) {
+                    if (t == s - 1 || t == s) {
+                        continue;
+                    }
+                    double insertCost = cities.distance(path[t], city) + cities.distance(city, path[t + 1])
+                            - cities.distance(path[t], path[t + 1]);
+                    if (insertCost < removeGain - EPSILON) {
+                        if (t < s) {
+                            System.arraycopy(path, t + 1, path, t + 2, s - t - 1);
+                            path[t + 1] = city;
+                        } else {
+                            System.arraycopy(path, s + 1, path, s, t - s);
+                            path[t] = city;
+                        }
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package travelling_salesman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of solved tours, keyed by a SHA-256 fingerprint of the city
+ * coordinates, the solver and the settings that change its result. Safe to
+ * share between threads.
+ * <p>
+ * Tours are kept in memory in least recently used order, up to a total number
+ * of cities, and optionally in a directory with one file per tour so that
+ * they outlive the process. When an instance is not cached but a recent one
+ * with the same solver and settings shares most of its coordinates, for
+ * example a dispatch file with a few stops moved, added or removed, the old
+ * tour is carried over to the new cities and only improved instead of solved
+ * from scratch.
+ * <p>
+ * The tour files start with the magic bytes {@code TSPR}, the format version
+ * and the number of cities {@code n}, followed by the {@code n + 1} int city
+ * indices of the closed path, all little-endian.
+ */
+public class ResultCache {
+    /**
+     * File extension of cached tour files.
+     */
+    public static final String EXTENSION = ".tour";
+
+    /**
+     * Default limit on the total number of cities of the tours kept in memory.
+     */
+    public static final long DEFAULT_MAX_CITIES = 2_000_000;
+
+    private static final int MAGIC = 0x52505354; // "TSPR" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    /**
+     * Smallest fraction of the cities of a new instance that must appear in a
+     * cached instance for its tour to be carried over.
+     */
+    private static final double WARM_START_SIMILARITY = 0.9;
+
+    /**
+     * Number of cities checked against each cached instance before mapping
+     * all of them.
+     */
+    private static final int SIMILARITY_SAMPLE = 64;
+
+    /**
+     * Nearest neighbours tried when placing a city missing from the cached
+     * tour.
+     */
+    private static final int INSERTION_NEIGHBOURS = 8;
+
+    /**
+     * SHA-256 digest of each thread, as looking one up is slow.
+     */
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final long maxCities;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCities;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong warmStarts = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a cache.
+     *
+     * @param maxCities The limit on the total number of cities of the tours
+     *                  kept in memory.
+     * @param directory The directory to keep tour files in, or {@code null}
+     *                  to keep tours in memory only. It is created if needed.
+     * @throws IOException if the directory cannot be created.
+     */
+    public ResultCache(long maxCities, Path directory) throws IOException {
+        this.maxCities = maxCities;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Returns the cached tour of an instance, or solves it with
+     * {@link Solvers#solve} and caches the result. A tour carried over from a
+     * similar instance is improved with Lin-Kernighan search for the
+     * Lin-Kernighan solver and with 2-opt and Or-opt otherwise.
+     *
+     * @param name    The solver name, one of {@link Solvers#NAMES}.
+     * @param cities  The cities to use in the algorithm.
+     * @param options The solver settings.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    @SuppressWarnings("try")
+    public int[] solve(String name, CityStore cities, SolveOptions options) {
+        String settings = settings(name, options);
+        String key = key(settings, cities);
+        int[] path = get(key, cities);
+        if (path != null) {
+            return path;
+        }
+
+        SolveOptions uncached = new SolveOptions(options);
+        uncached.setResultCache(null);
+        long startTime = System.nanoTime();
+        int[] start = improves(name, options) ? warmStart(settings, cities) : null;
+        if (start != null) {
+            try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.IMPROVEMENT)) {
+                path = name.equals("lk") ? SolverLK.improve(cities, start, options.newSearchLimits())
+                        : LocalSearch.improve(cities, start, options.newSearchLimits());
+            }
+        } else {
+            path = Solvers.solve(name, cities, uncached);
+        }
+        // Tours cut short by a time limit or a cancellation are not worth keeping
+        if (!cutShort(name, options, System.nanoTime() - startTime)) {
+            put(key, settings, cities, path);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the cached tour of an instance, from memory or from the
+     * directory.
+     *
+     * @param name    The solver name.
+     * @param cities  The cities of the instance.
+     * @param options The solver settings.
+     * @return The closed path of city indices, or {@code null} if the
+     *         instance is not cached.
+     */
+    public int[] get(String name, CityStore cities, SolveOptions options) {
+        return get(key(settings(name, options), cities), cities);
+    }
+
+    /**
+     * Carries the tour of a similar cached instance over to an instance, for
+     * use as a starting point of the improvement stage.
+     *
+     * @param name    The solver name.
+     * @param cities  The cities of the instance.
+     * @param options The solver settings.
+     * @return The closed path of city indices, or {@code null} if no cached
+     *         instance is similar enough.
+     */
+    public int[] warmStart(String name, CityStore cities, SolveOptions options) {
+        return warmStart(settings(name, options), cities);
+    }
+
+    /**
+     * Caches the tour of an instance.
+     *
+     * @param name    The solver name.
+     * @param cities  The cities of the instance.
+     * @param options The solver settings.
+     * @param path    The closed path of city indices.
+     */
+    public void put(String name, CityStore cities, SolveOptions options, int[] path) {
+        String settings = settings(name, options);
+        put(key(settings, cities), settings, cities, path);
+    }
+
+    /**
+     * Returns the number of lookups answered from memory or from the
+     * directory.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups answered by carrying over the tour of a
+     * similar instance.
+     *
+     * @return The number of warm starts.
+     */
+    public long getWarmStarts() {
+        return warmStarts.get();
+    }
+
+    /**
+     * Returns the number of lookups not answered from memory or from the
+     * directory, including those answered by a warm start.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns whether a solve may have stopped before finishing its search:
+     * an exact solve that reached its time limit, another solve that ran for
+     * at least its time limit, or a cancelled solve.
+     *
+     * @param name         The solver name.
+     * @param options      The solver settings.
+     * @param elapsedNanos The run time of the solve in nanoseconds.
+     * @return {@code true} if the tour may be worse than a full search finds.
+     */
+    private static boolean cutShort(String name, SolveOptions options, long elapsedNanos) {
+        if (options.getCancellation() != null && options.getCancellation().isCancelled()) {
+            return true;
+        }
+        if (name.equals("exact")) {
+            return SolverExact.reachedTimeLimit(options, elapsedNanos);
+        }
+        return options.getTimeLimitMillis() > 0 && elapsedNanos / 1_000_000L >= options.getTimeLimitMillis();
+    }
+
+    /**
+     * Returns whether a solve runs an improvement stage that can start from a
+     * carried-over tour.
+     *
+     * @param name    The solver name.
+     * @param options The solver settings.
+     * @return {@code true} if the result is improved by local search.
+     */
+    private static boolean improves(String name, SolveOptions options) {
+        return name.equals("lk") || (options.isImprove() && !name.equals("exact"));
+    }
+
+    /**
+     * Describes the solver and the settings that change its result. The
+     * thread count and the metrics sink do not.
+     *
+     * @param name    The solver name.
+     * @param options The solver settings.
+     * @return The description.
+     */
+    private static String settings(String name, SolveOptions options) {
+        return String.format(Locale.ROOT, "%s improve=%b time-limit=%d dijkstra-neighbours=%d starts=%d"
+                + " partition-size=%d target-gap=%s", name, options.isImprove(), options.getTimeLimitMillis(),
+                options.getDijkstraNeighbours(), options.getStarts(), options.getPartitionSize(),
+                Double.toString(options.getTargetGap()));
+    }
+
+    /**
+     * Computes the SHA-256 fingerprint of the settings and the coordinates of
+     * the cities, in index order.
+     *
+     * @param settings The solver and settings, see {@link #settings}.
+     * @param cities   The cities.
+     * @return The fingerprint as lower-case hexadecimal.
+     */
+    private static String key(String settings, CityStore cities) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        int n = cities.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(n);
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < 2 * Double.BYTES) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            buffer.putDouble(cities.getX(i)).putDouble(cities.getY(i));
+        }
+        buffer.flip();
+        digest.update(buffer);
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a tour in memory, then in the directory.
+     *
+     * @param key    The fingerprint of the instance.
+     * @param cities The cities of the instance.
+     * @return The closed path of city indices, or {@code null} if none is
+     *         cached.
+     */
+    private int[] get(String key, CityStore cities) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.path.clone();
+        }
+        int[] path = directory != null ? read(directory.resolve(key + EXTENSION), cities.size()) : null;
+        if (path != null) {
+            hits.incrementAndGet();
+            remember(key, new Entry(null, cities, path));
+            return path.clone();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a tour in memory and in the directory.
+     *
+     * @param key      The fingerprint of the instance.
+     * @param settings The solver and settings.
+     * @param cities   The cities of the instance.
+     * @param path     The closed path of city indices.
+     */
+    private void put(String key, String settings, CityStore cities, int[] path) {
+        remember(key, new Entry(settings, cities, path.clone()));
+        if (directory != null) {
+            write(directory.resolve(key + EXTENSION), path);
+        }
+    }
+
+    /**
+     * Adds an entry to the memory tier, evicting the least recently used
+     * entries while the tier holds too many cities.
+     *
+     * @param key   The fingerprint of the instance.
+     * @param entry The entry.
+     */
+    private synchronized void remember(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            cachedCities -= previous.cities.size();
+        }
+        cachedCities += entry.cities.size();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (cachedCities > maxCities && eldest.hasNext()) {
+            cachedCities -= eldest.next().cities.size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Carries the tour of the most recently used similar instance over to an
+     * instance. Cities are matched by their coordinates. The matched cities
+     * keep their cached order, and every other city is inserted next to the
+     * nearest city already in the tour, on the cheaper side.
+     *
+     * @param settings The solver and settings, which must match exactly.
+     * @param cities   The cities of the instance.
+     * @return The closed path of city indices, or {@code null} if no cached
+     *         instance is similar enough.
+     */
+    private int[] warmStart(String settings, CityStore cities) {
+        int n = cities.size();
+        if (n < 4) {
+            return null;
+        }
+        List<Entry> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                int size = entry.cities.size();
+                if (settings.equals(entry.settings) && size >= n * WARM_START_SIMILARITY
+                        && n >= size * WARM_START_SIMILARITY) {
+                    candidates.add(entry);
+                }
+            }
+        }
+
+        // Iteration order is least recently used first
+        for (int c = candidates.size() - 1; c >= 0; c--) {
+            Entry entry = candidates.get(c);
+            int sample = Math.min(SIMILARITY_SAMPLE, n);
+            int found = 0;
+            for (int s = 0; s < sample; s++) {
+                int i = (int) ((long) s * n / sample);
+                if (entry.indexOf(cities.getX(i), cities.getY(i)) >= 0) {
+                    found++;
+                }
+            }
+            if (found < sample * WARM_START_SIMILARITY) {
+                continue;
+            }
+            int[] path = carryOver(entry, cities);
+            if (path != null) {
+                warmStarts.incrementAndGet();
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the tour of a cached instance onto the cities of an instance.
+     *
+     * @param entry  The cached instance.
+     * @param cities The cities of the instance.
+     * @return The closed path of city indices, or {@code null} if too few
+     *         cities match.
+     */
+    private static int[] carryOver(Entry entry, CityStore cities) {
+        int n = cities.size();
+        int[] newIndex = new int[entry.cities.size()];
+        Arrays.fill(newIndex, -1);
+        boolean[] matched = new boolean[n];
+        int matches = 0;
+        for (int i = 0; i < n; i++) {
+            int old = entry.indexOf(cities.getX(i), cities.getY(i));
+            // Duplicate coordinates match once; the rest are inserted
+            if (old >= 0 && newIndex[old] < 0) {
+                newIndex[old] = i;
+                matched[i] = true;
+                matches++;
+            }
+        }
+        if (matches < n * WARM_START_SIMILARITY || matches < 3) {
+            return null;
+        }
+
+        Tour tour = new Tour(n);
+        for (int p = 0; p < entry.path.length - 1; p++) {
+            int city = newIndex[entry.path[p]];
+            if (city >= 0) {
+                tour.append(city);
+            }
+        }
+        KdTree tree = new KdTree(cities);
+        int[] neighbours = new int[INSERTION_NEIGHBOURS];
+        for (int city = 0; city < n; city++) {
+            if (matched[city]) {
+                continue;
+            }
+            int found = tree.nearest(city, INSERTION_NEIGHBOURS, neighbours);
+            int anchor = tour.cityAt(tour.size() - 1);
+            for (int k = 0; k < found; k++) {
+                if (tour.contains(neighbours[k])) {
+                    anchor = neighbours[k];
+                    break;
+                }
+            }
+            int before = tour.prev(anchor);
+            if (tour.insertionDelta(cities, before, city) < tour.insertionDelta(cities, anchor, city)) {
+                anchor = before;
+            }
+            tour.insertAfter(anchor, city);
+        }
+        return tour.toClosedPath(0);
+    }
+
+    /**
+     * Reads a tour file.
+     *
+     * @param file The file to read.
+     * @param n    The number of cities of the instance.
+     * @return The closed path of city indices, or {@code null} if the file
+     *         does not exist or does not hold a valid tour of {@code n}
+     *         cities.
+     */
+    private static int[] read(Path file, int n) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error reading cached tour: " + file + " - " + e.getMessage());
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length != HEADER_BYTES + (n + 1) * Integer.BYTES || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION || buffer.getInt() != n) {
+            return null;
+        }
+        int[] path = new int[n + 1];
+        buffer.asIntBuffer().get(path);
+
+        // A fingerprint collision or a damaged file must not yield a bad tour
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (path[i] < 0 || path[i] >= n || seen[path[i]]) {
+                return null;
+            }
+            seen[path[i]] = true;
+        }
+        return n == 0 || path[n] == path[0] ? path : null;
+    }
+
+    /**
+     * Writes a tour file through a temporary file, so that readers never see
+     * a partly written tour. Failures are reported and otherwise ignored.
+     *
+     * @param file The file to write.
+     * @param path The closed path of city indices.
+     */
+    private void write(Path file, int[] path) {
+        int n = Math.max(path.length - 1, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (n + 1) * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n);
+        buffer.asIntBuffer().put(path, 0, path.length == 0 ? 0 : n + 1);
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, "tour", ".tmp");
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing cached tour: " + file + " - " + e.getMessage());
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached tour with the instance it belongs to.
+     */
+    private static class Entry {
+        private final String settings;
+        private final CityStore cities;
+        private final int[] path;
+        private long[] index;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param settings The solver and settings, or {@code null} if unknown,
+         *                 which excludes the entry from warm starts.
+         * @param cities   The cities of the instance.
+         * @param path     The closed path of city indices.
+         */
+        Entry(String settings, CityStore cities, int[] path) {
+            this.settings = settings;
+            this.cities = cities;
+            this.path = path;
+        }
+
+        /**
+         * Finds a city of the instance by its coordinates. The lookup table,
+         * holding the hash of every city in the high bits and its index in the
+         * low bits, sorted, is built on first use as only warm starts need it.
+         *
+         * @param x The x-coordinate.
+         * @param y The y-coordinate.
+         * @return The index of a city at those coordinates, or -1 if none.
+         */
+        synchronized int indexOf(double x, double y) {
+            int n = cities.size();
+            if (index == null) {
+                index = new long[n];
+                for (int i = 0; i < n; i++) {
+                    index[i] = ((long) pointHash(cities.getX(i), cities.getY(i)) << 32) | i;
+                }
+                Arrays.sort(index);
+            }
+
+            // Find the first entry with the hash, then check every city sharing it
+            long low = (long) pointHash(x, y) << 32;
+            int at = Arrays.binarySearch(index, low);
+            for (int k = at >= 0 ? at : -at - 1; k < n && (index[k] & 0xFFFFFFFF00000000L) == low; k++) {
+                int i = (int) index[k];
+                if (cities.getX(i) == x && cities.getY(i) == y) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Hashes a point. Different points may share a hash, so matches are
+         * checked against the coordinates.
+         *
+         * @param x The x-coordinate.
+         * @param y The y-coordinate.
+         * @return The hash.
+         */
+        private static int pointHash(double x, double y) {
+            long bits = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
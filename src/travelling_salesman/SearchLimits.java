@@ -0,0 +1,194 @@
+package travelling_salesman;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits on the time and number of improving moves an improvement stage may
+ * spend.
+ * <p>
+ * A search can also be stopped from another thread through a
+ * {@link CancellationToken}, and can report its progress through a callback
+ * run at its periodic limit checks, while its tour is in a consistent state.
+ * The same checks can evaluate a goal, such as a target gap to a lower bound,
+ * that ends the search early once it is met.
+ */
+public class SearchLimits {
+    /**
+     * Limits that never stop a search.
+     */
+    public static final SearchLimits UNLIMITED = new SearchLimits(0, 0);
+
+    /**
+     * The longest time limit in nanoseconds, about 146 years: longer limits
+     * are shortened to it, so that the deadline comparisons cannot overflow.
+     */
+    private static final long MAX_TIME_LIMIT_NANOS = Long.MAX_VALUE / 2;
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final long maxMoves;
+    private final CancellationToken token;
+    private final Runnable progress;
+    private final long progressIntervalNanos;
+    private long nextProgressNanos;
+    private final BooleanSupplier goal;
+    private final long goalIntervalNanos;
+    private long nextGoalNanos;
+    private boolean goalReached;
+
+    /**
+     * Constructs search limits starting now.
+     *
+     * @param timeLimitMillis The maximum run time in milliseconds, or 0 for no
+     *                        time limit.
+     * @param maxMoves        The maximum number of improving moves, or 0 for no
+     *                        move limit.
+     */
+    public SearchLimits(long timeLimitMillis, long maxMoves) {
+        this(timeLimitMillis, maxMoves, null);
+    }
+
+    /**
+     * Constructs search limits starting now that can also be cancelled.
+     *
+     * @param timeLimitMillis The maximum run time in milliseconds, or 0 for no
+     *                        time limit.
+     * @param maxMoves        The maximum number of improving moves, or 0 for no
+     *                        move limit.
+     * @param token           The token stopping the search when cancelled, or
+     *                        {@code null}.
+     */
+    public SearchLimits(long timeLimitMillis, long maxMoves, CancellationToken token) {
+        this.hasDeadline = timeLimitMillis > 0;
+        long timeLimitNanos = timeLimitMillis >= MAX_TIME_LIMIT_NANOS / 1_000_000L ? MAX_TIME_LIMIT_NANOS
+                : timeLimitMillis * 1_000_000L;
+        this.deadlineNanos = System.nanoTime() + timeLimitNanos;
+        this.maxMoves = maxMoves > 0 ? maxMoves : Long.MAX_VALUE;
+        this.token = token;
+        this.progress = null;
+        this.progressIntervalNanos = 0;
+        this.goal = null;
+        this.goalIntervalNanos = 0;
+    }
+
+    /**
+     * Constructs a copy of other limits with a progress callback and a goal.
+     *
+     * @param other                  The limits to copy.
+     * @param progress               The progress callback, or {@code null}.
+     * @param progressIntervalMillis The minimum time between two calls of the
+     *                               callback, in milliseconds.
+     * @param goal                   The goal, or {@code null}.
+     * @param goalIntervalMillis     The minimum time between two evaluations
+     *                               of the goal, in milliseconds.
+     */
+    private SearchLimits(SearchLimits other, Runnable progress, long progressIntervalMillis, BooleanSupplier goal,
+            long goalIntervalMillis) {
+        this.hasDeadline = other.hasDeadline;
+        this.deadlineNanos = other.deadlineNanos;
+        this.maxMoves = other.maxMoves;
+        this.token = other.token;
+        this.progress = progress;
+        this.progressIntervalNanos = progressIntervalMillis * 1_000_000L;
+        this.nextProgressNanos = System.nanoTime() + progressIntervalNanos;
+        this.goal = goal;
+        this.goalIntervalNanos = goalIntervalMillis * 1_000_000L;
+        this.nextGoalNanos = System.nanoTime() + goalIntervalNanos;
+    }
+
+    /**
+     * Returns limits with the same deadline, move limit and token that also run
+     * a callback at most once per interval while a search is in progress. The
+     * returned limits must only be used by one search at a time.
+     *
+     * @param progress               The callback, run on the searching thread.
+     * @param progressIntervalMillis The minimum time between two calls of the
+     *                               callback, in milliseconds.
+     * @return The new limits.
+     */
+    public SearchLimits withProgress(Runnable progress, long progressIntervalMillis) {
+        return new SearchLimits(this, progress, progressIntervalMillis, goal, goalIntervalNanos / 1_000_000L);
+    }
+
+    /**
+     * Returns limits with the same deadline, move limit, token and progress
+     * callback that also stop the search once a goal is met. The goal is
+     * evaluated at most once per interval while a search is in progress. The
+     * returned limits must only be used by one search at a time.
+     *
+     * @param goal               The goal, evaluated on the searching thread.
+     * @param goalIntervalMillis The minimum time between two evaluations of
+     *                           the goal, in milliseconds.
+     * @return The new limits.
+     */
+    public SearchLimits withGoal(BooleanSupplier goal, long goalIntervalMillis) {
+        return new SearchLimits(this, progress, progressIntervalNanos / 1_000_000L, goal, goalIntervalMillis);
+    }
+
+    /**
+     * Returns whether the time limit has passed, the search was cancelled or
+     * its goal was met.
+     *
+     * @return {@code true} if the search must stop.
+     */
+    public boolean isExpired() {
+        return goalReached || (hasDeadline && System.nanoTime() - deadlineNanos >= 0)
+                || (token != null && token.isCancelled());
+    }
+
+    /**
+     * Periodic check made by searches between moves: runs the progress callback
+     * and evaluates the goal if they are due, and returns whether the search
+     * must stop.
+     *
+     * @return {@code true} if the search must stop.
+     */
+    public boolean checkpoint() {
+        if (progress != null) {
+            long now = System.nanoTime();
+            if (now - nextProgressNanos >= 0) {
+                progress.run();
+                nextProgressNanos = now + progressIntervalNanos;
+            }
+        }
+        if (goal != null && !goalReached) {
+            long now = System.nanoTime();
+            if (now - nextGoalNanos >= 0) {
+                goalReached = goal.getAsBoolean();
+                nextGoalNanos = now + goalIntervalNanos;
+            }
+        }
+        return isExpired();
+    }
+
+    /**
+     * Returns whether these limits have a time limit.
+     *
+     * @return {@code true} if a deadline is set.
+     */
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Returns the time left before the time limit.
+     *
+     * @return The remaining time in milliseconds, {@link Long#MAX_VALUE} if
+     *         there is no time limit, 0 if it has passed.
+     */
+    public long remainingMillis() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    /**
+     * Returns the maximum number of improving moves.
+     *
+     * @return The move limit, {@link Long#MAX_VALUE} if unlimited.
+     */
+    public long getMaxMoves() {
+        return maxMoves;
+    }
+}
@@ -0,0 +1,321 @@
+package travelling_salesman;
+
+/**
+ * Settings shared by the interactive, batch and service modes when running a
+ * solver.
+ */
+public class SolveOptions {
+    private boolean improve = false;
+    private long timeLimitMillis = 0;
+    private int dijkstraNeighbours = 0;
+    private int starts = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int partitionSize = 0;
+    private double targetGap = 0;
+    private MetricsSink metricsSink = null;
+    private ResultCache resultCache = null;
+    private CandidateLists candidates = null;
+    private boolean instanceCache = false;
+    private CancellationToken cancellation = null;
+
+    /**
+     * Constructs the default settings.
+     */
+    public SolveOptions() {
+    }
+
+    /**
+     * Constructs a copy of other settings.
+     *
+     * @param other The settings to copy.
+     */
+    public SolveOptions(SolveOptions other) {
+        this.improve = other.improve;
+        this.timeLimitMillis = other.timeLimitMillis;
+        this.dijkstraNeighbours = other.dijkstraNeighbours;
+        this.starts = other.starts;
+        this.threads = other.threads;
+        this.partitionSize = other.partitionSize;
+        this.targetGap = other.targetGap;
+        this.metricsSink = other.metricsSink;
+        this.resultCache = other.resultCache;
+        this.candidates = other.candidates;
+        this.instanceCache = other.instanceCache;
+        this.cancellation = other.cancellation;
+    }
+
+    /**
+     * Returns whether solutions are improved with 2-opt and Or-opt.
+     *
+     * @return {@code true} if the improvement stage runs.
+     */
+    public boolean isImprove() {
+        return improve;
+    }
+
+    /**
+     * Sets whether solutions are improved with 2-opt and Or-opt.
+     *
+     * @param improve {@code true} to run the improvement stage.
+     */
+    public void setImprove(boolean improve) {
+        this.improve = improve;
+    }
+
+    /**
+     * Returns the time limit of the improvement stage and the Lin-Kernighan
+     * search.
+     *
+     * @return The time limit in milliseconds, 0 if unlimited.
+     */
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * Sets the time limit of the improvement stage and the Lin-Kernighan
+     * search.
+     *
+     * @param timeLimitMillis The time limit in milliseconds, 0 if unlimited.
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Returns the number of nearest neighbours in Dijkstra's sparse graph.
+     *
+     * @return The number of neighbours, 0 to use the complete graph.
+     */
+    public int getDijkstraNeighbours() {
+        return dijkstraNeighbours;
+    }
+
+    /**
+     * Sets the number of nearest neighbours in Dijkstra's sparse graph.
+     *
+     * @param dijkstraNeighbours The number of neighbours, 0 to use the complete
+     *                           graph.
+     */
+    public void setDijkstraNeighbours(int dijkstraNeighbours) {
+        this.dijkstraNeighbours = dijkstraNeighbours;
+    }
+
+    /**
+     * Returns the number of start cities for multi-start construction.
+     *
+     * @return The number of start cities.
+     */
+    public int getStarts() {
+        return starts;
+    }
+
+    /**
+     * Sets the number of start cities for multi-start construction.
+     *
+     * @param starts The number of start cities.
+     */
+    public void setStarts(int starts) {
+        this.starts = starts;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the maximum number of cities solved at once. Larger instances
+     * are split into regions of at most this size.
+     *
+     * @return The maximum region size, 0 to solve instances whole.
+     */
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    /**
+     * Sets the maximum number of cities solved at once. Larger instances are
+     * split into regions of at most this size.
+     *
+     * @param partitionSize The maximum region size, 0 to solve instances
+     *                      whole.
+     */
+    public void setPartitionSize(int partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Returns the gap to the Held-Karp lower bound at which the improvement
+     * stage and the Lin-Kernighan search stop.
+     *
+     * @return The target gap as a fraction of the bound, 0 to not compute a
+     *         bound.
+     */
+    public double getTargetGap() {
+        return targetGap;
+    }
+
+    /**
+     * Sets the gap to the Held-Karp lower bound at which the improvement stage
+     * and the Lin-Kernighan search stop.
+     *
+     * @param targetGap The target gap as a fraction of the bound, 0 to not
+     *                  compute a bound.
+     */
+    public void setTargetGap(double targetGap) {
+        this.targetGap = targetGap;
+    }
+
+    /**
+     * Returns the sink receiving the metrics of every run.
+     *
+     * @return The metrics sink, or {@code null} if metrics are not collected.
+     */
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Sets the sink receiving the metrics of every run.
+     *
+     * @param metricsSink The metrics sink, or {@code null} to not collect
+     *                    metrics.
+     */
+    public void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * Returns the cache of solved tours.
+     *
+     * @return The result cache, or {@code null} if results are not cached.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache of solved tours.
+     *
+     * @param resultCache The result cache, or {@code null} to not cache
+     *                    results.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Returns the candidate lists precomputed for the instance being solved.
+     *
+     * @return The candidate lists, or {@code null} if they are computed when
+     *         needed.
+     */
+    public CandidateLists getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Sets the candidate lists precomputed for the instance being solved.
+     * They are used by the improvement stages and by Dijkstra's sparse graph
+     * whenever they hold enough neighbours per city.
+     *
+     * @param candidates The candidate lists, or {@code null} to compute them
+     *                   when needed.
+     */
+    public void setCandidates(CandidateLists candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * Returns whether text instances are cached as binary copies next to
+     * them.
+     *
+     * @return {@code true} if binary copies are read and written.
+     */
+    public boolean isInstanceCache() {
+        return instanceCache;
+    }
+
+    /**
+     * Sets whether text instances are cached as binary copies next to them.
+     *
+     * @param instanceCache {@code true} to read and write binary copies.
+     */
+    public void setInstanceCache(boolean instanceCache) {
+        this.instanceCache = instanceCache;
+    }
+
+    /**
+     * Returns the token that stops a running solve.
+     *
+     * @return The token, or {@code null} if the solve cannot be cancelled.
+     */
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Sets the token that stops a running solve. Constructions give up with a
+     * {@link java.util.concurrent.CancellationException} once it is
+     * cancelled, and improvement stages return the tour they have.
+     *
+     * @param cancellation The token, or {@code null} if the solve cannot be
+     *                     cancelled.
+     */
+    public void setCancellation(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Creates the search limits for one improvement run, starting now.
+     *
+     * @return The search limits.
+     */
+    public SearchLimits newSearchLimits() {
+        return new SearchLimits(timeLimitMillis, 0, cancellation);
+    }
+
+    /**
+     * Returns the time limit of the exact solver: the time limit if one is
+     * set, otherwise {@link SolverExact#DEFAULT_TIME_LIMIT_MILLIS}, so that
+     * instances its bounds cannot settle still return.
+     *
+     * @return The time limit in milliseconds.
+     */
+    public long getExactTimeLimitMillis() {
+        return timeLimitMillis > 0 ? timeLimitMillis : SolverExact.DEFAULT_TIME_LIMIT_MILLIS;
+    }
+
+    /**
+     * Creates the search limits for one exact solve, starting now.
+     *
+     * @return The search limits.
+     */
+    public SearchLimits newExactLimits() {
+        return new SearchLimits(getExactTimeLimitMillis(), 0, cancellation);
+    }
+
+    /**
+     * Creates the limits for one construction, which only stop it when the
+     * solve is cancelled; the time limit applies to the improvement alone.
+     *
+     * @return The construction limits.
+     */
+    public SearchLimits newConstructionLimits() {
+        return new SearchLimits(0, 0, cancellation);
+    }
+}
@@ -0,0 +1,352 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Utility class for solving the TSP with a Christofides-style construction.
+ * <p>
+ * The minimum spanning tree from {@link SolverMST} is made Eulerian by adding
+ * a matching of its odd-degree cities. The Euler tour of the combined graph
+ * is shortcut to a tour, which 2-opt and Or-opt then improve. Instead of the
+ * exact minimum-weight matching, the cities are matched greedily, shortest
+ * edge first, along edges to their nearest odd neighbours found with a
+ * {@link KdTree}, and the matching is improved with 2-opt swaps between
+ * matched pairs. This keeps the whole construction near-linear, so it scales
+ * to instances of 100,000 cities and more. On uniform instances the shortcut
+ * tour is about 15% longer than optimal, and about 5% after improvement.
+ */
+public class SolverChristofides {
+    /**
+     * Number of nearest odd-degree neighbours considered as matching partners.
+     */
+    private static final int MATCHING_CANDIDATES = 10;
+
+    /**
+     * Minimum gain for a matching swap to count as an improvement.
+     */
+    private static final double EPSILON = 1e-10;
+
+    /**
+     * Solves the TSP with the Christofides-style construction, improving the
+     * tour until no 2-opt or Or-opt move remains.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveChristofides(CityStore cities) {
+        return solveChristofides(cities, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Solves the TSP with the Christofides-style construction, improving the
+     * tour within the given limits.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param limits The limits on the improvement of the tour.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveChristofides(CityStore cities, SearchLimits limits) {
+        return solveChristofides(cities, SearchLimits.UNLIMITED, limits);
+    }
+
+    /**
+     * Solves the TSP with the Christofides-style construction, giving up when
+     * the construction limits expire, and improving the tour within the given
+     * limits.
+     *
+     * @param cities             The cities to use in the algorithm.
+     * @param constructionLimits The limits stopping the construction.
+     * @param limits             The limits on the improvement of the tour.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws CancellationException if the construction limits expire.
+     */
+    public static int[] solveChristofides(CityStore cities, SearchLimits constructionLimits, SearchLimits limits) {
+        int n = cities.size();
+        if (n < 4) {
+            // Every tour of three cities is optimal
+            return SolverMST.solveMST(cities);
+        }
+        int[] parent = SolverMST.minimumSpanningTree(cities, 0, constructionLimits);
+
+        // Cities with an odd number of tree edges
+        int[] degree = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= 0) {
+                degree[i]++;
+                degree[parent[i]]++;
+            }
+        }
+        int oddCount = 0;
+        int[] odd = new int[n];
+        for (int i = 0; i < n; i++) {
+            if ((degree[i] & 1) == 1) {
+                odd[oddCount++] = i;
+            }
+        }
+        odd = Arrays.copyOf(odd, oddCount);
+
+        int[] mate = matchOddCities(cities, odd, constructionLimits);
+        int[] circuit = eulerCircuit(parent, mate, 0);
+        int[] path = applyShortcutting(circuit, n);
+        return LocalSearch.improve(cities, path, limits);
+    }
+
+    /**
+     * Matches the odd-degree cities of the tree in pairs. Every round finds
+     * the nearest unmatched odd neighbours of the unmatched cities and joins
+     * pairs greedily, shortest edge first. Each round matches at least the
+     * closest remaining pair, and usually almost all of them. The matching is
+     * then improved with 2-opt swaps.
+     *
+     * @param cities The cities.
+     * @param odd    The odd-degree cities; there is an even number of them.
+     * @param limits The limits stopping the construction.
+     * @return The city matched to every odd city, -1 for the other cities.
+     * @throws CancellationException if the limits expire.
+     */
+    private static int[] matchOddCities(CityStore cities, int[] odd, SearchLimits limits) {
+        int n = cities.size();
+        int[] mate = new int[n];
+        Arrays.fill(mate, -1);
+        if (odd.length == 0) {
+            return mate;
+        }
+
+        // Only the unmatched odd cities stay in the tree
+        boolean[] isOdd = new boolean[n];
+        for (int city : odd) {
+            isOdd[city] = true;
+        }
+        KdTree tree = new KdTree(cities, limits);
+        for (int i = 0; i < n; i++) {
+            if (!isOdd[i]) {
+                tree.remove(i);
+            }
+        }
+
+        // Candidate partners of every odd city from the first round, kept for the swaps
+        int k = Math.min(MATCHING_CANDIDATES, odd.length - 1);
+        int[] candidates = new int[odd.length * k];
+        int[] candidateCounts = new int[odd.length];
+        int[] found = new int[k];
+
+        int[] unmatched = odd.clone();
+        int unmatchedCount = unmatched.length;
+        boolean firstRound = true;
+        while (unmatchedCount > 0) {
+            // Candidate edges keyed by their length, so sorting orders them shortest first
+            long[] edges = new long[unmatchedCount * k];
+            int[] edgeFrom = new int[edges.length];
+            int[] edgeTo = new int[edges.length];
+            int edgeCount = 0;
+            for (int u = 0; u < unmatchedCount; u++) {
+                if ((u & 1023) == 1023 && limits.isExpired()) {
+                    throw new CancellationException("Matching was cancelled");
+                }
+                int city = unmatched[u];
+                int count = tree.nearest(city, k, found);
+                if (firstRound) {
+                    System.arraycopy(found, 0, candidates, u * k, count);
+                    candidateCounts[u] = count;
+                }
+                for (int r = 0; r < count; r++) {
+                    float length = (float) cities.distance(city, found[r]);
+                    edges[edgeCount] = ((long) Float.floatToIntBits(length) << 32) | edgeCount;
+                    edgeFrom[edgeCount] = city;
+                    edgeTo[edgeCount] = found[r];
+                    edgeCount++;
+                }
+            }
+            Arrays.sort(edges, 0, edgeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                int index = (int) edges[e];
+                int a = edgeFrom[index];
+                int b = edgeTo[index];
+                if (mate[a] < 0 && mate[b] < 0) {
+                    mate[a] = b;
+                    mate[b] = a;
+                    tree.remove(a);
+                    tree.remove(b);
+                }
+            }
+
+            int remaining = 0;
+            for (int u = 0; u < unmatchedCount; u++) {
+                if (mate[unmatched[u]] < 0) {
+                    unmatched[remaining++] = unmatched[u];
+                }
+            }
+            unmatchedCount = remaining;
+            firstRound = false;
+        }
+
+        improveMatching(cities, odd, mate, candidates, candidateCounts, k, limits);
+        return mate;
+    }
+
+    /**
+     * Improves a perfect matching with 2-opt swaps: two matched pairs
+     * {@code (a, b)} and {@code (c, d)} become {@code (a, c)} and
+     * {@code (b, d)} when that is shorter, with {@code c} one of the
+     * candidate partners of {@code a}. Cities whose partner changed are
+     * revisited until no swap improves the matching.
+     *
+     * @param cities          The cities.
+     * @param odd             The matched cities.
+     * @param mate            The partner of every matched city, updated in
+     *                        place.
+     * @param candidates      The candidate partners of {@code odd[i]} at
+     *                        indices {@code i * k} onwards.
+     * @param candidateCounts The number of candidates of {@code odd[i]}.
+     * @param k               The width of the candidate lists.
+     * @param limits          The limits stopping the construction.
+     * @throws CancellationException if the limits expire.
+     */
+    private static void improveMatching(CityStore cities, int[] odd, int[] mate, int[] candidates,
+            int[] candidateCounts, int k, SearchLimits limits) {
+        int n = cities.size();
+        int[] position = new int[n];
+        for (int i = 0; i < odd.length; i++) {
+            position[odd[i]] = i;
+        }
+
+        // Work queue of the positions of cities to revisit
+        int[] queue = new int[odd.length];
+        boolean[] queued = new boolean[odd.length];
+        int head = 0;
+        int size = odd.length;
+        for (int i = 0; i < odd.length; i++) {
+            queue[i] = i;
+            queued[i] = true;
+        }
+
+        for (long step = 1; size > 0; step++) {
+            if ((step & 1023) == 0 && limits.isExpired()) {
+                throw new CancellationException("Matching was cancelled");
+            }
+            int i = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued[i] = false;
+
+            int a = odd[i];
+            int b = mate[a];
+            double removedAB = cities.distance(a, b);
+            for (int r = 0; r < candidateCounts[i]; r++) {
+                int c = candidates[i * k + r];
+                double gainAC = removedAB - cities.distance(a, c);
+                // Candidates are sorted, so no later partner can do better
+                if (gainAC <= EPSILON) {
+                    break;
+                }
+                int d = mate[c];
+                if (c == b || gainAC + cities.distance(c, d) - cities.distance(b, d) <= EPSILON) {
+                    continue;
+                }
+                mate[a] = c;
+                mate[c] = a;
+                mate[b] = d;
+                mate[d] = b;
+                for (int city : new int[] { a, b, c, d }) {
+                    int p = position[city];
+                    if (!queued[p]) {
+                        queue[(head + size) % queue.length] = p;
+                        queued[p] = true;
+                        size++;
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Finds an Euler circuit of the tree joined with the matching, using
+     * Hierholzer's algorithm with an explicit stack. Every city has an even
+     * degree in the combined graph, so the circuit uses every edge once.
+     *
+     * @param parent The parent of every city in the tree, -1 for the root.
+     * @param mate   The partner of every matched city, -1 for the others.
+     * @param start  The city to start the circuit at.
+     * @return The cities along the circuit, starting and ending at
+     *         {@code start}.
+     */
+    private static int[] eulerCircuit(int[] parent, int[] mate, int start) {
+        int n = parent.length;
+        int edgeCount = 0;
+        int[] edgeFrom = new int[2 * n];
+        int[] edgeTo = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= 0) {
+                edgeFrom[edgeCount] = i;
+                edgeTo[edgeCount++] = parent[i];
+            }
+            if (mate[i] > i) {
+                edgeFrom[edgeCount] = i;
+                edgeTo[edgeCount++] = mate[i];
+            }
+        }
+
+        // Edges of city u are edges[edgeStart[u]] .. edges[edgeStart[u + 1] - 1]
+        int[] edgeStart = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            edgeStart[edgeFrom[e] + 1]++;
+            edgeStart[edgeTo[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            edgeStart[i + 1] += edgeStart[i];
+        }
+        int[] edges = new int[2 * edgeCount];
+        int[] next = Arrays.copyOf(edgeStart, n);
+        for (int e = 0; e < edgeCount; e++) {
+            edges[next[edgeFrom[e]]++] = e;
+            edges[next[edgeTo[e]]++] = e;
+        }
+        System.arraycopy(edgeStart, 0, next, 0, n);
+
+        boolean[] used = new boolean[edgeCount];
+        int[] circuit = new int[edgeCount + 1];
+        int circuitSize = 0;
+        int[] stack = new int[edgeCount + 1];
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int u = stack[top - 1];
+            while (next[u] < edgeStart[u + 1] && used[edges[next[u]]]) {
+                next[u]++;
+            }
+            if (next[u] == edgeStart[u + 1]) {
+                // No unused edges left, so u is final in this part of the circuit
+                circuit[circuitSize++] = u;
+                top--;
+            } else {
+                int e = edges[next[u]++];
+                used[e] = true;
+                stack[top++] = edgeFrom[e] == u ? edgeTo[e] : edgeFrom[e];
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * Shortcuts a circuit to a tour by skipping every city already visited,
+     * and closes the tour by returning to the first city.
+     *
+     * @param circuit The circuit visiting every city at least once.
+     * @param n       The number of cities.
+     * @return The closed route after shortcutting.
+     */
+    private static int[] applyShortcutting(int[] circuit, int n) {
+        Tour tour = new Tour(n);
+        for (int city : circuit) {
+            if (!tour.contains(city)) {
+                tour.append(city);
+            }
+        }
+        return tour.toClosedPath(circuit[0]);
+    }
+}
@@ -1,176 +1,241 @@
 package travelling_salesman;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 /**
  * Utility class for solving the TSP using dijkstra algorithm.
+ * <p>
+ * From the current city, shortest path distances are computed with Dijkstra's
+ * algorithm and the unvisited city with the smallest distance becomes the next
+ * city. The search stops as soon as that city is settled, and its distance
+ * array and heap are reused and only partially reset between steps.
  */
 public class SolverDijkstra {
+    private final CityStore cities;
+    private final DistanceProvider distances;
+    private final SparseGraph graph;
+    private final IndexedMinHeap pq;
+    private final double[] dist;
+    private final double[] row;
+    private final int[] touched;
+    private int touchedCount;
+    private long distanceEvaluations;
+    private final Tour tour;
+    private final KdTree unvisited;
 
     /**
-     * Solves the TSP using Dijkstra's algorithm.
-     * 
-     * @param cities The list of cities to use in the algorithm.
-     * @return The solution to the Travelling Salesman Problem.
+     * Constructs the solver state for either a complete or a sparse graph.
+     *
+     * @param cities    The cities to use in the algorithm.
+     * @param distances The edge lengths of the complete graph, or {@code null}
+     *                  when a sparse graph is given.
+     * @param graph     The sparse graph, or {@code null} for the complete graph.
+     * @param limits    The limits stopping the construction.
+     * @throws CancellationException if the limits expire.
      */
-    public static ArrayList<City> solveDijkstra(ArrayList<City> cities) {
-        double[][] adjacencyMatrix = createAdjacencyMatrix(cities);
-        ArrayList<City> tour = new ArrayList<>();
-        Set<Integer> visited = new HashSet<>();
+    private SolverDijkstra(CityStore cities, DistanceProvider distances, SparseGraph graph, SearchLimits limits) {
+        int n = cities.size();
+        this.cities = cities;
+        this.distances = distances;
+        this.graph = graph;
+        this.pq = new IndexedMinHeap(n);
+        this.dist = new double[n];
+        this.row = graph == null ? new double[n] : null;
+        this.touched = new int[n];
+        this.tour = new Tour(n);
+        this.unvisited = new KdTree(cities, limits);
+        Arrays.fill(dist, Double.MAX_VALUE);
+    }
 
-        int currentCityIndex = 0;
-        tour.add(cities.get(currentCityIndex));
-        visited.add(currentCityIndex);
-
-        for (int i = 1; i < cities.size(); i++) {
-            double[] distances = findShortestDistance(adjacencyMatrix, currentCityIndex);
-            int nextCityIndex = findNextCity(distances, visited);
-            visited.add(nextCityIndex);
-            tour.add(cities.get(nextCityIndex));
-            currentCityIndex = nextCityIndex;
-        }
+    /**
+     * Solves the TSP using Dijkstra's algorithm on the complete graph.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveDijkstra(CityStore cities) {
+        return solveDijkstra(cities, SearchLimits.UNLIMITED);
+    }
 
-        // Return to the starting city
-        tour.add(cities.get(0));
-        return tour;
+    /**
+     * Solves the TSP using Dijkstra's algorithm on the complete graph, giving
+     * up when the limits expire.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param limits The limits stopping the construction.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] solveDijkstra(CityStore cities, SearchLimits limits) {
+        return new SolverDijkstra(cities, DistanceProviders.forCities(cities), null, limits).solve(limits);
     }
 
     /**
-     * Creates an adjacency matrix representing the distances between each pair of
-     * cities.
+     * Solves the TSP using Dijkstra's algorithm on the symmetric k-nearest
+     * neighbour graph of the cities.
      *
-     * @param cities The list of cities.
-     * @return A 2D array representing the distances between each pair of cities.
+     * @param cities     The cities to use in the algorithm.
+     * @param neighbours The number of nearest neighbours joined to each city.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
      */
-    public static double[][] createAdjacencyMatrix(ArrayList<City> cities) {
-        double[][] matrix = new double[cities.size()][cities.size()];
-        for (int i = 0; i < cities.size(); i++) {
-            for (int j = 0; j < cities.size(); j++) {
-                if (i == j) {
-                    matrix[i][j] = 0;
-                } else {
-                    matrix[i][j] = cities.get(i).distanceTo(cities.get(j));
-                }
-            }
-        }
-        return matrix;
+    public static int[] solveDijkstra(CityStore cities, int neighbours) {
+        return solveDijkstra(cities, CandidateLists.build(cities, neighbours));
     }
 
     /**
-     * Finds the shortest distances from a source city to all other cities using
-     * Dijkstra's algorithm.
+     * Solves the TSP using Dijkstra's algorithm on the symmetric graph joining
+     * every city to its candidate neighbours.
      *
-     * @param graph The graph represented as an adjacency matrix.
-     * @param src   The index of the source city.
-     * @return An array of distances from the source city to each other city.
+     * @param cities     The cities to use in the algorithm.
+     * @param candidates The candidate lists of the cities.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
      */
-    private static double[] findShortestDistance(double[][] graph, int src) {
-        int V = graph.length;
-        double[] dist = new double[V];
-        PriorityQueue<CityDistance> pq = new PriorityQueue<>(Comparator.comparingDouble(CityDistance::getDistance));
-        Map<Integer, CityDistance> cityDistances = new HashMap<>();
-
-        // Initialize distances and priority queue
-        for (int i = 0; i < V; i++) {
-            CityDistance cd = new CityDistance(i, Double.MAX_VALUE);
-            cityDistances.put(i, cd);
-            pq.add(cd);
-            dist[i] = Double.MAX_VALUE;
-        }
+    public static int[] solveDijkstra(CityStore cities, CandidateLists candidates) {
+        return solveDijkstra(cities, candidates, SearchLimits.UNLIMITED);
+    }
 
-        // Set the distance of the source city to itself as zero
-        dist[src] = 0;
-        cityDistances.get(src).setDistance(0);
+    /**
+     * Solves the TSP using Dijkstra's algorithm on the symmetric graph joining
+     * every city to its candidate neighbours, giving up when the limits
+     * expire.
+     *
+     * @param cities     The cities to use in the algorithm.
+     * @param candidates The candidate lists of the cities.
+     * @param limits     The limits stopping the construction.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] solveDijkstra(CityStore cities, CandidateLists candidates, SearchLimits limits) {
+        SparseGraph graph = SparseGraph.fromCandidates(cities, candidates);
+        return new SolverDijkstra(cities, null, graph, limits).solve(limits);
+    }
 
-        // Dijkstra's algorithm
-        while (!pq.isEmpty()) {
-            CityDistance cd = pq.poll();
-            int u = cd.getCity();
+    /**
+     * Builds the tour from the first city. When no unvisited city can be
+     * reached in the graph, the tour continues to the nearest unvisited city
+     * in the plane.
+     *
+     * @param limits The limits stopping the construction.
+     * @return The closed tour of city indices.
+     * @throws CancellationException if the limits expire.
+     */
+    private int[] solve(SearchLimits limits) {
+        int n = cities.size();
 
-            // Update distances to adjacent cities
-            for (int v = 0; v < V; v++) {
-                if (graph[u][v] != 0 && dist[u] + graph[u][v] < dist[v]) {
-                    dist[v] = dist[u] + graph[u][v];
-                    CityDistance nextCd = cityDistances.get(v);
-                    nextCd.setDistance(dist[v]);
-                    pq.remove(nextCd); // Remove old entry
-                    pq.add(nextCd); // Insert updated entry
-                }
+        int currentCityIndex = 0;
+        markVisited(currentCityIndex);
+
+        for (int i = 1; i < n; i++) {
+            // Each step may scan the whole graph, so give up as soon as the limits expire
+            if (limits.isExpired()) {
+                throw new CancellationException("Dijkstra's algorithm was cancelled");
             }
+            int nextCityIndex = findShortestUnvisited(currentCityIndex);
+            if (nextCityIndex < 0) {
+                // Zero-length edges are never relaxed, so cities at the same point as
+                // every settled city, or beyond a disconnected sparse graph, are unreachable
+                nextCityIndex = unvisited.nearest(currentCityIndex);
+            }
+            markVisited(nextCityIndex);
+            currentCityIndex = nextCityIndex;
         }
 
-        return dist;
+        SolverMetrics.count(SolverMetrics.Counter.DISTANCE_EVALUATIONS, distanceEvaluations);
+        SolverMetrics.count(SolverMetrics.Counter.HEAP_OPERATIONS, pq.getOperations());
+
+        // Return to the starting city
+        return tour.toClosedPath(0);
     }
 
     /**
-     * Finds the index of the nearest unvisited city from the given distances array.
+     * Runs Dijkstra's algorithm from a source city until the unvisited city
+     * with the smallest shortest path distance is settled. Ties go to the
+     * lowest city index.
      *
-     * @param distances The array of distances from the current city.
-     * @param visited   The set of already visited cities.
-     * @return The index of the nearest unvisited city.
+     * @param src The index of the source city.
+     * @return The index of the nearest unvisited city, or -1 if none is
+     *         reachable.
      */
-    private static int findNextCity(double[] distances, Set<Integer> visited) {
-        double minDist = Double.MAX_VALUE;
-        int minIndex = -1;
-        for (int i = 0; i < distances.length; i++) {
-            if (!visited.contains(i) && distances[i] < minDist) {
-                minDist = distances[i];
-                minIndex = i;
+    private int findShortestUnvisited(int src) {
+        resetDistances();
+        setDistance(src, 0);
+        pq.insertOrDecrease(src, 0);
+
+        int result = -1;
+        while (!pq.isEmpty()) {
+            int u = pq.pollMin();
+            if (!tour.contains(u)) {
+                result = u;
+                break;
+            }
+
+            // Update distances to adjacent cities
+            if (graph == null) {
+                distanceEvaluations += dist.length;
+                distances.distancesFrom(u, row);
+                for (int v = 0; v < dist.length; v++) {
+                    relax(u, v, row[v]);
+                }
+            } else {
+                for (int k = graph.getStart(u); k < graph.getStart(u + 1); k++) {
+                    relax(u, graph.getTarget(k), graph.getWeight(k));
+                }
             }
         }
-        return minIndex;
+        pq.clear();
+        return result;
     }
 
     /**
-     * Utility class for storing a city and its distance from the current city.
+     * Relaxes the edge from a settled city to another city.
+     *
+     * @param u      The settled city.
+     * @param v      The other city.
+     * @param weight The length of the edge; zero-length edges are ignored.
      */
-    private static class CityDistance {
-        private int city;
-        private double distance;
-
-        /**
-         * Constructs a CityDistance object.
-         *
-         * @param city     The city.
-         * @param distance The distance from the current city.
-         */
-        public CityDistance(int city, double distance) {
-            this.city = city;
-            this.distance = distance;
-        }
-
-        /**
-         * Gets the city.
-         *
-         * @return The city.
-         */
-        public int getCity() {
-            return city;
+    private void relax(int u, int v, double weight) {
+        if (weight != 0 && dist[u] + weight < dist[v]) {
+            setDistance(v, dist[u] + weight);
+            pq.insertOrDecrease(v, dist[v]);
         }
+    }
 
-        /**
-         * Sets the city.
-         *
-         * @param city The city.
-         */
-        public double getDistance() {
-            return distance;
+    /**
+     * Sets the tentative distance of a city, remembering it for the next reset.
+     *
+     * @param v        The city.
+     * @param distance The new distance.
+     */
+    private void setDistance(int v, double distance) {
+        if (dist[v] == Double.MAX_VALUE) {
+            touched[touchedCount++] = v;
         }
+        dist[v] = distance;
+    }
 
-        /**
-         * Sets the distance from the current city.
-         *
-         * @param distance The distance from the current city.
-         */
-        public void setDistance(double distance) {
-            this.distance = distance;
+    /**
+     * Resets the distances set by the previous search.
+     */
+    private void resetDistances() {
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = Double.MAX_VALUE;
         }
+        touchedCount = 0;
     }
 
+    /**
+     * Appends a city to the tour.
+     *
+     * @param city The city.
+     */
+    private void markVisited(int city) {
+        tour.append(city);
+        unvisited.remove(city);
+    }
 }
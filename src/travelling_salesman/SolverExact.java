@@ -0,0 +1,722 @@
+package travelling_salesman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Utility class for solving small instances of the TSP to optimality.
+ * <p>
+ * Up to {@link #DP_LIMIT} cities the Held-Karp dynamic programme over subsets
+ * is used. It runs in O(2^n n^2) time on a flat {@code double[]} table that
+ * is reused between calls on the same thread, so many small instances can be
+ * solved without allocating.
+ * <p>
+ * Larger instances, up to {@link #MAX_CITIES}, are solved by depth-first
+ * branch and bound over the tour from city 0. A Lin-Kernighan tour is the
+ * first incumbent, and city penalties from a subgradient ascent on 1-trees
+ * give both a root bound, which often proves the incumbent optimal at once,
+ * and the bound at every node: the penalised minimum spanning tree of the
+ * cities still to visit, the current city and city 0. Tours are only
+ * enumerated in the direction in which the second city has a lower index than
+ * the last, and the subtrees below the second city are searched in parallel.
+ * <p>
+ * Two kinds of degenerate instances, on which the bounds are weak and many
+ * tours tie, are solved directly: cities at the same coordinates are solved
+ * once and visited one after the other, and cities on a single line are
+ * visited in their order along it, which is optimal.
+ */
+public class SolverExact {
+    /**
+     * Largest instance solved by dynamic programming. Its table holds
+     * {@code 2^(n-1) * (n-1)} doubles, 80 KB at this size; above it the
+     * branch and bound is faster.
+     */
+    public static final int DP_LIMIT = 11;
+
+    /**
+     * Largest instance accepted; visited sets are kept in a {@code long}.
+     */
+    public static final int MAX_CITIES = 64;
+
+    /**
+     * Time limit of the exact solver when no {@code --time-limit} is given, in
+     * milliseconds. Instances of up to 64 cities whose bounds stay far from the
+     * optimum can otherwise run for hours.
+     */
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 60_000;
+
+    /**
+     * Smallest instance whose branch and bound runs on several threads.
+     */
+    private static final int PARALLEL_LIMIT = 24;
+
+    /**
+     * Maximum number of subgradient ascent iterations for the city penalties.
+     */
+    private static final int ASCENT_ITERATIONS = 10000;
+
+    /**
+     * Ascent iterations without improvement before the step is halved.
+     */
+    private static final int ASCENT_PATIENCE = 50;
+
+    /**
+     * Number of times the ascent restarts from its best penalties once the
+     * step has become too small.
+     */
+    private static final int ASCENT_RESTARTS = 10;
+
+    /**
+     * Step below which the ascent stops or restarts.
+     */
+    private static final double MIN_STEP = 1e-4;
+
+    /**
+     * Number of search nodes between two checks of the limits.
+     */
+    private static final int CHECK_INTERVAL = 1 << 12;
+
+    /**
+     * Tolerance below which a bound is taken to match the incumbent.
+     */
+    private static final double EPSILON = 1e-7;
+
+    /**
+     * Dynamic programming table of each thread, grown as needed.
+     */
+    private static final ThreadLocal<double[]> TABLES = ThreadLocal.withInitial(() -> new double[0]);
+
+    /**
+     * Solves the TSP optimally on the current thread without limits.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @return The optimal tour as city indices, with the starting city
+     *         repeated at the end.
+     * @throws IllegalArgumentException if there are more than
+     *                                  {@link #MAX_CITIES} cities.
+     */
+    public static int[] solveExact(CityStore cities) {
+        return solveExact(cities, 1, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Solves the TSP optimally. If a limit is reached first, the best tour
+     * found so far is returned instead.
+     *
+     * @param cities  The cities to use in the algorithm.
+     * @param threads The number of threads for the branch and bound.
+     * @param limits  The limits on the branch and bound.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws IllegalArgumentException if there are more than
+     *                                  {@link #MAX_CITIES} cities.
+     */
+    @SuppressWarnings("try")
+    public static int[] solveExact(CityStore cities, int threads, SearchLimits limits) {
+        int n = cities.size();
+        if (n > MAX_CITIES) {
+            throw new IllegalArgumentException(
+                    "The exact solver supports at most " + MAX_CITIES + " cities, got " + n);
+        }
+        if (n <= 3) {
+            int[] path = new int[n == 0 ? 0 : n + 1];
+            for (int i = 0; i < n; i++) {
+                path[i] = i;
+            }
+            return path;
+        }
+        int[] representatives = representatives(cities);
+        if (representatives != null) {
+            return solveDistinct(cities, representatives, threads, limits);
+        }
+        int[] line = solveCollinear(cities);
+        if (line != null) {
+            return line;
+        }
+
+        double[] dist = new double[n * n];
+        try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.DISTANCE_BUILD)) {
+            DistanceKernels.block(cities, 0, n, dist);
+            SolverMetrics.count(SolverMetrics.Counter.DISTANCE_EVALUATIONS, (long) n * n);
+        }
+        return n <= DP_LIMIT ? solveDynamic(dist, n) : solveBranchAndBound(cities, dist, n, threads, limits);
+    }
+
+    /**
+     * Returns whether an exact solve run with
+     * {@link SolveOptions#newExactLimits()} reached its time limit, in which
+     * case its tour is the best one found but not proven optimal.
+     *
+     * @param options      The solver settings of the solve.
+     * @param elapsedNanos The run time of the solve in nanoseconds.
+     * @return {@code true} if the time limit was reached.
+     */
+    public static boolean reachedTimeLimit(SolveOptions options, long elapsedNanos) {
+        return elapsedNanos / 1_000_000L >= options.getExactTimeLimitMillis();
+    }
+
+    /**
+     * Finds the cities that share their coordinates with an earlier city.
+     *
+     * @param cities The cities to check.
+     * @return The index of the first city at the same coordinates for every
+     *         city, or {@code null} if all coordinates are distinct.
+     */
+    private static int[] representatives(CityStore cities) {
+        int n = cities.size();
+        int[] representatives = null;
+        for (int i = 1; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                if (cities.getX(i) == cities.getX(j) && cities.getY(i) == cities.getY(j)) {
+                    if (representatives == null) {
+                        representatives = new int[n];
+                        for (int k = 0; k < n; k++) {
+                            representatives[k] = k;
+                        }
+                    }
+                    representatives[i] = representatives[j];
+                    break;
+                }
+            }
+        }
+        return representatives;
+    }
+
+    /**
+     * Solves the instance without its repeated coordinates, then visits every
+     * repeated city right after the first city at its coordinates. Since the
+     * extra visits cost nothing, the tour is optimal if the reduced one is.
+     *
+     * @param cities          The cities to use in the algorithm.
+     * @param representatives The first city at the coordinates of every city.
+     * @param threads         The number of threads for the branch and bound.
+     * @param limits          The limits on the branch and bound.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    private static int[] solveDistinct(CityStore cities, int[] representatives, int threads, SearchLimits limits) {
+        int n = cities.size();
+        int[] distinct = new int[n];
+        int[] ids = new int[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (representatives[i] == i) {
+                distinct[size] = i;
+                ids[size] = cities.getId(i);
+                xs[size] = cities.getX(i);
+                ys[size] = cities.getY(i);
+                size++;
+            }
+        }
+        int[] reduced = solveExact(new CityStore(ids, xs, ys, size), threads, limits);
+
+        // City 0 is always distinct, so the reduced tour still starts with it
+        int[] path = new int[n + 1];
+        int position = 0;
+        for (int k = 0; k < size; k++) {
+            int city = distinct[reduced[k]];
+            for (int i = city; i < n; i++) {
+                if (representatives[i] == city) {
+                    path[position++] = i;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Solves an instance whose cities all lie on one line: the cities are
+     * visited in their order along the line and the tour returns to the
+     * start, which is twice the distance between the two ends and optimal.
+     *
+     * @param cities The cities, at least two of them at distinct coordinates.
+     * @return The optimal closed path starting at city 0, or {@code null} if
+     *         the cities are not on one line.
+     */
+    private static int[] solveCollinear(CityStore cities) {
+        int n = cities.size();
+        double x0 = cities.getX(0), y0 = cities.getY(0);
+        int far = 0;
+        for (int i = 1; i < n; i++) {
+            if (cities.squaredDistanceTo(i, x0, y0) > cities.squaredDistanceTo(far, x0, y0)) {
+                far = i;
+            }
+        }
+        double dx = cities.getX(far) - x0, dy = cities.getY(far) - y0;
+        Integer[] order = new Integer[n];
+        double[] along = new double[n];
+        for (int i = 0; i < n; i++) {
+            double px = cities.getX(i) - x0, py = cities.getY(i) - y0;
+            if (dx * py - dy * px != 0) {
+                return null;
+            }
+            order[i] = i;
+            along[i] = dx * px + dy * py;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(along[a], along[b]));
+
+        int start = 0;
+        while (order[start] != 0) {
+            start++;
+        }
+        int[] path = new int[n + 1];
+        for (int k = 0; k < n; k++) {
+            path[k] = order[(start + k) % n];
+        }
+        return path;
+    }
+
+    /**
+     * Solves the TSP with the Held-Karp dynamic programme. Entry
+     * {@code mask * m + j} of the table is the length of the shortest path
+     * that starts at city 0, visits the cities of {@code mask} and ends at
+     * city {@code j + 1}, where bit {@code j} of the mask stands for city
+     * {@code j + 1} and {@code m = n - 1}.
+     *
+     * @param dist The dense distance matrix.
+     * @param n    The number of cities, at least 4.
+     * @return The optimal closed path starting at city 0.
+     */
+    private static int[] solveDynamic(double[] dist, int n) {
+        int m = n - 1;
+        int full = (1 << m) - 1;
+        double[] table = TABLES.get();
+        if (table.length < (full + 1) * m) {
+            table = new double[(full + 1) * m];
+            TABLES.set(table);
+        }
+
+        for (int j = 0; j < m; j++) {
+            table[(1 << j) * m + j] = dist[j + 1];
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            if ((mask & (mask - 1)) == 0) {
+                continue;
+            }
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int j = Integer.numberOfTrailingZeros(rest);
+                int prev = mask ^ (1 << j);
+                int row = (j + 1) * n + 1;
+                int base = prev * m;
+                double best = Double.MAX_VALUE;
+                for (int others = prev; others != 0; others &= others - 1) {
+                    int k = Integer.numberOfTrailingZeros(others);
+                    double length = table[base + k] + dist[row + k];
+                    if (length < best) {
+                        best = length;
+                    }
+                }
+                table[mask * m + j] = best;
+            }
+        }
+
+        // Close the tour, then walk back through the table to recover it
+        int last = 0;
+        double best = Double.MAX_VALUE;
+        for (int j = 0; j < m; j++) {
+            double length = table[full * m + j] + dist[(j + 1) * n];
+            if (length < best) {
+                best = length;
+                last = j;
+            }
+        }
+        int[] path = new int[n + 1];
+        int mask = full;
+        for (int position = n - 1; position > 0; position--) {
+            path[position] = last + 1;
+            int prev = mask ^ (1 << last);
+            if (prev != 0) {
+                double target = table[mask * m + last];
+                int row = (last + 1) * n + 1;
+                for (int others = prev; others != 0; others &= others - 1) {
+                    int k = Integer.numberOfTrailingZeros(others);
+                    if (table[prev * m + k] + dist[row + k] == target) {
+                        last = k;
+                        break;
+                    }
+                }
+            }
+            mask = prev;
+        }
+        return path;
+    }
+
+    /**
+     * Solves the TSP by branch and bound, starting from a Lin-Kernighan tour.
+     *
+     * @param cities  The cities to use in the algorithm.
+     * @param dist    The dense distance matrix.
+     * @param n       The number of cities.
+     * @param threads The number of threads.
+     * @param limits  The limits on the search.
+     * @return The best closed path found, starting at city 0.
+     */
+    private static int[] solveBranchAndBound(CityStore cities, double[] dist, int n, int threads,
+            SearchLimits limits) {
+        BestTour best = new BestTour();
+        int[] initial = SolverLK.solveLinKernighan(cities, limits);
+        best.offer(initial, UserInterface.calculateTotalDistance(cities, initial));
+
+        double[] penalties = new double[n];
+        if (ascend(dist, n, best.getLength(), penalties) >= best.getLength() - EPSILON) {
+            return initial;
+        }
+        double[] penalised = new double[n * n];
+        double penaltySum = 0;
+        for (int i = 0; i < n; i++) {
+            penaltySum += penalties[i];
+            for (int j = 0; j < n; j++) {
+                penalised[i * n + j] = dist[i * n + j] + penalties[i] + penalties[j];
+            }
+        }
+
+        // Every city's neighbours, nearest first, to try short edges first
+        int[] neighbours = new int[n * (n - 1)];
+        for (int i = 0; i < n; i++) {
+            Integer[] order = new Integer[n - 1];
+            for (int j = 0, k = 0; j < n; j++) {
+                if (j != i) {
+                    order[k++] = j;
+                }
+            }
+            int row = i * n;
+            Arrays.sort(order, (a, b) -> Double.compare(dist[row + a], dist[row + b]));
+            for (int k = 0; k < n - 1; k++) {
+                neighbours[i * (n - 1) + k] = order[k];
+            }
+        }
+
+        // City n - 1 cannot be second, since the last city must have a higher index
+        long all = n == 64 ? -1L : (1L << n) - 1;
+        double unvisitedPenalty = penaltySum - penalties[0];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int k = 0; k < n - 1; k++) {
+            int second = neighbours[k];
+            if (second == n - 1) {
+                continue;
+            }
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Search search = new Search(n, second, dist, penalised, penalties, neighbours, best, limits);
+                search.run(all & ~1L & ~(1L << second), unvisitedPenalty - penalties[second]);
+            }));
+        }
+        if (threads > 1 && n >= PARALLEL_LIMIT) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (ForkJoinTask<?> task : tasks) {
+                task.invoke();
+            }
+        }
+        return best.getPath();
+    }
+
+    /**
+     * Optimises city penalties by subgradient ascent on 1-trees with city 0 as
+     * the special city, moving every penalty towards degree two. Once the step
+     * has shrunk below {@link #MIN_STEP}, the ascent restarts from the best
+     * penalties with a smaller initial step, which keeps closing the gap on
+     * instances where the first descent stalls early.
+     *
+     * @param dist       The dense distance matrix.
+     * @param n          The number of cities.
+     * @param upperBound The length of a known tour.
+     * @param penalties  Receives the penalties of the best bound.
+     * @return The best lower bound found.
+     */
+    private static double ascend(double[] dist, int n, double upperBound, double[] penalties) {
+        double[] current = new double[n];
+        int[] degrees = new int[n];
+        double[] key = new double[n];
+        int[] parent = new int[n];
+        boolean[] inTree = new boolean[n];
+        double bestBound = -Double.MAX_VALUE;
+        double initialStep = 2;
+        double step = initialStep;
+        int stalled = 0;
+        int restarts = 0;
+
+        for (int iteration = 0; iteration < ASCENT_ITERATIONS; iteration++) {
+            if (step <= MIN_STEP) {
+                if (restarts++ == ASCENT_RESTARTS) {
+                    break;
+                }
+                System.arraycopy(penalties, 0, current, 0, n);
+                initialStep /= 2;
+                step = initialStep;
+                stalled = 0;
+            }
+            double bound = oneTree(dist, n, current, degrees, key, parent, inTree);
+            if (bound > bestBound) {
+                bestBound = bound;
+                System.arraycopy(current, 0, penalties, 0, n);
+                stalled = 0;
+                if (bestBound >= upperBound - EPSILON) {
+                    break;
+                }
+            } else if (++stalled >= ASCENT_PATIENCE) {
+                step /= 2;
+                stalled = 0;
+            }
+            int norm = 0;
+            for (int i = 0; i < n; i++) {
+                norm += (degrees[i] - 2) * (degrees[i] - 2);
+            }
+            if (norm == 0) {
+                // The 1-tree is a tour, so the bound is optimal
+                break;
+            }
+            double t = step * (upperBound - bound) / norm;
+            for (int i = 0; i < n; i++) {
+                current[i] += t * (degrees[i] - 2);
+            }
+        }
+        return bestBound;
+    }
+
+    /**
+     * Computes the minimum 1-tree under city penalties: a minimum spanning
+     * tree of cities 1 to n - 1 with the two shortest edges of city 0 added.
+     *
+     * @param dist      The dense distance matrix.
+     * @param n         The number of cities.
+     * @param penalties The city penalties.
+     * @param degrees   Receives the degree of every city in the 1-tree.
+     * @param key       Scratch array of length n.
+     * @param parent    Scratch array of length n.
+     * @param inTree    Scratch array of length n.
+     * @return The penalised 1-tree length minus twice the penalty sum, a lower
+     *         bound on the tour length.
+     */
+    private static double oneTree(double[] dist, int n, double[] penalties, int[] degrees, double[] key,
+            int[] parent, boolean[] inTree) {
+        Arrays.fill(degrees, 0);
+        Arrays.fill(inTree, false);
+        double length = 0;
+        for (int i = 1; i < n; i++) {
+            key[i] = dist[n + i] + penalties[1] + penalties[i];
+            parent[i] = 1;
+        }
+        inTree[1] = true;
+        for (int added = 2; added < n; added++) {
+            int next = -1;
+            for (int i = 2; i < n; i++) {
+                if (!inTree[i] && (next < 0 || key[i] < key[next])) {
+                    next = i;
+                }
+            }
+            inTree[next] = true;
+            length += key[next];
+            degrees[next]++;
+            degrees[parent[next]]++;
+            int row = next * n;
+            for (int i = 2; i < n; i++) {
+                double d = dist[row + i] + penalties[next] + penalties[i];
+                if (!inTree[i] && d < key[i]) {
+                    key[i] = d;
+                    parent[i] = next;
+                }
+            }
+        }
+
+        double first = Double.MAX_VALUE, second = Double.MAX_VALUE;
+        int firstCity = -1, secondCity = -1;
+        for (int i = 1; i < n; i++) {
+            double d = dist[i] + penalties[0] + penalties[i];
+            if (d < first) {
+                second = first;
+                secondCity = firstCity;
+                first = d;
+                firstCity = i;
+            } else if (d < second) {
+                second = d;
+                secondCity = i;
+            }
+        }
+        length += first + second;
+        degrees[0] = 2;
+        degrees[firstCity]++;
+        degrees[secondCity]++;
+
+        double penaltySum = 0;
+        for (int i = 0; i < n; i++) {
+            penaltySum += penalties[i];
+        }
+        return length - 2 * penaltySum;
+    }
+
+    /**
+     * Depth-first search below one choice of second city. Each search owns
+     * its scratch arrays, so searches can run in parallel sharing only the
+     * incumbent.
+     */
+    private static class Search {
+        private final int n;
+        private final int second;
+        private final long aboveSecond;
+        private final double[] dist;
+        private final double[] penalised;
+        private final double[] penalties;
+        private final int[] neighbours;
+        private final BestTour best;
+        private final SearchLimits limits;
+        private final int[] path;
+        private final int[] members;
+        private final double[] key;
+        private int depth;
+        private long nodes;
+        private boolean stopped;
+
+        /**
+         * Constructs a search.
+         *
+         * @param n          The number of cities.
+         * @param second     The second city of every tour searched.
+         * @param dist       The dense distance matrix.
+         * @param penalised  The distance matrix with city penalties added.
+         * @param penalties  The city penalties.
+         * @param neighbours The neighbours of every city, nearest first.
+         * @param best       The shared incumbent.
+         * @param limits     The limits on the search.
+         */
+        Search(int n, int second, double[] dist, double[] penalised, double[] penalties, int[] neighbours,
+                BestTour best, SearchLimits limits) {
+            this.n = n;
+            this.second = second;
+            this.aboveSecond = second == 63 ? 0 : -1L << (second + 1);
+            this.dist = dist;
+            this.penalised = penalised;
+            this.penalties = penalties;
+            this.neighbours = neighbours;
+            this.best = best;
+            this.limits = limits;
+            this.path = new int[n + 1];
+            this.members = new int[n];
+            this.key = new double[n];
+            path[1] = second;
+            depth = 2;
+        }
+
+        /**
+         * Searches every tour starting with city 0 and the second city.
+         *
+         * @param unvisited        The set of cities not yet visited.
+         * @param unvisitedPenalty The sum of the penalties of those cities.
+         */
+        void run(long unvisited, double unvisitedPenalty) {
+            search(second, unvisited, dist[second], unvisitedPenalty);
+        }
+
+        /**
+         * Extends the current path in every way that can still beat the
+         * incumbent.
+         *
+         * @param last             The last city of the path.
+         * @param unvisited        The set of cities not yet visited.
+         * @param length           The length of the path.
+         * @param unvisitedPenalty The sum of the penalties of the unvisited
+         *                         cities.
+         */
+        private void search(int last, long unvisited, double length, double unvisitedPenalty) {
+            if (stopped) {
+                return;
+            }
+            if (++nodes % CHECK_INTERVAL == 0 && limits.isExpired()) {
+                stopped = true;
+                return;
+            }
+            if (unvisited == 0) {
+                double total = length + dist[last * n];
+                if (total < best.getLength() - EPSILON) {
+                    int[] tour = path.clone();
+                    tour[n] = 0;
+                    best.offer(tour, total);
+                }
+                return;
+            }
+            if (length + pathBound(last, unvisited, unvisitedPenalty) >= best.getLength() - EPSILON) {
+                return;
+            }
+
+            int row = last * (n - 1);
+            for (int k = 0; k < n - 1; k++) {
+                int next = neighbours[row + k];
+                long bit = 1L << next;
+                if ((unvisited & bit) == 0) {
+                    continue;
+                }
+                long rest = unvisited & ~bit;
+                // Only the direction in which the last city comes after the second
+                if (rest == 0 ? next < second : (rest & aboveSecond) == 0) {
+                    continue;
+                }
+                path[depth++] = next;
+                search(next, rest, length + dist[last * n + next], unvisitedPenalty - penalties[next]);
+                depth--;
+            }
+        }
+
+        /**
+         * Returns a lower bound on the shortest path from the last city
+         * through the unvisited cities to city 0. Such a path is an edge from
+         * the last city, a spanning tree of the unvisited cities and an edge
+         * to city 0, and under penalties it is longer by twice the penalty of
+         * every unvisited city and once that of both ends.
+         *
+         * @param last             The last city of the path.
+         * @param unvisited        The non-empty set of cities not yet
+         *                         visited.
+         * @param unvisitedPenalty The sum of the penalties of the unvisited
+         *                         cities.
+         * @return The lower bound.
+         */
+        private double pathBound(int last, long unvisited, double unvisitedPenalty) {
+            int size = 0;
+            int lastRow = last * n;
+            double fromLast = Double.MAX_VALUE, toStart = Double.MAX_VALUE;
+            for (long rest = unvisited; rest != 0; rest &= rest - 1) {
+                int city = Long.numberOfTrailingZeros(rest);
+                members[size++] = city;
+                fromLast = Math.min(fromLast, penalised[lastRow + city]);
+                toStart = Math.min(toStart, penalised[city]);
+            }
+
+            // Prim's algorithm over the unvisited cities, removing each city
+            // from the member list as it joins the tree
+            int root = members[--size];
+            int rootRow = root * n;
+            for (int i = 0; i < size; i++) {
+                key[i] = penalised[rootRow + members[i]];
+            }
+            double length = fromLast + toStart;
+            for (int remaining = size; remaining > 0; remaining--) {
+                int next = 0;
+                for (int i = 1; i < remaining; i++) {
+                    if (key[i] < key[next]) {
+                        next = i;
+                    }
+                }
+                length += key[next];
+                int cityRow = members[next] * n;
+                members[next] = members[remaining - 1];
+                key[next] = key[remaining - 1];
+                for (int i = 0; i < remaining - 1; i++) {
+                    double d = penalised[cityRow + members[i]];
+                    if (d < key[i]) {
+                        key[i] = d;
+                    }
+                }
+            }
+            return length - 2 * unvisitedPenalty - penalties[last] - penalties[0];
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Utility class for solving the TSP by visiting the cities in the order of a
+ * Hilbert space-filling curve.
+ * <p>
+ * The bounding box of the cities is divided into a grid of
+ * {@code 2^ORDER x 2^ORDER} cells, every city is given the position of its
+ * cell along the curve, and the cities are sorted by that position. The curve
+ * never jumps between distant cells, so neighbouring cities end up close in
+ * the tour. Sorting leaves short crossings where the curve turns between
+ * cells; two sweeps of 2-opt moves over short segments remove most of them.
+ * This takes O(n log n) time and gives tours roughly 20-25% longer than
+ * optimal on uniform instances, which makes it a fast seed for the
+ * improvement stages on very large instances.
+ */
+public class SolverHilbert {
+    /**
+     * Number of curve levels; the grid has {@code 2^ORDER} cells per side.
+     * The curve position takes {@code 2 * ORDER} bits, leaving the low 32 bits
+     * of the sort key for the city index.
+     */
+    private static final int ORDER = 15;
+
+    /**
+     * Longest segment reversed while untangling the curve order.
+     */
+    private static final int WINDOW = 8;
+
+    /**
+     * Maximum number of untangling sweeps.
+     */
+    private static final int SWEEPS = 2;
+
+    /**
+     * Solves the TSP by following a Hilbert curve over the cities.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveHilbert(CityStore cities) {
+        return solveHilbert(cities, SearchLimits.UNLIMITED);
+    }
+
+    /**
+     * Solves the TSP by following a Hilbert curve over the cities, giving up
+     * when the limits expire.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param limits The limits stopping the construction, checked before the
+     *               sort and while the curve order is untangled.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] solveHilbert(CityStore cities, SearchLimits limits) {
+        int n = cities.size();
+        if (n == 0) {
+            return new int[0];
+        }
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, cities.getX(i));
+            minY = Math.min(minY, cities.getY(i));
+            maxX = Math.max(maxX, cities.getX(i));
+            maxY = Math.max(maxY, cities.getY(i));
+        }
+
+        // Use the same scale on both axes so the curve keeps its shape
+        int side = 1 << ORDER;
+        double extent = Math.max(Math.max(maxX - minX, maxY - minY), 1e-9);
+        double scale = (side - 1) / extent;
+
+        // Sort keys hold the curve position in the high bits and the city below
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((cities.getX(i) - minX) * scale);
+            int y = (int) ((cities.getY(i) - minY) * scale);
+            keys[i] = (curvePosition(x, y, side) << 32) | i;
+        }
+        if (limits.isExpired()) {
+            throw new CancellationException("Hilbert curve construction was cancelled");
+        }
+        Arrays.parallelSort(keys);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        untangle(cities, order, limits);
+
+        Tour tour = new Tour(n);
+        for (int city : order) {
+            tour.append(city);
+        }
+        return tour.toClosedPath(0);
+    }
+
+    /**
+     * Applies improving 2-opt moves whose reversed segment is at most
+     * {@link #WINDOW} cities long, sweeping along the order a few times. The
+     * curve leaves many short crossings where it turns between cells, and
+     * removing them costs O(n) distance evaluations per sweep.
+     *
+     * @param cities The cities the order refers to.
+     * @param order  The visiting order, improved in place.
+     * @param limits The limits stopping the construction.
+     * @throws CancellationException if the limits expire.
+     */
+    private static void untangle(CityStore cities, int[] order, SearchLimits limits) {
+        int n = order.length;
+        if (n < 4) {
+            return;
+        }
+        for (int sweep = 0; sweep < SWEEPS; sweep++) {
+            boolean improved = false;
+            for (int i = 0; i < n; i++) {
+                if ((i & 1023) == 0 && limits.isExpired()) {
+                    throw new CancellationException("Hilbert curve construction was cancelled");
+                }
+                int a = order[i];
+                int b = order[(i + 1) % n];
+                double ab = cities.distance(a, b);
+                for (int k = 2; k <= WINDOW && k < n - 1; k++) {
+                    int j = (i + k) % n;
+                    int c = order[j];
+                    int d = order[(j + 1) % n];
+                    double delta = cities.distance(a, c) + cities.distance(b, d) - ab - cities.distance(c, d);
+                    if (delta < -1e-9) {
+                        reverse(order, (i + 1) % n, j);
+                        b = order[(i + 1) % n];
+                        ab = cities.distance(a, b);
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reverses the cyclic segment of the order from one position to another.
+     *
+     * @param order The visiting order.
+     * @param from  The position of the first city of the segment.
+     * @param to    The position of the last city of the segment.
+     */
+    private static void reverse(int[] order, int from, int to) {
+        int n = order.length;
+        int length = (to - from + n) % n + 1;
+        for (int s = 0; s < length / 2; s++) {
+            int i = (from + s) % n;
+            int j = (to - s + n) % n;
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+
+    /**
+     * Returns the position of a grid cell along the Hilbert curve.
+     *
+     * @param x    The column of the cell.
+     * @param y    The row of the cell.
+     * @param side The number of cells per side, a power of two.
+     * @return The position of the cell, from 0 to {@code side * side - 1}.
+     */
+    static long curvePosition(int x, int y, int side) {
+        long position = 0;
+        for (int s = side >> 1; s > 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            position += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant so the sub-curve starts and ends correctly
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return position;
+    }
+}
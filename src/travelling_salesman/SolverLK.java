@@ -0,0 +1,326 @@
+package travelling_salesman;
+
+/**
+ * Utility class for solving the TSP using a Lin-Kernighan style
+ * variable-depth search.
+ * <p>
+ * Each improvement step removes an edge {@code (t1, t2)} and then repeatedly
+ * adds an edge from the free end {@code t2} to one of its nearest neighbours
+ * {@code t3}, removing an edge at {@code t3} so that the tour stays closed.
+ * The chain is extended while the accumulated gain stays positive and is cut
+ * back to its most profitable depth at the end.
+ */
+public class SolverLK {
+    /**
+     * Maximum number of 2-opt moves in one chain.
+     */
+    private static final int MAX_DEPTH = 50;
+
+    /**
+     * Number of alternatives tried for the first added edge.
+     */
+    private static final int FIRST_LEVEL_BREADTH = 5;
+
+    /**
+     * Smallest improvement accepted, guarding against rounding loops.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Number of queue pops between checks of the time limit.
+     */
+    private static final int TIME_CHECK_INTERVAL = 16;
+
+    private final CityStore cities;
+    private final Tour tour;
+    private final CandidateLists candidates;
+    private final CityQueue queue;
+
+    // Moves of the current chain: removed (t1, t2), (t4, t3) and added (t2, t3), (t1, t4)
+    private final int[] chainT2 = new int[MAX_DEPTH];
+    private final int[] chainT3 = new int[MAX_DEPTH];
+    private final int[] chainT4 = new int[MAX_DEPTH];
+    private final int[] firstLevelT3 = new int[FIRST_LEVEL_BREADTH];
+    private final double[] firstLevelValue = new double[FIRST_LEVEL_BREADTH];
+
+    /**
+     * Constructs the search state.
+     *
+     * @param cities     The cities the tour refers to.
+     * @param tour       The tour to improve.
+     * @param candidates The nearest neighbour lists of the cities.
+     */
+    private SolverLK(CityStore cities, Tour tour, CandidateLists candidates) {
+        this.cities = cities;
+        this.tour = tour;
+        this.candidates = candidates;
+        this.queue = new CityQueue(cities.size());
+    }
+
+    /**
+     * Solves the TSP with Lin-Kernighan search seeded by a Nearest Neighbour
+     * tour.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param limits The limits on the search.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveLinKernighan(CityStore cities, SearchLimits limits) {
+        return improve(cities, SolverNN.solveNearestNeighbour(cities), limits);
+    }
+
+    /**
+     * Improves a closed path as returned by any of the solvers.
+     *
+     * @param cities The cities the path refers to.
+     * @param path   The closed path of city indices.
+     * @param limits The limits on the search.
+     * @return The improved closed path, starting at the same city.
+     */
+    public static int[] improve(CityStore cities, int[] path, SearchLimits limits) {
+        if (path.length < 2) {
+            return path;
+        }
+        Tour tour = Tour.fromClosedPath(path);
+        improve(cities, tour, CandidateLists.build(cities, LocalSearch.DEFAULT_CANDIDATES), limits);
+        return tour.toClosedPath(path[0]);
+    }
+
+    /**
+     * Improves a tour in place until no improving chain remains or a limit is
+     * reached.
+     *
+     * @param cities     The cities the tour refers to.
+     * @param tour       The tour to improve.
+     * @param candidates The nearest neighbour lists of the cities.
+     * @param limits     The limits on the search.
+     * @return The number of improving chains applied.
+     */
+    public static long improve(CityStore cities, Tour tour, CandidateLists candidates, SearchLimits limits) {
+        // Four cities are the fewest with two disjoint edges to exchange
+        if (tour.size() < 4) {
+            return 0;
+        }
+        SolverLK search = new SolverLK(cities, tour, candidates);
+        for (int i = 0; i < tour.size(); i++) {
+            search.queue.push(tour.cityAt(i));
+        }
+        long moves = search.run(limits);
+        SolverMetrics.count(SolverMetrics.Counter.IMPROVING_MOVES, moves);
+        return moves;
+    }
+
+    /**
+     * Processes queued cities until the queue is empty or a limit is reached.
+     *
+     * @param limits The limits on the search.
+     * @return The number of improving chains applied.
+     */
+    private long run(SearchLimits limits) {
+        long moves = 0;
+        int pops = 0;
+        while (!queue.isEmpty() && moves < limits.getMaxMoves()) {
+            if (++pops % TIME_CHECK_INTERVAL == 0 && limits.checkpoint()) {
+                break;
+            }
+            int t1 = queue.pop();
+            if (improveChain(t1, tour.next(t1)) || improveChain(t1, tour.prev(t1))) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Searches for an improving chain that starts by removing the edge
+     * {@code (t1, t2)}, trying several choices for the first added edge.
+     *
+     * @param t1 The fixed end of the first removed edge.
+     * @param t2 The other end of the first removed edge.
+     * @return {@code true} if an improving chain was applied.
+     */
+    private boolean improveChain(int t1, int t2) {
+        double removed = cities.distance(t1, t2);
+        int alternatives = collectFirstLevel(t1, t2, removed);
+        for (int i = 0; i < alternatives; i++) {
+            if (extendChain(t1, t2, firstLevelT3[i], removed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the most promising first added edges from {@code t2}, ordered by
+     * the gain after also removing the edge at {@code t3}.
+     *
+     * @param t1      The fixed end of the first removed edge.
+     * @param t2      The free end of the first removed edge.
+     * @param removed The length of the first removed edge.
+     * @return The number of alternatives collected.
+     */
+    private int collectFirstLevel(int t1, int t2, double removed) {
+        int count = 0;
+        for (int r = 0; r < candidates.count(t2); r++) {
+            int t3 = candidates.get(t2, r);
+            double gain = removed - cities.distance(t2, t3);
+            if (gain <= EPSILON) {
+                break;
+            }
+            int t4 = closingNeighbour(t1, t2, t3);
+            if (!isValidStep(t1, t2, t3, t4)) {
+                continue;
+            }
+            double value = gain + cities.distance(t3, t4);
+
+            // Insertion into the small sorted list of best alternatives
+            int i = count < FIRST_LEVEL_BREADTH ? count++ : FIRST_LEVEL_BREADTH;
+            while (i > 0 && firstLevelValue[i - 1] < value) {
+                if (i < FIRST_LEVEL_BREADTH) {
+                    firstLevelT3[i] = firstLevelT3[i - 1];
+                    firstLevelValue[i] = firstLevelValue[i - 1];
+                }
+                i--;
+            }
+            if (i < FIRST_LEVEL_BREADTH) {
+                firstLevelT3[i] = t3;
+                firstLevelValue[i] = value;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds a chain whose first added edge is {@code (t2, t3)}, extending it
+     * greedily, and keeps the most profitable prefix.
+     *
+     * @param t1      The fixed end of the first removed edge.
+     * @param t2      The free end of the first removed edge.
+     * @param t3      The end of the first added edge.
+     * @param removed The length of the first removed edge.
+     * @return {@code true} if an improving chain was applied.
+     */
+    private boolean extendChain(int t1, int t2, int t3, double removed) {
+        double gain = removed;
+        double bestGain = EPSILON;
+        int bestDepth = 0;
+        int depth = 0;
+
+        while (t3 >= 0) {
+            int t4 = closingNeighbour(t1, t2, t3);
+            tour.twoOptMove(t1, t2, t4, t3);
+            chainT2[depth] = t2;
+            chainT3[depth] = t3;
+            chainT4[depth] = t4;
+            depth++;
+
+            gain += cities.distance(t3, t4) - cities.distance(t2, t3);
+            double closedGain = gain - cities.distance(t4, t1);
+            if (closedGain > bestGain) {
+                bestGain = closedGain;
+                bestDepth = depth;
+            }
+            if (depth == MAX_DEPTH) {
+                break;
+            }
+            t2 = t4;
+            t3 = nextStep(t1, t2, gain, depth);
+        }
+
+        // Undo the moves beyond the most profitable depth
+        while (depth > bestDepth) {
+            depth--;
+            tour.twoOptMove(t1, chainT4[depth], chainT2[depth], chainT3[depth]);
+        }
+        if (bestDepth == 0) {
+            return false;
+        }
+        queue.push(t1);
+        for (int i = 0; i < bestDepth; i++) {
+            queue.push(chainT2[i]);
+            queue.push(chainT3[i]);
+            queue.push(chainT4[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the next added edge from the free end {@code t2}, maximizing the
+     * gain after also removing the edge at the chosen city.
+     *
+     * @param t1    The fixed end of the chain.
+     * @param t2    The free end of the chain.
+     * @param gain  The gain accumulated so far.
+     * @param depth The number of moves in the chain.
+     * @return The chosen city, or -1 if no step keeps the gain positive.
+     */
+    private int nextStep(int t1, int t2, double gain, int depth) {
+        int best = -1;
+        double bestValue = EPSILON;
+        for (int r = 0; r < candidates.count(t2); r++) {
+            int t3 = candidates.get(t2, r);
+            double remaining = gain - cities.distance(t2, t3);
+            if (remaining <= EPSILON) {
+                break;
+            }
+            int t4 = closingNeighbour(t1, t2, t3);
+            if (!isValidStep(t1, t2, t3, t4) || wasAdded(t3, t4, depth)) {
+                continue;
+            }
+            double value = remaining + cities.distance(t3, t4);
+            if (value > bestValue) {
+                bestValue = value;
+                best = t3;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the neighbour of {@code t3} whose edge must be removed for the
+     * tour to close through {@code (t1, t4)} after adding {@code (t2, t3)}.
+     *
+     * @param t1 The fixed end of the chain.
+     * @param t2 The free end of the chain.
+     * @param t3 The end of the added edge.
+     * @return The city {@code t4}.
+     */
+    private int closingNeighbour(int t1, int t2, int t3) {
+        return tour.next(t1) == t2 ? tour.prev(t3) : tour.next(t3);
+    }
+
+    /**
+     * Checks that a step does not degenerate into re-adding or removing an
+     * edge at the chain ends.
+     *
+     * @param t1 The fixed end of the chain.
+     * @param t2 The free end of the chain.
+     * @param t3 The end of the added edge.
+     * @param t4 The other end of the removed edge.
+     * @return {@code true} if the step is a proper 2-opt move.
+     */
+    private boolean isValidStep(int t1, int t2, int t3, int t4) {
+        return t3 != t1 && t4 != t2 && t3 != tour.next(t2) && t3 != tour.prev(t2);
+    }
+
+    /**
+     * Checks whether an edge was added earlier in the current chain, in which
+     * case it must not be removed again.
+     *
+     * @param a     One end of the edge.
+     * @param b     The other end of the edge.
+     * @param depth The number of moves in the chain.
+     * @return {@code true} if the edge was added by the chain.
+     */
+    private boolean wasAdded(int a, int b, int depth) {
+        for (int i = 0; i < depth; i++) {
+            int u = chainT2[i];
+            int v = chainT3[i];
+            if ((u == a && v == b) || (u == b && v == a)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,148 +1,286 @@
 package travelling_salesman;
 
 import java.util.Arrays;
-import java.util.ArrayList;
-import java.util.PriorityQueue;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.concurrent.CancellationException;
 
 /**
  * Utility class for solving the TSP using a MST-based approach.
  */
 public class SolverMST {
+    /**
+     * Instances larger than this use the near-linear {@link EuclideanMST}
+     * instead of Prim's algorithm over the complete graph.
+     */
+    private static final int EUCLIDEAN_MST_THRESHOLD = 2000;
 
     /**
      * Solves the TSP using an MST-based approach.
      *
-     * @param cities The list of cities to use in the algorithm.
-     * @return The solution to the Travelling Salesman Problem.
+     * @param cities The cities to use in the algorithm.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     */
+    public static int[] solveMST(CityStore cities) {
+        return solveMST(cities, 0);
+    }
+
+    /**
+     * Solves the TSP using an MST-based approach, rooting the tree and the walk
+     * at a given city.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param root   The index of the city to start from.
+     * @return The tour as city indices, starting and ending at the root.
      */
-    public static ArrayList<City> solveMST(ArrayList<City> cities) {
-        ArrayList<City> tour = new ArrayList<>();
-        HashSet<City> visitedCities = new HashSet<>();
+    public static int[] solveMST(CityStore cities, int root) {
+        return solveMST(cities, root, SearchLimits.UNLIMITED);
+    }
 
-        double[][] adjacencyMatrix = createAdjacencyMatrix(cities);
-        int[] parent = constructMST(adjacencyMatrix, cities.size());
+    /**
+     * Solves the TSP using an MST-based approach from a given root, giving up
+     * when the limits expire.
+     *
+     * @param cities The cities to use in the algorithm.
+     * @param root   The index of the city to start from.
+     * @param limits The limits stopping the construction.
+     * @return The tour as city indices, starting and ending at the root.
+     * @throws CancellationException if the limits expire.
+     */
+    public static int[] solveMST(CityStore cities, int root, SearchLimits limits) {
+        int[] parent = minimumSpanningTree(cities, root, limits);
 
         // Perform a preorder walk to create the initial TSP route
-        boolean[] visited = new boolean[cities.size()];
-        ArrayList<City> initialRoute = new ArrayList<>();
-        preorderWalk(0, visited, initialRoute, cities, parent);
+        int[] initialRoute = preorderWalk(root, parent);
 
         // Apply shortcutting to ensure each city is visited only once
-        tour = applyShortcutting(initialRoute, tour, visitedCities);
-
-        tour.add(cities.get(0));
-
-        return tour;
-
+        return applyShortcutting(initialRoute, cities.size());
     }
 
     /**
-     * Creates an adjacency matrix for the given list of cities, representing the
-     * graph.
-     * 
-     * @param cities The list of cities.
-     * @return The adjacency matrix representing distances between cities.
+     * Builds the minimum spanning tree of the cities, with Prim's algorithm
+     * for small instances and {@link EuclideanMST} for large ones.
+     *
+     * @param cities The cities to connect.
+     * @param root   The city to root the tree at.
+     * @param limits The limits stopping the construction.
+     * @return The parent of every city in the tree, -1 for the root.
+     * @throws CancellationException if the limits expire.
      */
-    private static double[][] createAdjacencyMatrix(ArrayList<City> cities) {
-        int n = cities.size();
-        double[][] adjacencyMatrix = new double[n][n];
-
-        // Fill the adjacency matrix with distances between each pair of cities
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i != j) {
-                    adjacencyMatrix[i][j] = cities.get(i).distanceTo(cities.get(j));
-                }
-            }
+    static int[] minimumSpanningTree(CityStore cities, int root, SearchLimits limits) {
+        if (cities.size() > EUCLIDEAN_MST_THRESHOLD) {
+            return EuclideanMST.parents(cities, root, limits);
         }
-        return adjacencyMatrix;
+        return constructMST(DistanceProviders.forCities(cities), cities.size(), root, limits);
     }
 
     /**
      * Constructs a Minimum Spanning Tree (MST) using Prim's algorithm.
      * 
-     * @param adjacencyMatrix The adjacency matrix of the graph.
-     * @param n               The number of vertices (cities) in the graph.
+     * @param distances The edge lengths of the complete graph.
+     * @param n         The number of vertices (cities) in the graph.
+     * @param root      The vertex to grow the tree from.
+     * @param limits    The limits stopping the construction.
      * @return An array representing the MST. Each index represents a vertex, and
      *         its value is the parent vertex in the MST.
+     * @throws CancellationException if the limits expire.
      */
-    private static int[] constructMST(double[][] adjacencyMatrix, int n) {
+    private static int[] constructMST(DistanceProvider distances, int n, int root, SearchLimits limits) {
         int[] parent = new int[n];
-        double[] key = new double[n];
         boolean[] mstSet = new boolean[n];
-
-        // Custom comparator for the priority queue based on the key values
-        Comparator<Integer> comparator = (index1, index2) -> Double.compare(key[index1], key[index2]);
-        PriorityQueue<Integer> pq = new PriorityQueue<>(n, comparator);
+        IndexedMinHeap pq = new IndexedMinHeap(n);
 
         // Initialize all keys as infinite and add all vertices to the priority queue
-        Arrays.fill(key, Double.MAX_VALUE);
         for (int i = 0; i < n; i++) {
-            pq.add(i);
+            if (i != root) {
+                pq.insertOrDecrease(i, Double.MAX_VALUE);
+            }
         }
-        key[0] = 0;
-        parent[0] = -1;
+        pq.insertOrDecrease(root, 0);
+        parent[root] = -1;
 
         // Prim's algorithm to construct the MST
+        long distanceEvaluations = 0;
+        double[] row = new double[n];
         while (!pq.isEmpty()) {
-            int u = pq.poll();
+            if (limits.isExpired()) {
+                throw new CancellationException("Spanning tree construction was cancelled");
+            }
+            int u = pq.pollMin();
             mstSet[u] = true;
 
-            // Update the key and parent of adjacent vertices
+            // Update the key and parent of adjacent vertices from the whole row
+            distances.distancesFrom(u, row);
+            distanceEvaluations += n;
             for (int v = 0; v < n; v++) {
-                if (adjacencyMatrix[u][v] != 0 && !mstSet[v] && adjacencyMatrix[u][v] < key[v]) {
+                if (mstSet[v]) {
+                    continue;
+                }
+                double weight = row[v];
+                if (weight != 0 && weight < pq.keyOf(v)) {
                     parent[v] = u;
-                    key[v] = adjacencyMatrix[u][v];
-                    // Refresh the priority queue
-                    pq.remove(v);
-                    pq.add(v);
+                    pq.insertOrDecrease(v, weight);
                 }
             }
         }
+        SolverMetrics.count(SolverMetrics.Counter.DISTANCE_EVALUATIONS, distanceEvaluations);
+        SolverMetrics.count(SolverMetrics.Counter.HEAP_OPERATIONS, pq.getOperations());
         return parent;
     }
 
     /**
      * Performs a preorder walk of the MST to create an initial TSP route.
+     * Children are visited in increasing index order. The walk uses a compact
+     * child adjacency built from the parent array and an explicit stack, so it
+     * runs in linear time and does not recurse on long chains.
      * 
-     * @param currentNode The current node in the walk.
-     * @param visited     An array to track visited cities.
-     * @param route       The current route being constructed.
-     * @param cities      The list of cities.
-     * @param parent      An array representing the MST.
+     * @param root   The node to start the walk at.
+     * @param parent An array representing the MST.
+     * @return The cities in preorder.
      */
-    private static void preorderWalk(int currentNode, boolean[] visited, ArrayList<City> route, ArrayList<City> cities,
-            int[] parent) {
-        visited[currentNode] = true;
-        route.add(cities.get(currentNode));
-
-        // Recursively visit all children of the current node in the MST
-        for (int i = 0; i < cities.size(); i++) {
-            if (parent[i] == currentNode && !visited[i]) {
-                preorderWalk(i, visited, route, cities, parent);
+    private static int[] preorderWalk(int root, int[] parent) {
+        int n = parent.length;
+
+        // Children of node u are children[childStart[u]] .. children[childStart[u + 1] - 1]
+        int[] childStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= 0 && i != root) {
+                childStart[parent[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[childStart[n]];
+        int[] fill = new int[n];
+        System.arraycopy(childStart, 0, fill, 0, n);
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= 0 && i != root) {
+                children[fill[parent[i]]++] = i;
+            }
+        }
+
+        int[] route = new int[n];
+        int routeSize = 0;
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (visited[node]) {
+                continue;
+            }
+            visited[node] = true;
+            route[routeSize++] = node;
+
+            // Push children in reverse so the smallest index is visited first
+            for (int k = childStart[node + 1] - 1; k >= childStart[node]; k--) {
+                if (!visited[children[k]]) {
+                    stack[top++] = children[k];
+                }
             }
         }
+        return routeSize == n ? route : Arrays.copyOf(route, routeSize);
     }
 
     /**
-     * Applies shortcutting to the route, ensuring each city is visited only once.
+     * Applies shortcutting to the route, ensuring each city is visited only once,
+     * and closes the tour by returning to the first city.
      * 
      * @param route The initial route generated by the preorder walk.
-     * @return The optimized route after shortcutting.
+     * @param n     The number of cities.
+     * @return The closed route after shortcutting.
      */
-    private static ArrayList<City> applyShortcutting(ArrayList<City> route, ArrayList<City> shortcutRoute,
-            HashSet<City> visitedCities) {
+    private static int[] applyShortcutting(int[] route, int n) {
+        Tour tour = new Tour(n);
 
         // Add cities to the route, skipping already visited ones
-        for (City city : route) {
-            if (!visitedCities.contains(city)) {
-                visitedCities.add(city);
-                shortcutRoute.add(city);
+        for (int city : route) {
+            if (!tour.contains(city)) {
+                tour.append(city);
+            }
+        }
+
+        return tour.toClosedPath(route[0]);
+    }
+
+    /**
+     * A minimum spanning tree that tours can be walked from any root, so that
+     * constructions from several start cities build the tree only once.
+     */
+    static class SpanningTree {
+        private final int[] neighbourStart;
+        private final int[] neighbours;
+
+        /**
+         * Builds the minimum spanning tree of the cities and its undirected
+         * adjacency.
+         *
+         * @param cities The cities to connect.
+         * @param limits The limits stopping the construction.
+         * @throws CancellationException if the limits expire.
+         */
+        SpanningTree(CityStore cities, SearchLimits limits) {
+            int n = cities.size();
+            int[] parent = minimumSpanningTree(cities, 0, limits);
+
+            // Neighbours of node u are neighbours[neighbourStart[u]] .. neighbours[neighbourStart[u + 1] - 1]
+            neighbourStart = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    neighbourStart[i + 1]++;
+                    neighbourStart[parent[i] + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                neighbourStart[i + 1] += neighbourStart[i];
+            }
+            neighbours = new int[neighbourStart[n]];
+            int[] fill = Arrays.copyOf(neighbourStart, n);
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    neighbours[fill[i]++] = parent[i];
+                    neighbours[fill[parent[i]]++] = i;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                Arrays.sort(neighbours, neighbourStart[i], neighbourStart[i + 1]);
             }
         }
 
-        return shortcutRoute;
+        /**
+         * Walks the tree in preorder from a root, visiting children in
+         * increasing index order as {@link SolverMST#solveMST(CityStore, int)}
+         * does, and closes the tour.
+         *
+         * @param root The index of the city to start from.
+         * @return The tour as city indices, starting and ending at the root.
+         */
+        int[] tour(int root) {
+            int n = neighbourStart.length - 1;
+            int[] route = new int[n + 1];
+            int routeSize = 0;
+            boolean[] visited = new boolean[n];
+            int[] stack = new int[Math.max(n, 1)];
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                if (visited[node]) {
+                    continue;
+                }
+                visited[node] = true;
+                route[routeSize++] = node;
+
+                // Push neighbours in reverse so the smallest index is visited first
+                for (int k = neighbourStart[node + 1] - 1; k >= neighbourStart[node]; k--) {
+                    if (!visited[neighbours[k]]) {
+                        stack[top++] = neighbours[k];
+                    }
+                }
+            }
+            route[routeSize] = root;
+            return route;
+        }
     }
 }
@@ -0,0 +1,320 @@
+package travelling_salesman;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-phase timings, work counters and memory use of one solver run.
+ * <p>
+ * A run is started on a thread with {@link #start(String)} and becomes that
+ * thread's current run until {@link #finish(MetricsSink)}. Code on the hot
+ * paths counts work in local variables and reports the totals once per call
+ * through {@link #count(Counter, long)}, which does nothing while no run is
+ * active. Phases are timed with {@link #phase(Phase)}, which also emits a
+ * {@link SolverPhaseEvent} to Flight Recorder whether or not a run is active.
+ * <p>
+ * Allocated bytes are those of the thread that started the run. The peak heap
+ * is that of the whole process, so runs overlapping in time share it. Work
+ * done on the worker threads of a multi-start run is timed but not counted.
+ */
+public class SolverMetrics {
+    /**
+     * Phases of a solver run. The distance build happens inside the
+     * construction and is included in its time.
+     */
+    public enum Phase {
+        PARSE, DISTANCE_BUILD, CONSTRUCTION, IMPROVEMENT, EVALUATION
+    }
+
+    /**
+     * Work counters of a solver run.
+     */
+    public enum Counter {
+        DISTANCE_EVALUATIONS, HEAP_OPERATIONS, IMPROVING_MOVES
+    }
+
+    private static final ThreadLocal<SolverMetrics> CURRENT = new ThreadLocal<>();
+
+    private final String run;
+    private final SolverRunEvent event = new SolverRunEvent();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final long startAllocatedBytes;
+    private String solver = "";
+    private int cities;
+    private long allocatedBytes = -1;
+    private long peakHeapBytes;
+
+    /**
+     * Constructs a run starting now.
+     *
+     * @param run The label of the run, such as the instance file.
+     */
+    private SolverMetrics(String run) {
+        this.run = run;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+        this.startAllocatedBytes = currentThreadAllocatedBytes();
+        event.begin();
+    }
+
+    /**
+     * Starts a run on the current thread.
+     *
+     * @param run The label of the run, such as the instance file.
+     * @return The metrics of the new run.
+     */
+    public static SolverMetrics start(String run) {
+        SolverMetrics metrics = new SolverMetrics(run);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Returns the run active on the current thread.
+     *
+     * @return The metrics of the run, or {@code null} if none is active.
+     */
+    public static SolverMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Adds to a counter of the run active on the current thread, if any.
+     *
+     * @param counter The counter.
+     * @param amount  The amount to add.
+     */
+    public static void count(Counter counter, long amount) {
+        SolverMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.counters.addAndGet(counter.ordinal(), amount);
+        }
+    }
+
+    /**
+     * Starts timing a phase. Close the returned scope when the phase ends,
+     * preferably with a try-with-resources statement. The scope is never
+     * referenced in the body of such a statement, so the enclosing method is
+     * annotated with {@code @SuppressWarnings("try")}.
+     *
+     * @param phase The phase.
+     * @return The open phase scope.
+     */
+    public static PhaseScope phase(Phase phase) {
+        return new PhaseScope(phase, CURRENT.get());
+    }
+
+    /**
+     * Sets the solver and instance size of the run.
+     *
+     * @param solver The solver name.
+     * @param cities The number of cities.
+     */
+    public void setSolver(String solver, int cities) {
+        this.solver = solver;
+        this.cities = cities;
+    }
+
+    /**
+     * Ends the run, commits its Flight Recorder event and hands it to a sink.
+     * Must be called on the thread that started the run.
+     *
+     * @param sink The sink receiving the metrics, or {@code null}.
+     */
+    public void finish(MetricsSink sink) {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        long endAllocatedBytes = currentThreadAllocatedBytes();
+        allocatedBytes = startAllocatedBytes < 0 || endAllocatedBytes < 0 ? -1
+                : endAllocatedBytes - startAllocatedBytes;
+        peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.run = run;
+            event.solver = solver;
+            event.cities = cities;
+            event.distanceEvaluations = getCounter(Counter.DISTANCE_EVALUATIONS);
+            event.heapOperations = getCounter(Counter.HEAP_OPERATIONS);
+            event.improvingMoves = getCounter(Counter.IMPROVING_MOVES);
+            event.allocatedBytes = allocatedBytes;
+            event.peakHeapBytes = peakHeapBytes;
+            event.commit();
+        }
+        if (sink != null) {
+            sink.record(this);
+        }
+    }
+
+    /**
+     * Returns the label of the run.
+     *
+     * @return The run label.
+     */
+    public String getRun() {
+        return run;
+    }
+
+    /**
+     * Returns the solver name.
+     *
+     * @return The solver name, empty if not set.
+     */
+    public String getSolver() {
+        return solver;
+    }
+
+    /**
+     * Returns the time spent in a phase.
+     *
+     * @param phase The phase.
+     * @return The time in nanoseconds.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter The counter.
+     * @return The counter value.
+     */
+    public long getCounter(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * Returns the bytes allocated by the thread running the solver.
+     *
+     * @return The allocated bytes, -1 if the JVM does not measure them.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the peak heap use of the process during the run.
+     *
+     * @return The peak heap use in bytes.
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * Formats the metrics as readable lines.
+     *
+     * @return The formatted metrics.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder("Metrics for " + run + (solver.isEmpty() ? "" : " (" + solver + ")"));
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format(Locale.ROOT, "%n  %s: %.3f ms", name(phase), getPhaseNanos(phase) / 1e6));
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(String.format(Locale.ROOT, "%n  %s: %d", name(counter), getCounter(counter)));
+        }
+        sb.append(String.format(Locale.ROOT, "%n  allocated_bytes: %d%n  peak_heap_bytes: %d", allocatedBytes,
+                peakHeapBytes));
+        return sb.toString();
+    }
+
+    /**
+     * Formats the metrics as a single-line JSON object.
+     *
+     * @return The JSON object.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"run\": ").append(BatchRunner.jsonString(run));
+        sb.append(", \"solver\": ").append(BatchRunner.jsonString(solver));
+        sb.append(", \"cities\": ").append(cities);
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format(Locale.ROOT, ", \"%s_ms\": %.3f", name(phase), getPhaseNanos(phase) / 1e6));
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(", \"").append(name(counter)).append("\": ").append(getCounter(counter));
+        }
+        sb.append(", \"allocated_bytes\": ").append(allocatedBytes);
+        sb.append(", \"peak_heap_bytes\": ").append(peakHeapBytes).append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Returns the lower-case name of an enum constant.
+     *
+     * @param value The enum constant.
+     * @return The lower-case name.
+     */
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread.
+     *
+     * @return The allocated bytes, -1 if the JVM does not measure them.
+     */
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+            if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled()) {
+                return allocation.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An open phase, adding its duration to the run it was started in.
+     */
+    public static class PhaseScope implements AutoCloseable {
+        private final Phase phase;
+        private final SolverMetrics metrics;
+        private final SolverPhaseEvent event = new SolverPhaseEvent();
+        private final long startNanos = System.nanoTime();
+
+        /**
+         * Opens a phase.
+         *
+         * @param phase   The phase.
+         * @param metrics The run to add the duration to, or {@code null}.
+         */
+        private PhaseScope(Phase phase, SolverMetrics metrics) {
+            this.phase = phase;
+            this.metrics = metrics;
+            event.begin();
+        }
+
+        /**
+         * Closes the phase, recording its duration.
+         */
+        @Override
+        public void close() {
+            if (metrics != null) {
+                metrics.phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.run = metrics != null ? metrics.run : "";
+                event.phase = name(phase);
+                event.commit();
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package travelling_salesman;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.concurrent.CancellationException;
 
 /**
  * Utility class for solving the TSP using the Nearest Neighbour algorithm.
@@ -9,55 +8,80 @@ import java.util.HashSet;
 public class SolverNN {
     /**
      * Solves the TSP using the Nearest Neighbour algorithm.
+     * <p>
+     * Unvisited cities are kept in a {@link KdTree}; visiting a city removes it
+     * from the tree, so each step is a nearest point query instead of a scan
+     * over all cities.
      *
-     * @param cities The list of cities to use in the algorithm.
-     * @return The solution to the Travelling Salesman Problem.
+     * @param cities The cities to use in the algorithm.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
      */
-    public static ArrayList<City> solveNearestNeighbour(ArrayList<City> cities) {
-        ArrayList<City> tour = new ArrayList<>();
-        HashSet<Integer> visitedCities = new HashSet<>();
-
-        // Start from the first city
-        City currentCity = cities.get(0);
-        tour.add(currentCity);
-        visitedCities.add(currentCity.getNumber());
-
-        // Iterate until all cities are visited
-        while (tour.size() < cities.size()) {
-            City nearestCity = findNearestCity(currentCity, visitedCities, cities);
-
-            tour.add(nearestCity);
-            visitedCities.add(nearestCity.getNumber());
-            currentCity = nearestCity;
-        }
+    public static int[] solveNearestNeighbour(CityStore cities) {
+        return solveNearestNeighbour(cities, 0);
+    }
 
-        // Return to the starting city to complete the tour
-        tour.add(cities.get(0));
-        return tour;
+    /**
+     * Solves the TSP using the Nearest Neighbour algorithm from a given city.
+     *
+     * @param cities    The cities to use in the algorithm.
+     * @param startCity The index of the city to start from.
+     * @return The tour as city indices, starting and ending at the start city.
+     */
+    public static int[] solveNearestNeighbour(CityStore cities, int startCity) {
+        return solveNearestNeighbour(cities, startCity, SearchLimits.UNLIMITED);
     }
 
     /**
-     * Finds the nearest unvisited city to the current city.
+     * Solves the TSP using the Nearest Neighbour algorithm from a given city,
+     * within limits. When the limits expire, the cities not yet visited follow
+     * in index order, so a valid tour is still returned at once.
      *
-     * @param currentCity   The current city.
-     * @param visitedCities The set of visited cities.
-     * @param cities        The list of cities to search.
-     * @return The nearest unvisited city to the current city.
+     * @param cities    The cities to use in the algorithm.
+     * @param startCity The index of the city to start from.
+     * @param limits    The limits stopping the search for nearest cities.
+     * @return The tour as city indices, starting and ending at the start city.
      */
-    private static City findNearestCity(City currentCity, HashSet<Integer> visitedCities, ArrayList<City> cities) {
-        City nearestCity = null;
-        double minDistance = Double.MAX_VALUE;
-
-        // Find the nearest unvisited city
-        for (City city : cities) {
-            if (!visitedCities.contains(city.getNumber())) {
-                double distance = currentCity.distanceTo(city);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    nearestCity = city;
+    public static int[] solveNearestNeighbour(CityStore cities, int startCity, SearchLimits limits) {
+        int n = cities.size();
+        Tour tour = new Tour(n);
+
+        // Start from the given city
+        int currentCity = startCity;
+        tour.append(currentCity);
+
+        KdTree unvisitedCities = null;
+        try {
+            unvisitedCities = new KdTree(cities, limits);
+        } catch (CancellationException e) {
+            // No time left to index the cities
+        }
+        if (unvisitedCities != null) {
+            unvisitedCities.remove(currentCity);
+
+            // Iterate until all cities are visited
+            for (int step = 1; step < n; step++) {
+                if ((step & 1023) == 0 && limits.isExpired()) {
+                    break;
+                }
+                int nearestCity = unvisitedCities.nearest(currentCity);
+
+                tour.append(nearestCity);
+                unvisitedCities.remove(nearestCity);
+                currentCity = nearestCity;
+            }
+        }
+
+        // Cities not reached before the limits expired follow in index order
+        if (tour.size() < n) {
+            for (int city = 0; city < n; city++) {
+                if (!tour.contains(city)) {
+                    tour.append(city);
                 }
             }
         }
-        return nearestCity;
+
+        // Return to the starting city to complete the tour
+        return tour.toClosedPath(startCity);
     }
 }
@@ -0,0 +1,21 @@
+package travelling_salesman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning one phase of a solver run.
+ */
+@Name("travelling_salesman.SolverPhase")
+@Label("Solver Phase")
+@Category("Travelling Salesman")
+@Description("Parsing, distance building, construction, improvement or evaluation")
+public class SolverPhaseEvent extends jdk.jfr.Event {
+    @Label("Run")
+    String run;
+
+    @Label("Phase")
+    String phase;
+}
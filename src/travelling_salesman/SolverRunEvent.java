@@ -0,0 +1,42 @@
+package travelling_salesman;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning a whole solver run, with its counters.
+ */
+@Name("travelling_salesman.SolverRun")
+@Label("Solver Run")
+@Category("Travelling Salesman")
+@Description("A solver run with its work counters and memory use")
+public class SolverRunEvent extends jdk.jfr.Event {
+    @Label("Run")
+    String run;
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Cities")
+    int cities;
+
+    @Label("Distance Evaluations")
+    long distanceEvaluations;
+
+    @Label("Heap Operations")
+    long heapOperations;
+
+    @Label("Improving Moves")
+    long improvingMoves;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Peak Heap")
+    @DataAmount
+    long peakHeapBytes;
+}
@@ -0,0 +1,466 @@
+package travelling_salesman;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resident solver service answering HTTP requests on the loopback interface.
+ * <p>
+ * {@code POST /solve} takes an instance in the text file format as the request
+ * body and answers with the tour as JSON. The query string selects the solver
+ * and its settings, for example
+ * {@code /solve?solver=mst&improve=true&deadline=500}. {@code GET /status}
+ * reports the load of the service.
+ * <p>
+ * Requests are read on a few connection threads and queued onto a bounded pool
+ * of solver threads, so slow solves never hold up the connections. When the
+ * queue is full the request is refused with status 503 straight away instead
+ * of waiting. A request with a deadline is answered with the best tour found
+ * by then, see {@link AnytimeSolver}, or with status 504 if it was still
+ * waiting in the queue. Every connection thread reads request bodies into a
+ * buffer it keeps for its next request, so steady traffic of similar
+ * instances does not allocate a new body buffer per request. The solvers
+ * themselves are not pooled: each solve allocates its own distance,
+ * candidate and tour arrays, which are short-lived and proportional to the
+ * instance, and are reclaimed cheaply by the young generation.
+ */
+public class SolverServer {
+    /**
+     * Largest accepted request body, in bytes.
+     */
+    private static final int MAX_BODY_BYTES = 256 << 20;
+
+    /**
+     * Largest request body buffer a connection thread keeps for its next
+     * request, in bytes.
+     */
+    private static final int MAX_RETAINED_BODY_BYTES = 16 << 20;
+
+    /**
+     * The request body buffer of every connection thread.
+     */
+    private static final ThreadLocal<byte[]> BODY_BUFFERS = ThreadLocal.withInitial(() -> new byte[64 << 10]);
+
+    /**
+     * Number of cities in the instance used to warm up the solvers.
+     */
+    private static final int WARMUP_CITIES = 500;
+
+    /**
+     * Number of cities in the instance used to warm up the exact solver.
+     */
+    private static final int EXACT_WARMUP_CITIES = 20;
+
+    private final SolveOptions defaults;
+    private final long defaultDeadlineMillis;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private HttpServer server;
+
+    /**
+     * Constructs a stopped server.
+     *
+     * @param defaults              The solver settings used unless a request
+     *                              overrides them.
+     * @param workerCount           The number of solver threads.
+     * @param queueCapacity         The number of requests that may wait for a
+     *                              solver thread.
+     * @param defaultDeadlineMillis The deadline of requests that do not give
+     *                              one, in milliseconds, 0 for none.
+     */
+    public SolverServer(SolveOptions defaults, int workerCount, int queueCapacity, long defaultDeadlineMillis) {
+        this.defaults = defaults;
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+        workerCount = Math.max(1, workerCount);
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> new Thread(runnable, "solver-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.workers.prestartAllCoreThreads();
+        this.connections = Executors.newFixedThreadPool(Math.max(2, workerCount / 2),
+                runnable -> new Thread(runnable, "solver-connection"));
+        ScheduledThreadPoolExecutor deadlineTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "solver-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Requests finishing before their deadline remove their expiry at once
+        deadlineTimer.setRemoveOnCancelPolicy(true);
+        this.timer = deadlineTimer;
+    }
+
+    /**
+     * Runs every solver a few times on a generated instance so that the first
+     * requests do not pay for class loading and just-in-time compilation.
+     */
+    public void warmUp() {
+        CityStore cities = InstanceGenerator.uniform(WARMUP_CITIES, 1);
+        CityStore smallCities = InstanceGenerator.uniform(EXACT_WARMUP_CITIES, 1);
+        SolveOptions options = new SolveOptions();
+        options.setThreads(1);
+        options.setImprove(true);
+        options.setTimeLimitMillis(200);
+        for (int round = 0; round < 3; round++) {
+            for (String solver : Solvers.NAMES) {
+                Solvers.solve(solver, solver.equals("exact") ? smallCities : cities, options);
+            }
+        }
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port The port to listen on, 0 for any free port.
+     * @return The port the server listens on.
+     * @throws IOException if the port cannot be bound.
+     */
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/status", this::handleStatus);
+        server.setExecutor(connections);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and shuts the thread pools down. Requests that
+     * are still queued are abandoned.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        workers.shutdownNow();
+        connections.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Handles {@code POST /solve}: reads the instance and queues it.
+     *
+     * @param exchange The HTTP exchange.
+     */
+    private void handleSolve(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, error("Use POST with the instance as the request body"));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String solver = query.getOrDefault("solver", "nn");
+            if (!Solvers.NAMES.contains(solver)) {
+                respond(exchange, 400, error("Unknown solver: " + solver));
+                return;
+            }
+            SolveOptions options;
+            long deadlineMillis;
+            try {
+                options = requestOptions(query);
+                deadlineMillis = Long.parseLong(query.getOrDefault("deadline", Long.toString(defaultDeadlineMillis)));
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, error("Invalid number in query: " + e.getMessage()));
+                return;
+            }
+
+            CityStore cities = readCities(exchange.getRequestBody());
+            if (cities == null) {
+                respond(exchange, 413, error("Instance larger than " + MAX_BODY_BYTES + " bytes"));
+                return;
+            }
+            if (cities.size() == 0) {
+                respond(exchange, 400, error("No cities found in the request"));
+                return;
+            }
+            if (solver.equals("exact") && cities.size() > SolverExact.MAX_CITIES) {
+                respond(exchange, 400, error("The exact solver supports at most " + SolverExact.MAX_CITIES + " cities"));
+                return;
+            }
+
+            submit(exchange, solver, cities, options, deadlineMillis);
+        } catch (IOException | RuntimeException e) {
+            respond(exchange, 500, error(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Queues a solve. A request with a deadline is solved as an anytime search
+     * that answers with the best tour found by the deadline; if it is still
+     * queued when the deadline passes, it is answered with status 504 instead.
+     *
+     * @param exchange       The HTTP exchange to answer.
+     * @param solver         The solver name.
+     * @param cities         The cities to solve.
+     * @param options        The solver settings.
+     * @param deadlineMillis The deadline in milliseconds from now, 0 for none.
+     */
+    private void submit(HttpExchange exchange, String solver, CityStore cities, SolveOptions options,
+            long deadlineMillis) {
+        long received = System.nanoTime();
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicReference<ScheduledFuture<?>> expiry = new AtomicReference<>();
+        CancellationToken token = new CancellationToken();
+        Future<?> task;
+        try {
+            task = workers.submit(() -> {
+                long remaining = deadlineMillis - (System.nanoTime() - received) / 1_000_000;
+                if ((deadlineMillis > 0 && remaining <= 0) || !claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                MetricsSink sink = options.getMetricsSink();
+                SolverMetrics metrics = sink != null ? SolverMetrics.start(exchange.getRequestURI().toString()) : null;
+                String response = null;
+                int status = 500;
+                try {
+                    long start = System.nanoTime();
+                    int[] solution = deadlineMillis > 0
+                            ? AnytimeSolver.solve(solver, cities, options, remaining, token, null)
+                            : Solvers.solve(solver, cities, options);
+                    response = solution(solver, cities, solution, System.nanoTime() - start);
+                    status = 200;
+                } catch (RuntimeException e) {
+                    response = error(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+                } finally {
+                    // Errors propagate to the pool, but the client still gets an answer
+                    if (response == null) {
+                        response = error("Internal error");
+                    }
+                    finished.set(true);
+                    ScheduledFuture<?> timeout = expiry.get();
+                    if (timeout != null) {
+                        timeout.cancel(false);
+                    }
+                    if (metrics != null) {
+                        metrics.setSolver(solver, cities.size());
+                        metrics.finish(sink);
+                    }
+                    completed.incrementAndGet();
+                    respond(exchange, status, response);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("Solver queue is full"));
+            return;
+        }
+
+        if (deadlineMillis > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                // A running search stops and answers with its best tour
+                token.cancel();
+                if (claimed.compareAndSet(false, true)) {
+                    expired.incrementAndGet();
+                    task.cancel(false);
+                    respond(exchange, 504, error("Deadline of " + deadlineMillis + " ms passed in the queue"));
+                }
+            }, deadlineMillis, TimeUnit.MILLISECONDS);
+            // Whichever of this and the worker comes second cancels the expiry
+            expiry.set(timeout);
+            if (finished.get()) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Handles {@code GET /status}: reports the pool load and request counts,
+     * and the result cache counts if results are cached.
+     *
+     * @param exchange The HTTP exchange.
+     */
+    private void handleStatus(HttpExchange exchange) {
+        String body = "{\"workers\": " + workers.getCorePoolSize()
+                + ", \"active\": " + workers.getActiveCount()
+                + ", \"queued\": " + workers.getQueue().size()
+                + ", \"capacity\": " + (workers.getQueue().size() + workers.getQueue().remainingCapacity())
+                + ", \"completed\": " + completed.get()
+                + ", \"rejected\": " + rejected.get()
+                + ", \"expired\": " + expired.get();
+        ResultCache cache = defaults.getResultCache();
+        if (cache != null) {
+            body += ", \"cache_hits\": " + cache.getHits()
+                    + ", \"cache_warm_starts\": " + cache.getWarmStarts()
+                    + ", \"cache_misses\": " + cache.getMisses();
+        }
+        body += "}";
+        respond(exchange, 200, body);
+    }
+
+    /**
+     * Creates the settings of a request from the server defaults and the
+     * query parameters {@code improve}, {@code time-limit},
+     * {@code dijkstra-neighbours}, {@code starts}, {@code threads},
+     * {@code partition-size} and {@code target-gap} (in percent). Multi-start
+     * and partitioned runs use a single thread unless {@code threads} is
+     * given, as the requests already share the solver threads, and never more
+     * threads than there are cores.
+     *
+     * @param query The query parameters.
+     * @return The settings of the request.
+     * @throws NumberFormatException if a numeric parameter is invalid.
+     */
+    private SolveOptions requestOptions(Map<String, String> query) {
+        SolveOptions options = new SolveOptions(defaults);
+        options.setThreads(1);
+        if (query.containsKey("improve")) {
+            options.setImprove(!query.get("improve").equals("false"));
+        }
+        if (query.containsKey("time-limit")) {
+            options.setTimeLimitMillis(Long.parseLong(query.get("time-limit")));
+        }
+        if (query.containsKey("dijkstra-neighbours")) {
+            options.setDijkstraNeighbours(Integer.parseInt(query.get("dijkstra-neighbours")));
+        }
+        if (query.containsKey("starts")) {
+            options.setStarts(Integer.parseInt(query.get("starts")));
+        }
+        if (query.containsKey("threads")) {
+            int threads = Integer.parseInt(query.get("threads"));
+            options.setThreads(Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors())));
+        }
+        if (query.containsKey("partition-size")) {
+            options.setPartitionSize(Integer.parseInt(query.get("partition-size")));
+        }
+        if (query.containsKey("target-gap")) {
+            options.setTargetGap(Double.parseDouble(query.get("target-gap")) / 100);
+        }
+        return options;
+    }
+
+    /**
+     * Splits a raw query string into decoded parameters.
+     *
+     * @param rawQuery The raw query string, or {@code null}.
+     * @return The parameters; a parameter without a value maps to an empty
+     *         string.
+     * @throws UnsupportedEncodingException if UTF-8 is not supported.
+     */
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads the request body into the buffer of the connection thread and
+     * parses the cities in it. A buffer grown for a large body is kept for
+     * the next request up to {@link #MAX_RETAINED_BODY_BYTES}.
+     *
+     * @param in The request body stream.
+     * @return The cities, or {@code null} if the body exceeds
+     *         {@link #MAX_BODY_BYTES}.
+     * @throws IOException if the body cannot be read.
+     */
+    private static CityStore readCities(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            byte[] buffer = BODY_BUFFERS.get();
+            int filled = 0;
+            int read;
+            while ((read = body.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += read;
+                if (filled == buffer.length) {
+                    if (buffer.length >= MAX_BODY_BYTES) {
+                        return null;
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_BODY_BYTES + 1));
+                    if (buffer.length <= MAX_RETAINED_BODY_BYTES) {
+                        BODY_BUFFERS.set(buffer);
+                    }
+                }
+            }
+            return CityFileReader.parseCityStore(buffer, filled);
+        }
+    }
+
+    /**
+     * Formats a solved tour as a JSON object.
+     *
+     * @param solver   The solver name.
+     * @param cities   The cities the solution refers to.
+     * @param solution The city indices in the solution.
+     * @param nanos    The solve time in nanoseconds.
+     * @return The JSON object.
+     */
+    @SuppressWarnings("try")
+    private static String solution(String solver, CityStore cities, int[] solution, long nanos) {
+        double length;
+        try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.EVALUATION)) {
+            length = UserInterface.calculateTotalDistance(cities, solution);
+        }
+        return "{\"solver\": " + BatchRunner.jsonString(solver)
+                + ", \"cities\": " + cities.size()
+                + ", \"length\": " + length
+                + ", \"solve_ms\": " + nanos / 1e6
+                + ", \"tour\": [" + BatchRunner.formatTour(cities, solution, ',') + "]}";
+    }
+
+    /**
+     * Formats an error message as a JSON object.
+     *
+     * @param message The error message.
+     * @return The JSON object.
+     */
+    private static String error(String message) {
+        return "{\"error\": " + BatchRunner.jsonString(message) + "}";
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange. Failures to write, such
+     * as a client that has gone away, are ignored.
+     *
+     * @param exchange The HTTP exchange.
+     * @param status   The HTTP status code.
+     * @param body     The JSON response body.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The client is no longer waiting for the answer
+        } finally {
+            exchange.close();
+        }
+    }
+}
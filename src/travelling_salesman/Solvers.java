@@ -0,0 +1,191 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Utility class for running a solver selected by name.
+ */
+public class Solvers {
+    /**
+     * Names of the available solvers.
+     */
+    public static final List<String> NAMES = Arrays.asList("nn", "dijkstra", "mst", "lk", "hilbert", "exact",
+            "christofides");
+
+    /**
+     * Minimum time between two checks of the target gap during improvement.
+     */
+    private static final long GAP_CHECK_INTERVAL_MILLIS = 100;
+
+    /**
+     * Runs a solver, followed by the improvement stage if requested. With a
+     * {@link ResultCache}, cached tours are returned without solving.
+     * Instances larger than {@link SolveOptions#getPartitionSize()} are solved
+     * region by region with {@link PartitionedSolver}. With a target gap, a
+     * Held-Karp lower bound is computed in parallel with the solver and the
+     * improvement stops once the tour is within the gap; multi-start runs also
+     * skip their remaining start cities. Once the
+     * {@link SolveOptions#getCancellation() cancellation token} is cancelled,
+     * the construction gives up and the improvement returns at once.
+     *
+     * @param name    The solver name, one of {@link #NAMES}.
+     * @param cities  The cities to use in the algorithm.
+     * @param options The solver settings.
+     * @return The tour as city indices, with the starting city repeated at the
+     *         end.
+     * @throws IllegalArgumentException if the solver name is unknown.
+     * @throws CancellationException    if the solve is cancelled during the
+     *                                  construction.
+     */
+    @SuppressWarnings("try")
+    public static int[] solve(String name, CityStore cities, SolveOptions options) {
+        if (!NAMES.contains(name)) {
+            throw new IllegalArgumentException("Unknown solver: " + name);
+        }
+        if (options.getResultCache() != null) {
+            // The cache solves misses through here again, without itself
+            return options.getResultCache().solve(name, cities, options);
+        }
+        if (options.getPartitionSize() > 0 && cities.size() > options.getPartitionSize()) {
+            // Every region runs the improvement stage itself
+            return PartitionedSolver.solve(name, cities, options, options.getPartitionSize());
+        }
+        boolean multiStart = options.getStarts() > 1 && (name.equals("nn") || name.equals("mst"));
+        SearchLimits constructionLimits = options.newConstructionLimits();
+
+        // Multi-start runs improve every tour themselves
+        boolean improves = name.equals("lk") || (options.isImprove() && !multiStart);
+        CancellationToken boundToken = new CancellationToken();
+        // Multi-start runs share one bound to skip their remaining starts
+        CompletableFuture<Double> bound = (improves || multiStart) && options.getTargetGap() > 0
+                ? HeldKarpBound.computeAsync(cities, new SearchLimits(0, 0, boundToken))
+                : null;
+        try {
+            int[] solution;
+            try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.CONSTRUCTION)) {
+                solution = construct(name, cities, options, constructionLimits, bound);
+            }
+            // A Nearest Neighbour tour cut short is not a result
+            if (constructionLimits.isExpired()) {
+                throw new CancellationException("Construction was cancelled");
+            }
+            if (name.equals("lk")) {
+                try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.IMPROVEMENT)) {
+                    solution = improve(cities, solution, true, options.newSearchLimits(), bound, options);
+                }
+            }
+            if (options.isImprove() && !multiStart) {
+                try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.IMPROVEMENT)) {
+                    solution = improve(cities, solution, false, options.newSearchLimits(), bound, options);
+                }
+            }
+            return solution;
+        } finally {
+            boundToken.cancel();
+        }
+    }
+
+    /**
+     * Improves a tour with Lin-Kernighan search or with 2-opt and Or-opt,
+     * stopping early once it is within the target gap of a lower bound. The
+     * precomputed candidate lists of the instance are used when available.
+     *
+     * @param cities       The cities the path refers to.
+     * @param path         The closed path of city indices.
+     * @param linKernighan {@code true} for Lin-Kernighan search.
+     * @param limits       The limits on the improvement.
+     * @param bound        The future lower bound, or {@code null}.
+     * @param options      The solver settings.
+     * @return The improved closed path, starting at the same city.
+     */
+    private static int[] improve(CityStore cities, int[] path, boolean linKernighan, SearchLimits limits,
+            CompletableFuture<Double> bound, SolveOptions options) {
+        if (path.length < 2) {
+            return path;
+        }
+        Tour tour = Tour.fromClosedPath(path);
+        if (bound != null) {
+            limits = limits.withGoal(HeldKarpBound.withinGap(bound, cities, tour, options.getTargetGap()),
+                    GAP_CHECK_INTERVAL_MILLIS);
+        }
+        CandidateLists candidates = CandidateLists.reuseOrBuild(options.getCandidates(), cities,
+                LocalSearch.DEFAULT_CANDIDATES);
+        if (linKernighan) {
+            SolverLK.improve(cities, tour, candidates, limits);
+        } else {
+            LocalSearch.improve(cities, tour, candidates, limits);
+        }
+        return tour.toClosedPath(path[0]);
+    }
+
+    /**
+     * Runs the construction of a solver. The Lin-Kernighan solver starts from
+     * a Nearest Neighbour tour.
+     *
+     * @param name    The solver name.
+     * @param cities  The cities to use in the algorithm.
+     * @param options The solver settings.
+     * @param limits  The limits stopping the construction.
+     * @param bound   The future lower bound for multi-start runs, or
+     *                {@code null}.
+     * @return The constructed tour.
+     * @throws IllegalArgumentException if the solver name is unknown.
+     * @throws CancellationException    if the limits expire.
+     */
+    private static int[] construct(String name, CityStore cities, SolveOptions options, SearchLimits limits,
+            CompletableFuture<Double> bound) {
+        boolean multiStart = options.getStarts() > 1;
+        switch (name) {
+            case "nn":
+                return multiStart
+                        ? solveMultiStart(cities, MultiStartSolver.Construction.NEAREST_NEIGHBOUR, options, limits,
+                                bound)
+                        : SolverNN.solveNearestNeighbour(cities, 0, limits);
+            case "dijkstra":
+                if (options.getDijkstraNeighbours() > 0) {
+                    CandidateLists candidates = CandidateLists.reuseOrBuild(options.getCandidates(), cities,
+                            options.getDijkstraNeighbours(), limits);
+                    if (candidates == null) {
+                        throw new CancellationException("Construction was cancelled");
+                    }
+                    return SolverDijkstra.solveDijkstra(cities, candidates, limits);
+                }
+                return SolverDijkstra.solveDijkstra(cities, limits);
+            case "mst":
+                return multiStart
+                        ? solveMultiStart(cities, MultiStartSolver.Construction.MINIMUM_SPANNING_TREE, options,
+                                limits, bound)
+                        : SolverMST.solveMST(cities, 0, limits);
+            case "lk":
+                return SolverNN.solveNearestNeighbour(cities, 0, limits);
+            case "hilbert":
+                return SolverHilbert.solveHilbert(cities, limits);
+            case "exact":
+                return SolverExact.solveExact(cities, options.getThreads(), options.newExactLimits());
+            case "christofides":
+                return SolverChristofides.solveChristofides(cities, limits, options.newSearchLimits());
+            default:
+                throw new IllegalArgumentException("Unknown solver: " + name);
+        }
+    }
+
+    /**
+     * Runs a construction from several start cities in parallel.
+     *
+     * @param cities       The cities to use in the algorithm.
+     * @param construction The construction to run.
+     * @param options      The solver settings.
+     * @param limits       The limits stopping the constructions.
+     * @param bound        The future lower bound, or {@code null}.
+     * @return The shortest tour found.
+     */
+    private static int[] solveMultiStart(CityStore cities, MultiStartSolver.Construction construction,
+            SolveOptions options, SearchLimits limits, CompletableFuture<Double> bound) {
+        return MultiStartSolver.solve(cities, List.of(construction), options.getStarts(), options.getThreads(),
+                options.isImprove(), options.getCandidates(), limits, options::newSearchLimits, bound,
+                options.getTargetGap());
+    }
+}
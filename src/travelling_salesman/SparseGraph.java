@@ -0,0 +1,127 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+
+/**
+ * Undirected weighted graph in compressed sparse row form. The neighbours of
+ * vertex {@code u} are {@code getTarget(k)} for {@code k} from
+ * {@code getStart(u)} to {@code getStart(u + 1) - 1}.
+ */
+public class SparseGraph {
+    private final int[] start;
+    private final int[] targets;
+    private final double[] weights;
+
+    /**
+     * Constructs a graph over existing arrays.
+     *
+     * @param start   The offset of the first edge of each vertex, with a final
+     *                entry holding the number of edge entries.
+     * @param targets The target vertex of each edge entry.
+     * @param weights The weight of each edge entry.
+     */
+    public SparseGraph(int[] start, int[] targets, double[] weights) {
+        this.start = start;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds the symmetric nearest neighbour graph of the cities: an edge joins
+     * two cities whenever either is among the other's candidates. Edges are
+     * weighted by Euclidean distance.
+     *
+     * @param cities     The cities of the graph.
+     * @param candidates The nearest neighbour lists of the cities.
+     * @return The nearest neighbour graph.
+     */
+    public static SparseGraph fromCandidates(CityStore cities, CandidateLists candidates) {
+        int n = cities.size();
+
+        // Count each candidate edge in both directions, then drop duplicates
+        int[] degree = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            for (int r = 0; r < candidates.count(u); r++) {
+                degree[u + 1]++;
+                degree[candidates.get(u, r) + 1]++;
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            degree[u + 1] += degree[u];
+        }
+        int[] fill = degree.clone();
+        int[] raw = new int[degree[n]];
+        for (int u = 0; u < n; u++) {
+            for (int r = 0; r < candidates.count(u); r++) {
+                int v = candidates.get(u, r);
+                raw[fill[u]++] = v;
+                raw[fill[v]++] = u;
+            }
+        }
+
+        int[] start = new int[n + 1];
+        int[] targets = new int[raw.length];
+        int[] lastSeen = new int[n];
+        Arrays.fill(lastSeen, -1);
+        int size = 0;
+        for (int u = 0; u < n; u++) {
+            start[u] = size;
+            for (int k = degree[u]; k < degree[u + 1]; k++) {
+                int v = raw[k];
+                if (lastSeen[v] != u) {
+                    lastSeen[v] = u;
+                    targets[size++] = v;
+                }
+            }
+        }
+        start[n] = size;
+
+        targets = Arrays.copyOf(targets, size);
+        double[] weights = new double[size];
+        for (int u = 0; u < n; u++) {
+            for (int k = start[u]; k < start[u + 1]; k++) {
+                weights[k] = cities.distance(u, targets[k]);
+            }
+        }
+        return new SparseGraph(start, targets, weights);
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return The number of vertices.
+     */
+    public int size() {
+        return start.length - 1;
+    }
+
+    /**
+     * Returns the offset of the first edge entry of a vertex.
+     *
+     * @param u The vertex, or {@link #size()} for the end of the last vertex.
+     * @return The offset of its first edge entry.
+     */
+    public int getStart(int u) {
+        return start[u];
+    }
+
+    /**
+     * Returns the target of an edge entry.
+     *
+     * @param k The edge entry.
+     * @return The target vertex.
+     */
+    public int getTarget(int k) {
+        return targets[k];
+    }
+
+    /**
+     * Returns the weight of an edge entry.
+     *
+     * @param k The edge entry.
+     * @return The edge weight.
+     */
+    public double getWeight(int k) {
+        return weights[k];
+    }
+}
@@ -0,0 +1,233 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over points that can be inserted and removed, answering
+ * k-nearest neighbour queries.
+ * <p>
+ * Unlike {@link KdTree}, which is built once over a fixed store, the grid
+ * accepts new points at any time. Every cell keeps its points in an intrusive
+ * doubly linked list over the point indices, so insertions and removals are
+ * constant time and allocate nothing. Queries search rings of cells around
+ * the query point until no unvisited cell can hold a closer point. The grid
+ * is rebuilt with a larger extent when a point falls outside it, and with
+ * smaller cells when it grows too dense.
+ */
+public class SpatialGrid {
+    /**
+     * Average number of points per cell the grid is sized for.
+     */
+    private static final int POINTS_PER_CELL = 2;
+
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private boolean[] present = new boolean[16];
+    private int[] cellOf = new int[16];
+    private int[] nextInCell = new int[16];
+    private int[] prevInCell = new int[16];
+    private int[] cellHead = new int[0];
+    private int count;
+    private int side;
+    private double minX;
+    private double minY;
+    private double cellSize;
+
+    /**
+     * Inserts a point.
+     *
+     * @param point The index of the point, not yet in the grid.
+     * @param x     The x-coordinate of the point.
+     * @param y     The y-coordinate of the point.
+     */
+    public void insert(int point, double x, double y) {
+        ensureCapacity(point + 1);
+        xs[point] = x;
+        ys[point] = y;
+        present[point] = true;
+        count++;
+        if (side == 0 || x < minX || y < minY || x >= minX + side * cellSize || y >= minY + side * cellSize
+                || count > POINTS_PER_CELL * 4 * side * side) {
+            rebuild();
+        } else {
+            link(point);
+        }
+    }
+
+    /**
+     * Removes a point.
+     *
+     * @param point The index of the point.
+     */
+    public void remove(int point) {
+        if (point >= present.length || !present[point]) {
+            return;
+        }
+        unlink(point);
+        present[point] = false;
+        count--;
+    }
+
+    /**
+     * Returns the number of points in the grid.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Finds the nearest points to a location, nearest first.
+     *
+     * @param x       The x-coordinate of the location.
+     * @param y       The y-coordinate of the location.
+     * @param k       The maximum number of points to find.
+     * @param exclude A point to leave out, or -1.
+     * @param out     The array receiving the point indices, of length at least
+     *                {@code k}.
+     * @return The number of points found.
+     */
+    public int nearest(double x, double y, int k, int exclude, int[] out) {
+        if (side == 0 || k <= 0) {
+            return 0;
+        }
+        double[] found = new double[k];
+        int foundCount = 0;
+        int cx = clampCell((x - minX) / cellSize);
+        int cy = clampCell((y - minY) / cellSize);
+
+        for (int ring = 0; ring < side; ring++) {
+            // Every point outside the rings searched so far is at least this far
+            double bound = ring == 0 ? 0 : (ring - 1) * cellSize;
+            if (foundCount == k && found[k - 1] <= bound * bound) {
+                break;
+            }
+            for (int gy = cy - ring; gy <= cy + ring; gy++) {
+                if (gy < 0 || gy >= side) {
+                    continue;
+                }
+                boolean edgeRow = gy == cy - ring || gy == cy + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int gx = cx - ring; gx <= cx + ring; gx += Math.max(step, 1)) {
+                    if (gx < 0 || gx >= side) {
+                        continue;
+                    }
+                    for (int p = cellHead[gy * side + gx]; p >= 0; p = nextInCell[p]) {
+                        if (p == exclude) {
+                            continue;
+                        }
+                        double dx = xs[p] - x;
+                        double dy = ys[p] - y;
+                        double d = dx * dx + dy * dy;
+                        if (foundCount < k || d < found[foundCount - 1]) {
+                            // Insertion sort into the short result list
+                            int i = foundCount < k ? foundCount++ : k - 1;
+                            while (i > 0 && (found[i - 1] > d || (found[i - 1] == d && out[i - 1] > p))) {
+                                found[i] = found[i - 1];
+                                out[i] = out[i - 1];
+                                i--;
+                            }
+                            found[i] = d;
+                            out[i] = p;
+                        }
+                    }
+                }
+            }
+        }
+        return foundCount;
+    }
+
+    /**
+     * Converts a cell coordinate to a valid cell index.
+     *
+     * @param cell The cell coordinate.
+     * @return The coordinate clamped to the grid.
+     */
+    private int clampCell(double cell) {
+        return (int) Math.max(0, Math.min(side - 1, cell));
+    }
+
+    /**
+     * Sizes the grid to the current points and re-links all of them.
+     */
+    private void rebuild() {
+        double lowX = Double.MAX_VALUE, lowY = Double.MAX_VALUE;
+        double highX = -Double.MAX_VALUE, highY = -Double.MAX_VALUE;
+        for (int p = 0; p < present.length; p++) {
+            if (present[p]) {
+                lowX = Math.min(lowX, xs[p]);
+                lowY = Math.min(lowY, ys[p]);
+                highX = Math.max(highX, xs[p]);
+                highY = Math.max(highY, ys[p]);
+            }
+        }
+
+        // Leave a margin so that nearby new points do not force a rebuild
+        double extent = Math.max(Math.max(highX - lowX, highY - lowY), 1e-9);
+        double margin = extent / 4;
+        side = Math.max(1, (int) Math.ceil(Math.sqrt((double) count / POINTS_PER_CELL)));
+        cellSize = (extent + 2 * margin) / side;
+        minX = lowX - margin;
+        minY = lowY - margin;
+
+        cellHead = new int[side * side];
+        Arrays.fill(cellHead, -1);
+        for (int p = 0; p < present.length; p++) {
+            if (present[p]) {
+                link(p);
+            }
+        }
+    }
+
+    /**
+     * Adds a point to the list of its cell.
+     *
+     * @param point The index of the point.
+     */
+    private void link(int point) {
+        int cell = clampCell((ys[point] - minY) / cellSize) * side + clampCell((xs[point] - minX) / cellSize);
+        cellOf[point] = cell;
+        prevInCell[point] = -1;
+        nextInCell[point] = cellHead[cell];
+        if (cellHead[cell] >= 0) {
+            prevInCell[cellHead[cell]] = point;
+        }
+        cellHead[cell] = point;
+    }
+
+    /**
+     * Removes a point from the list of its cell.
+     *
+     * @param point The index of the point.
+     */
+    private void unlink(int point) {
+        int prev = prevInCell[point];
+        int next = nextInCell[point];
+        if (prev >= 0) {
+            nextInCell[prev] = next;
+        } else {
+            cellHead[cellOf[point]] = next;
+        }
+        if (next >= 0) {
+            prevInCell[next] = prev;
+        }
+    }
+
+    /**
+     * Grows the per-point arrays to hold at least the given number of points.
+     *
+     * @param capacity The number of point indices to make room for.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            int newCapacity = Math.max(capacity, xs.length + (xs.length >> 1));
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+            present = Arrays.copyOf(present, newCapacity);
+            cellOf = Arrays.copyOf(cellOf, newCapacity);
+            nextInCell = Arrays.copyOf(nextInCell, newCapacity);
+            prevInCell = Arrays.copyOf(prevInCell, newCapacity);
+        }
+    }
+}
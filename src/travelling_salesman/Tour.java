@@ -0,0 +1,327 @@
+package travelling_salesman;
+
+import java.util.Arrays;
+
+/**
+ * Array-based representation of a closed tour.
+ * <p>
+ * The cities are kept in tour order together with the position of every
+ * city, so successor, predecessor and position lookups are constant time.
+ * Reversals always rewrite the shorter side of the cycle. Cities can also be
+ * inserted and removed, which shifts the positions after them.
+ * <p>
+ * Constructions build their tour by appending cities to an empty tour, using
+ * {@link #contains(int)} as the visited mask. The length change of a move can
+ * be evaluated before it is applied, so searches never need to measure the
+ * whole tour.
+ */
+public class Tour {
+    private int[] order;
+    private int[] position;
+    private int size;
+
+    /**
+     * Constructs a tour visiting the cities in the given order. The array is
+     * used as-is and is modified by later reversals.
+     *
+     * @param order The city indices in tour order, each city exactly once.
+     */
+    public Tour(int[] order) {
+        this.order = order;
+        this.size = order.length;
+        this.position = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Constructs an empty tour for cities with indices below the given
+     * capacity.
+     *
+     * @param capacity The number of cities the tour can hold without growing.
+     */
+    public Tour(int capacity) {
+        this.order = new int[capacity];
+        this.position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Creates a tour from a path that repeats its starting city at the end, as
+     * returned by the solvers.
+     *
+     * @param path The closed path of city indices.
+     * @return The tour visiting the cities of the path.
+     */
+    public static Tour fromClosedPath(int[] path) {
+        int n = Math.max(path.length - 1, 0);
+        int[] order = new int[n];
+        System.arraycopy(path, 0, order, 0, n);
+        return new Tour(order);
+    }
+
+    /**
+     * Returns the tour as a path starting and ending at the given city.
+     *
+     * @param startCity The city to start the path at.
+     * @return The closed path of city indices.
+     */
+    public int[] toClosedPath(int startCity) {
+        int n = size;
+        int[] path = new int[n + 1];
+        int start = position[startCity];
+        for (int i = 0; i < n; i++) {
+            path[i] = order[(start + i) % n];
+        }
+        path[n] = startCity;
+        return path;
+    }
+
+    /**
+     * Returns the number of cities in the tour.
+     *
+     * @return The number of cities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether a city is part of the tour.
+     *
+     * @param city The index of the city.
+     * @return {@code true} if the tour visits the city.
+     */
+    public boolean contains(int city) {
+        return city < position.length && position[city] >= 0;
+    }
+
+    /**
+     * Appends a city to the end of the tour, just before the first city.
+     *
+     * @param city The index of the city, not yet in the tour.
+     */
+    public void append(int city) {
+        if (size == order.length) {
+            order = Arrays.copyOf(order, size + (size >> 1) + 16);
+        }
+        if (city >= position.length) {
+            growPositions(city + 1);
+        }
+        order[size] = city;
+        position[city] = size++;
+    }
+
+    /**
+     * Returns the city at a position of the tour.
+     *
+     * @param index The position in the tour.
+     * @return The index of the city at that position.
+     */
+    public int cityAt(int index) {
+        return order[index];
+    }
+
+    /**
+     * Returns the position of a city in the tour.
+     *
+     * @param city The index of the city.
+     * @return The position of the city.
+     */
+    public int positionOf(int city) {
+        return position[city];
+    }
+
+    /**
+     * Returns the city following a city in the tour.
+     *
+     * @param city The index of the city.
+     * @return The index of the next city.
+     */
+    public int next(int city) {
+        int i = position[city] + 1;
+        return order[i == size ? 0 : i];
+    }
+
+    /**
+     * Returns the city preceding a city in the tour.
+     *
+     * @param city The index of the city.
+     * @return The index of the previous city.
+     */
+    public int prev(int city) {
+        int i = position[city];
+        return order[i == 0 ? size - 1 : i - 1];
+    }
+
+    /**
+     * Reverses the path that runs forward from one city to another. When the
+     * path is longer than half the tour the rest of the cycle is reversed
+     * instead, which yields the same cycle with the opposite orientation.
+     *
+     * @param from The first city of the path.
+     * @param to   The last city of the path.
+     */
+    public void reverse(int from, int to) {
+        int n = size;
+        int i = position[from];
+        int j = position[to];
+        int length = j - i;
+        if (length < 0) {
+            length += n;
+        }
+        length++;
+
+        // Reverse the complementary path if it is shorter
+        if (length * 2 > n) {
+            int newI = j + 1;
+            int newJ = i - 1;
+            i = newI == n ? 0 : newI;
+            j = newJ < 0 ? n - 1 : newJ;
+            length = n - length;
+        }
+
+        for (int swaps = length / 2; swaps > 0; swaps--) {
+            int a = order[i];
+            int b = order[j];
+            order[i] = b;
+            position[b] = i;
+            order[j] = a;
+            position[a] = j;
+            if (++i == n) {
+                i = 0;
+            }
+            if (--j < 0) {
+                j = n - 1;
+            }
+        }
+    }
+
+    /**
+     * Replaces edges {@code (t1, t2)} and {@code (t3, t4)} with
+     * {@code (t1, t3)} and {@code (t2, t4)}. {@code t2} must follow {@code t1}
+     * in the same direction as {@code t4} follows {@code t3}.
+     *
+     * @param t1 The first endpoint of the first removed edge.
+     * @param t2 The second endpoint of the first removed edge.
+     * @param t3 The first endpoint of the second removed edge.
+     * @param t4 The second endpoint of the second removed edge.
+     */
+    public void twoOptMove(int t1, int t2, int t3, int t4) {
+        if (next(t1) == t2) {
+            reverse(t2, t3);
+        } else {
+            reverse(t3, t2);
+        }
+    }
+
+    /**
+     * Inserts a city directly after another city of the tour, or as the only
+     * city of an empty tour. The cities after the insertion point move one
+     * position on.
+     *
+     * @param city    The city to insert after; ignored if the tour is empty.
+     * @param newCity The index of the city to insert, not yet in the tour.
+     */
+    public void insertAfter(int city, int newCity) {
+        if (size == order.length) {
+            order = Arrays.copyOf(order, size + (size >> 1) + 16);
+        }
+        if (newCity >= position.length) {
+            growPositions(newCity + 1);
+        }
+        int at = size == 0 ? 0 : position[city] + 1;
+        System.arraycopy(order, at, order, at + 1, size - at);
+        order[at] = newCity;
+        size++;
+        for (int i = at; i < size; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Removes a city from the tour, joining its predecessor and successor. The
+     * cities after it move one position back.
+     *
+     * @param city The index of the city to remove.
+     */
+    public void remove(int city) {
+        int at = position[city];
+        System.arraycopy(order, at + 1, order, at, size - at - 1);
+        size--;
+        position[city] = -1;
+        for (int i = at; i < size; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Grows the position array, marking the new cities as not in the tour.
+     *
+     * @param capacity The number of cities to make room for.
+     */
+    private void growPositions(int capacity) {
+        int oldLength = position.length;
+        position = Arrays.copyOf(position, Math.max(capacity, oldLength + (oldLength >> 1) + 16));
+        Arrays.fill(position, oldLength, position.length, -1);
+    }
+
+    /**
+     * Calculates the change in tour length of
+     * {@link #twoOptMove(int, int, int, int)} with the same arguments.
+     *
+     * @param cities The cities the tour refers to.
+     * @param t1     The first endpoint of the first removed edge.
+     * @param t2     The second endpoint of the first removed edge.
+     * @param t3     The first endpoint of the second removed edge.
+     * @param t4     The second endpoint of the second removed edge.
+     * @return The length change, negative for an improvement.
+     */
+    public double twoOptDelta(CityStore cities, int t1, int t2, int t3, int t4) {
+        return cities.distance(t1, t3) + cities.distance(t2, t4) - cities.distance(t1, t2) - cities.distance(t3, t4);
+    }
+
+    /**
+     * Calculates the change in tour length of inserting a city directly after
+     * another city with {@link #insertAfter(int, int)}.
+     *
+     * @param cities  The cities the tour refers to.
+     * @param city    The city of the tour to insert after.
+     * @param newCity The city to insert, not in the tour.
+     * @return The length change.
+     */
+    public double insertionDelta(CityStore cities, int city, int newCity) {
+        int next = next(city);
+        return cities.distance(city, newCity) + cities.distance(newCity, next) - cities.distance(city, next);
+    }
+
+    /**
+     * Calculates the change in tour length of removing a city with
+     * {@link #remove(int)}.
+     *
+     * @param cities The cities the tour refers to.
+     * @param city   The city of the tour to remove.
+     * @return The length change, zero or negative.
+     */
+    public double removalDelta(CityStore cities, int city) {
+        int prev = prev(city);
+        int next = next(city);
+        return cities.distance(prev, next) - cities.distance(prev, city) - cities.distance(city, next);
+    }
+
+    /**
+     * Calculates the length of the closed tour.
+     *
+     * @param cities The cities the tour refers to.
+     * @return The total length of the tour.
+     */
+    public double length(CityStore cities) {
+        int n = size;
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += cities.distance(order[i], order[i + 1 == n ? 0 : i + 1]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,19 @@
+package travelling_salesman;
+
+/**
+ * Receives the successively shorter tours found by an anytime search.
+ */
+public interface TourListener {
+    /**
+     * Called with every tour that is shorter than all tours reported before.
+     * Called on the searching thread, so implementations should return
+     * quickly.
+     *
+     * @param path          The closed path of city indices. Must not be
+     *                      modified.
+     * @param length        The length of the tour.
+     * @param elapsedMillis The time since the search started, in
+     *                      milliseconds.
+     */
+    void tourImproved(int[] path, double length, long elapsedMillis);
+}
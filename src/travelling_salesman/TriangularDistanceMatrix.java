@@ -0,0 +1,90 @@
+package travelling_salesman;
+
+/**
+ * Distance provider backed by a precomputed upper-triangular matrix of
+ * single-precision distances. Needs {@code 2 * n * (n - 1)} bytes, roughly a
+ * quarter of a dense {@code double[n][n]} matrix.
+ */
+public class TriangularDistanceMatrix implements DistanceProvider {
+    /**
+     * The largest instance whose triangle fits in a single array.
+     */
+    public static final int MAX_CITIES = 65535;
+
+    private final int n;
+    private final float[] distances;
+
+    /**
+     * Precomputes the distances between every pair of the given cities.
+     *
+     * @param cities The cities to compute distances for.
+     * @throws IllegalArgumentException if there are more than
+     *                                  {@link #MAX_CITIES} cities.
+     */
+    public TriangularDistanceMatrix(CityStore cities) {
+        this.n = cities.size();
+        if (n > MAX_CITIES) {
+            throw new IllegalArgumentException("Too many cities for a triangular matrix: " + n);
+        }
+        this.distances = new float[(int) requiredEntries(n)];
+
+        // Compute each row of the triangle with one kernel call, then narrow it
+        double[] xs = cities.getXCoordinates();
+        double[] ys = cities.getYCoordinates();
+        double[] row = new double[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            DistanceKernels.distances(xs, ys, xs[i], ys[i], i + 1, n, row);
+            for (int j = i + 1; j < n; j++) {
+                distances[k++] = (float) row[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of matrix entries needed for an instance.
+     *
+     * @param n The number of cities.
+     * @return The number of stored distances.
+     */
+    public static long requiredEntries(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        // Rows before i hold (n - 1) + (n - 2) + ... + (n - i) entries
+        int rowStart = (int) ((long) i * (2L * n - i - 1) / 2);
+        return distances[rowStart + j - i - 1];
+    }
+
+    @Override
+    public void distancesFrom(int i, double[] out) {
+        // Column i of the rows above, stepping by the shrinking row lengths
+        int k = i - 1;
+        for (int j = 0; j < i; j++) {
+            out[j] = distances[k];
+            k += n - j - 2;
+        }
+        out[i] = 0;
+
+        // Row i itself is contiguous
+        int rowStart = (int) ((long) i * (2L * n - i - 1) / 2);
+        for (int j = i + 1; j < n; j++) {
+            out[j] = distances[rowStart + j - i - 1];
+        }
+    }
+}
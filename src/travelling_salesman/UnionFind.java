@@ -0,0 +1,73 @@
+package travelling_salesman;
+
+/**
+ * Disjoint-set forest over the integers {@code [0, n)} with union by size and
+ * path halving.
+ */
+public class UnionFind {
+    private final int[] parent;
+    private final int[] size;
+    private int components;
+
+    /**
+     * Constructs a forest of singleton sets.
+     *
+     * @param n The number of elements.
+     */
+    public UnionFind(int n) {
+        this.parent = new int[n];
+        this.size = new int[n];
+        this.components = n;
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * Returns the representative of the set containing an element.
+     *
+     * @param x The element.
+     * @return The representative of its set.
+     */
+    public int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * Merges the sets containing two elements.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return {@code true} if the elements were in different sets.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        components--;
+        return true;
+    }
+
+    /**
+     * Returns the number of disjoint sets.
+     *
+     * @return The number of sets.
+     */
+    public int components() {
+        return components;
+    }
+}
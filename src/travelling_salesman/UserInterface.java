@@ -1,6 +1,6 @@
 package travelling_salesman;
 
-import java.util.ArrayList;
+import java.util.Locale;
 import java.util.Scanner;
 
 /**
@@ -20,10 +20,10 @@ public class UserInterface {
             displayMenu();
             if (scanner.hasNextInt()) {
                 choice = scanner.nextInt();
-                if (choice >= 1 && choice <= 4) {
+                if (choice >= 1 && choice <= 8) {
                     return choice;
                 } else {
-                    System.out.println("Choice must be between 1 and 4. Please try again.");
+                    System.out.println("Choice must be between 1 and 8. Please try again.");
                 }
             } else {
                 System.out.println("Invalid input. Please enter a number.");
@@ -40,27 +40,36 @@ public class UserInterface {
         System.out.println("1. Nearest Neighbour");
         System.out.println("2. Dijkstra's Algorithm");
         System.out.println("3. Minimum Spanning Tree");
-        System.out.println("4. Exit");
+        System.out.println("4. Lin-Kernighan");
+        System.out.println("5. Hilbert Curve");
+        System.out.println("6. Exact");
+        System.out.println("7. Christofides");
+        System.out.println("8. Exit");
         System.out.print("\nEnter your choice (number): ");
     }
 
     /**
      * Displays the solution to the user.
      * 
-     * @param solution  The solution to display.
+     * @param cities    The cities the solution refers to.
+     * @param solution  The solution to display, as city indices.
      * @param startTime The time at which the algorithm started.
      * @param endTime   The time at which the algorithm ended.
      */
-    public static void displaySolution(ArrayList<City> solution, long startTime, long endTime) {
+    @SuppressWarnings("try")
+    public static void displaySolution(CityStore cities, int[] solution, long startTime, long endTime) {
         System.out.print("Path: ");
-        for (int i = 0; i < solution.size(); i++) {
+        for (int i = 0; i < solution.length; i++) {
             if (i > 0)
                 System.out.print("-");
-            System.out.print(solution.get(i).getNumber());
+            System.out.print(cities.getId(solution[i]));
         }
         System.out.println("");
 
-        double totalDistance = calculateTotalDistance(solution);
+        double totalDistance;
+        try (SolverMetrics.PhaseScope phase = SolverMetrics.phase(SolverMetrics.Phase.EVALUATION)) {
+            totalDistance = calculateTotalDistance(cities, solution);
+        }
         System.out.println("Total Path Distance: " + totalDistance);
 
         long duration = endTime - startTime;
@@ -68,16 +77,30 @@ public class UserInterface {
         System.out.println("Exiting...");
     }
 
+    /**
+     * Displays a lower bound on the optimal tour length and the gap of a
+     * solution to it.
+     *
+     * @param length The length of the solution.
+     * @param bound  The lower bound.
+     */
+    public static void displayBound(double length, double bound) {
+        System.out.println("Lower Bound: " + bound);
+        System.out.println(String.format(Locale.ROOT, "Optimality Gap: at most %.2f%%",
+                100 * HeldKarpBound.gap(length, bound)));
+    }
+
     /**
      * Calculates the total distance of a solution.
      * 
-     * @param solution The list of cities in the solution.
+     * @param cities   The cities the solution refers to.
+     * @param solution The city indices in the solution.
      * @return The total distance of the tour.
      */
-    public static double calculateTotalDistance(ArrayList<City> solution) {
+    public static double calculateTotalDistance(CityStore cities, int[] solution) {
         double totalDistance = 0;
-        for (int i = 0; i < solution.size() - 1; i++) {
-            totalDistance += solution.get(i).distanceTo(solution.get(i + 1));
+        for (int i = 0; i < solution.length - 1; i++) {
+            totalDistance += cities.distance(solution[i], solution[i + 1]);
         }
         return totalDistance;
     }
@@ -0,0 +1,56 @@
+package travelling_salesman;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementations of the {@link DistanceKernels}. Loading this
+ * class fails with a {@link LinkageError} when the
+ * {@code jdk.incubator.vector} module is not in the JVM, so it must only be
+ * reached through {@link DistanceKernels}.
+ */
+class VectorDistanceKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Returns whether the preferred vector shape holds more than one double,
+     * so that the vector kernels can beat the scalar loops.
+     *
+     * @return {@code true} if the vector kernels are worth using.
+     */
+    static boolean isSupported() {
+        return SPECIES.length() > 1;
+    }
+
+    /**
+     * Computes the distances from a point to a range of cities.
+     *
+     * @param xs      The x-coordinates of the cities.
+     * @param ys      The y-coordinates of the cities.
+     * @param x       The x-coordinate of the point.
+     * @param y       The y-coordinate of the point.
+     * @param from    The index of the first city.
+     * @param to      The index after the last city.
+     * @param out     Receives the distance to city {@code i} at index
+     *                {@code outFrom + i - from}.
+     * @param outFrom The index receiving the distance to the first city.
+     */
+    static void distances(double[] xs, double[] ys, double x, double y, int from, int to, double[] out,
+            int outFrom) {
+        DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+        DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+        int shift = outFrom - from;
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, i).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, i).sub(py);
+            dx.mul(dx).add(dy.mul(dy)).lanewise(VectorOperators.SQRT).intoArray(out, i + shift);
+        }
+        for (; i < to; i++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            out[i + shift] = Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+}